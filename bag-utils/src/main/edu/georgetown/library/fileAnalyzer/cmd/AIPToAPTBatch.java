@@ -0,0 +1,251 @@
+package edu.georgetown.library.fileAnalyzer.cmd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.georgetown.library.fileAnalyzer.util.AIPDirToAPTHelper;
+import edu.georgetown.library.fileAnalyzer.util.AIPToAPTHelper;
+import edu.georgetown.library.fileAnalyzer.util.AIPZipToAPTHelper;
+import edu.georgetown.library.fileAnalyzer.util.APTrustHelper;
+import edu.georgetown.library.fileAnalyzer.util.APTrustHelper.Access;
+
+/**
+ * Bags the AIPs listed in a manifest file, several at a time, within a single JVM.
+ * <p>
+ * Each line of the manifest names an AIP zip file or AIP directory, optionally followed by a tab and a checksum compare file.
+ * Blank lines and lines starting with # are ignored.
+ * Each AIP is bagged by its own AIPToAPTHelper and APTrustHelper.
+ * The bag name of every AIP is read from its mets.xml before any AIP is bagged; AIPs that would write the same bag are reported as errors and are not bagged.
+ * A status line is printed as each AIP finishes and a summary of every AIP is printed when the batch ends.
+ * @author TBrady
+ *
+ */
+public class AIPToAPTBatch {
+    public static enum STATUS {COMPLETE, ERROR, CHECKSUM, INVALID;}
+
+    /**
+     * Outcome of bagging a single AIP.
+     */
+    public static class Row {
+        public int num;
+        public File input;
+        public File compareFile;
+        public STATUS status;
+        public int count;
+        public List<File> bagFiles = Collections.emptyList();
+        public String bags = "";
+        public double duration;
+        public String message = "";
+        public Map<String, String> checksumErrors = Collections.emptyMap();
+        AIPToAPTHelper aipHelper;
+        File bagBase;
+    }
+
+    Access access;
+    String srcOrg;
+    String sendId;
+    int minCount;
+    boolean allowRename;
+    long maxBagSize;
+    int threads;
+
+    public AIPToAPTBatch(Access access, String srcOrg, String sendId, int minCount, boolean allowRename, long maxBagSize, int threads) {
+        this.access = access;
+        this.srcOrg = srcOrg;
+        this.sendId = sendId;
+        this.minCount = minCount;
+        this.allowRename = allowRename;
+        this.maxBagSize = maxBagSize;
+        this.threads = threads;
+    }
+
+    public List<Row> readManifest(File manifest) throws IOException {
+        List<Row> rows = new ArrayList<Row>();
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"))) {
+            for(String line = br.readLine(); line != null; line = br.readLine()) {
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\t");
+                Row row = new Row();
+                row.num = rows.size() + 1;
+                row.input = new File(parts[0].trim()).getAbsoluteFile();
+                if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+                    row.compareFile = new File(parts[1].trim());
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    APTrustHelper createAPTrustHelper(Row row) {
+        APTrustHelper aptHelper = new APTrustHelper(row.input, allowRename);
+        aptHelper.setAccessType(access);
+        aptHelper.setInstitutionId(sendId);
+        aptHelper.setSourceOrg(srcOrg);
+        aptHelper.setBagCount(1);
+        aptHelper.setBagTotal(1);
+        return aptHelper;
+    }
+
+    /**
+     * Check the inputs of a row and read the name of its bag from its mets.xml.
+     * @return false if the row has been given its final status and must not be bagged
+     */
+    boolean prepareRow(Row row) {
+        try {
+            if (row.compareFile != null && !row.compareFile.isFile()) {
+                row.status = STATUS.INVALID;
+                row.message = String.format("Compare file (%s) does not exist", row.compareFile.getPath());
+                return false;
+            }
+            if (row.input.isDirectory()) {
+                row.aipHelper = new AIPDirToAPTHelper();
+            } else if (row.input.isFile() && row.input.getName().toLowerCase().endsWith(".zip")) {
+                row.aipHelper = new AIPZipToAPTHelper();
+            } else {
+                row.status = STATUS.INVALID;
+                row.message = "AIP must be a zip file or a directory";
+                return false;
+            }
+            APTrustHelper aptHelper = createAPTrustHelper(row);
+            row.aipHelper.readMetsFile(row.input, aptHelper);
+            row.bagBase = aptHelper.getBaseBagFile();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            row.status = STATUS.ERROR;
+            row.message = e.getClass().getName() + " " + e.getMessage();
+            return false;
+        }
+    }
+
+    void runRow(Row row) {
+        long start = System.currentTimeMillis();
+        try {
+            APTrustHelper aptHelper = createAPTrustHelper(row);
+            row.count = row.aipHelper.bag(row.input, aptHelper, maxBagSize);
+            row.bagFiles = aptHelper.getBagFiles();
+            row.bags = aptHelper.getFinalBagName();
+            if (row.count == 0) {
+                row.status = STATUS.ERROR;
+                row.message = "No items written to bag file";
+            } else if (row.count < minCount) {
+                row.status = STATUS.ERROR;
+                row.message = String.format("Bag file must have at least (%d) files", minCount);
+            } else if (row.compareFile != null) {
+                row.checksumErrors = aptHelper.compareChecksums(row.compareFile);
+                row.status = row.checksumErrors.isEmpty() ? STATUS.COMPLETE : STATUS.CHECKSUM;
+                if (!row.checksumErrors.isEmpty()) row.message = "Checksum comparison failure";
+            } else {
+                row.status = STATUS.COMPLETE;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            row.status = STATUS.ERROR;
+            row.message = e.getClass().getName() + " " + e.getMessage();
+        } finally {
+            row.aipHelper = null;
+            row.duration = (System.currentTimeMillis() - start) / 1000.0;
+        }
+    }
+
+    /**
+     * Bag every AIP listed in the manifest.
+     * @return true if every AIP was bagged and matched its compare file
+     */
+    public boolean run(File manifest) throws IOException {
+        List<Row> rows = readManifest(manifest);
+        List<Row> ready = new ArrayList<Row>();
+        for(Row row: rows) {
+            if (prepareRow(row)) {
+                ready.add(row);
+            } else {
+                reportRow(row);
+            }
+        }
+        for(Row row: checkDuplicates(ready)) {
+            reportRow(row);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(final Row row: ready) {
+            if (row.status != null) {
+                row.aipHelper = null;
+                continue;
+            }
+            pool.submit(new Runnable(){
+                public void run() {
+                    runRow(row);
+                    reportRow(row);
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            while(!pool.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        report(rows);
+        boolean success = true;
+        for(Row row: rows) {
+            if (row.status != STATUS.COMPLETE) success = false;
+        }
+        return success;
+    }
+
+    /**
+     * AIPs with the same identifier would be written to the same bag files, so none of them is bagged.
+     * @return the rows marked as errors
+     */
+    List<Row> checkDuplicates(List<Row> rows) {
+        HashMap<File, Row> names = new HashMap<File, Row>();
+        List<Row> duplicates = new ArrayList<Row>();
+        for(Row row: rows) {
+            if (row.bagBase == null) continue;
+            Row other = names.put(row.bagBase, row);
+            if (other == null) continue;
+            for(Row r: new Row[]{other, row}) {
+                if (r.status == null) duplicates.add(r);
+                r.status = STATUS.ERROR;
+                r.message = String.format("Bag %s would be written by more than one AIP", row.bagBase.getName());
+            }
+        }
+        return duplicates;
+    }
+
+    public synchronized void reportRow(Row row) {
+        System.out.println(String.format("  * AIP %d: %s %s", row.num, row.status, row.input.getPath()));
+        System.out.flush();
+    }
+
+    public void report(List<Row> rows) {
+        int complete = 0;
+        int items = 0;
+        System.out.println("Batch Summary");
+        System.out.println(String.format("  %5s  %-10s  %8s  %10s  %s", "AIP", "Status", "Items", "Seconds", "AIP --> Bags"));
+        for(Row row: rows) {
+            if (row.status == STATUS.COMPLETE) complete++;
+            items += row.count;
+            String desc = row.input.getPath() + " --> " + row.bags;
+            if (!row.message.isEmpty()) desc += " (" + row.message + ")";
+            System.out.println(String.format("  %5d  %-10s  %8d  %10.1f  %s", row.num, row.status, row.count, row.duration, desc));
+            for(String s: row.checksumErrors.values()) {
+                System.out.println(String.format("  %5s  %s", "", s));
+            }
+        }
+        System.out.println(String.format("%d of %d AIP(s) bagged, %d item(s) written", complete, rows.size(), items));
+        System.out.flush();
+    }
+}
@@ -3,6 +3,8 @@ package edu.georgetown.library.fileAnalyzer.cmd;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -57,27 +59,45 @@ public class AIPToAPTCmd {
         return input;
     }
     
+    public static final Pattern pSize = Pattern.compile("^(\\d+)([KMGT]?)B?$", Pattern.CASE_INSENSITIVE);
+    /**
+     * Parse a size such as 250G, counting 1024 bytes to the kilobyte.
+     */
+    public static long parseSize(String size) {
+        Matcher m = pSize.matcher(size.trim());
+        if (!m.matches()) {
+            fail(String.format("Invalid size (%s): use a number of bytes optionally followed by K, M, G or T", size));
+        }
+        String unit = m.group(2).toUpperCase();
+        int power = unit.isEmpty() ? 0 : "KMGT".indexOf(unit) + 1;
+        return Long.parseLong(m.group(1)) << (10 * power);
+    }
+    
+    public static Access getAccess(CommandLine cmdLine) {
+        Access access = Access.Institution;
+        if (cmdLine.hasOption("consortia")) {
+            access = Access.Consortia;
+        }
+        if (cmdLine.hasOption("institution")) {
+            access = Access.Institution;
+        }
+        if (cmdLine.hasOption("restricted")) {
+            access = Access.Restricted;
+        }
+        return access;
+    }
+    
     public static final int convertCommand(CommandLine cmdLine) throws IOException, IncompleteSettingsException, InvalidMetadataException, InvalidFilenameException {
         CONVTYPE convType;
         AIPToAPTHelper aipHelper = null;
         if (cmdLine.hasOption("zip")) {
             convType = CONVTYPE.ZIP;
-            File temp = AIPZipToAPTHelper.createTempDir();
-            aipHelper = new AIPZipToAPTHelper(temp);
+            aipHelper = new AIPZipToAPTHelper();
         } else {
             convType = CONVTYPE.DIR;
             aipHelper = new AIPDirToAPTHelper();
         }
-        Access access = Access.Institution;
-        if (cmdLine.hasOption("c")) {
-            access = Access.Consortia;
-        }
-        if (cmdLine.hasOption("i")) {
-            access = Access.Institution;
-        }
-        if (cmdLine.hasOption("r")) {
-            access = Access.Restricted;
-        }
+        Access access = getAccess(cmdLine);
         String srcOrg = cmdLine.getOptionValue("srcorg","SrcOrg");
         String sendId = cmdLine.getOptionValue("srcorg","SendId");
         String minstr = cmdLine.getOptionValue("min", "1");
@@ -103,7 +123,8 @@ public class AIPToAPTCmd {
             fail("Option -min must be numberic");
         }
 
-        int count = aipHelper.bag(input, aptHelper);
+        long maxBagSize = cmdLine.hasOption("maxsize") ? parseSize(cmdLine.getOptionValue("maxsize")) : 0;
+        int count = aipHelper.bag(input, aptHelper, maxBagSize);
         if (count == 0) {
             fail(String.format("No items written to bag file (%s)", aptHelper.getFinalBagName()));
         } else if (count < minCount) {
@@ -129,11 +150,49 @@ public class AIPToAPTCmd {
         return count;
     }
     
+    /**
+     * Bag the AIPs listed in the manifest file given with -batch on a pool of -threads workers.
+     * @return true if every AIP was bagged
+     */
+    public static final boolean batchCommand(CommandLine cmdLine) throws IOException {
+        Access access = getAccess(cmdLine);
+        String srcOrg = cmdLine.getOptionValue("srcorg","SrcOrg");
+        String sendId = cmdLine.getOptionValue("srcorg","SendId");
+        boolean allowRename = cmdLine.hasOption("rename");
+        int minCount = 1;
+        int threads = 1;
+        try {
+            minCount = Integer.parseInt(cmdLine.getOptionValue("min", "1"));
+        } catch(NumberFormatException e) {
+            fail("Option -min must be numberic");
+        }
+        try {
+            threads = Integer.parseInt(cmdLine.getOptionValue("threads", "1"));
+        } catch(NumberFormatException e) {
+            fail("Option -threads must be numberic");
+        }
+        if (threads < 1) {
+            fail("Option -threads must be greater than 0");
+        }
+        long maxBagSize = cmdLine.hasOption("maxsize") ? parseSize(cmdLine.getOptionValue("maxsize")) : 0;
+        File manifest = new File(cmdLine.getOptionValue("batch"));
+        if (!manifest.isFile()) {
+            fail(String.format("Batch manifest (%s) does not exist", manifest.getPath()));
+        }
+        AIPToAPTBatch batch = new AIPToAPTBatch(access, srcOrg, sendId, minCount, allowRename, maxBagSize, threads);
+        return batch.run(manifest);
+    }
     
     public static final void main(String[] args) {
         CommandLine cmdLine = parseAipCommandLine(CMD, args);
         try {
-            convertCommand(cmdLine);
+            if (cmdLine.hasOption("batch")) {
+                if (!batchCommand(cmdLine)) {
+                    System.exit(FAIL);
+                }
+            } else {
+                convertCommand(cmdLine);
+            }
         } catch (IOException | IncompleteSettingsException | InvalidMetadataException | InvalidFilenameException e) {
             e.printStackTrace();
             fail(e.getMessage());
@@ -141,8 +200,11 @@ public class AIPToAPTCmd {
     }
 
     public static void usage() {
-        System.out.println(String.format("%s -dir (-consortia|-institution|-restricted) -srcorg SrcOrg [-min 1] [-rename] [-compareFile <file>] <AIP_Dir>", CMD));
-        System.out.println(String.format("%s -zip (-consortia|-institution|-restricted) -srcorg SrcOrg [-min 1] [-rename] [-compareFile <file>] <AIP_Zip>", CMD));
+        System.out.println(String.format("%s -dir (-consortia|-institution|-restricted) -srcorg SrcOrg [-min 1] [-rename] [-compareFile <file>] [-maxsize <size>] <AIP_Dir>", CMD));
+        System.out.println(String.format("%s -zip (-consortia|-institution|-restricted) -srcorg SrcOrg [-min 1] [-rename] [-compareFile <file>] [-maxsize <size>] <AIP_Zip>", CMD));
+        System.out.println(String.format("%s -batch <manifest> (-consortia|-institution|-restricted) -srcorg SrcOrg [-min 1] [-rename] [-threads 1] [-maxsize <size>]", CMD));
+        System.out.println("  The batch manifest lists an AIP zip file or AIP directory per line, optionally followed by a tab and a checksum compare file.");
+        System.out.println("  Bags with a payload larger than -maxsize (such as 250G) are split into bags named .b001.of00N");
     }
     
     public static CommandLine parseAipCommandLine(String main, String[] args) {
@@ -157,6 +219,7 @@ public class AIPToAPTCmd {
         OptionGroup optGrp2 = new OptionGroup();
         optGrp2.addOption(new Option("dir","Bag AIP Directory"));
         optGrp2.addOption(new Option("zip","Bag AIP Zip"));
+        optGrp2.addOption(new Option("batch", true, "Bag the AIP Zips and AIP Directories listed in a manifest file"));
         optGrp2.setRequired(true);
         opts.addOptionGroup(optGrp2);
         opts.addOption("srcorg", true, "Src Organization");
@@ -164,6 +227,8 @@ public class AIPToAPTCmd {
         opts.addOption("min", true, "Min number of files requried");
         opts.addOption("rename", false, "Allow source files to be renamed");
         opts.addOption("compareFile", true, "Optional Checksum Compare File.  Comma Separated: MD5,path");
+        opts.addOption("threads", true, "Number of AIPs bagged at the same time in batch mode");
+        opts.addOption("maxsize", true, "Max payload size of a bag (such as 250G); larger AIPs are split into several bags");
         opts.addOption("h", false, "Help Info");
         
         HelpFormatter formatter = new HelpFormatter();
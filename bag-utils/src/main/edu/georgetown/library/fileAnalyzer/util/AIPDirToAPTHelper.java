@@ -24,6 +24,14 @@ public class AIPDirToAPTHelper extends AIPToAPTHelper {
         return bag.getPayload().size();
     }
     
+    @Override
+    public void readMetsFile(File f, APTrustHelper aptHelper) throws IOException, InvalidMetadataException {
+        File mets = new File(f, METSXML);
+        if (mets.isFile()) {
+            aptHelper.parseMetsFile(mets);
+        }
+    }
+    
     public void findMetadata(File f, APTrustHelper aptHelper) throws IOException, InvalidMetadataException {
         if (f.isDirectory()) {
             for(File cf: f.listFiles()) {
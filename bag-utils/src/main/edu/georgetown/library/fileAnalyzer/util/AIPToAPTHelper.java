@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,14 +19,25 @@ public abstract class AIPToAPTHelper {
     public static int APTFILE_MAX = 255;
     
     abstract public int fillBag(File f, APTrustHelper aptHelper) throws FileNotFoundException, IOException, InvalidMetadataException, InvalidFilenameException;
+    /**
+     * Parse the mets.xml of an AIP without bagging it, so that the name of its bag is known before it is written.
+     */
+    abstract public void readMetsFile(File f, APTrustHelper aptHelper) throws IOException, InvalidMetadataException;
     public int bag(File f, APTrustHelper aptHelper) throws IOException, IncompleteSettingsException, InvalidMetadataException, InvalidFilenameException {
-        int count = fillBag(f, aptHelper);
-        aptHelper.createBagFile();
-        aptHelper.generateBagInfoFiles();
-        aptHelper.saveChecksums();
-        aptHelper.writeBagFile();
-        cleanup();
-        return count;
+        return bag(f, aptHelper, 0);
+    }
+    /**
+     * Bag an AIP, dividing it into several bags if its payload is larger than maxBagSize.
+     * @param maxBagSize maximum payload size of a bag, 0 for no limit
+     */
+    public int bag(File f, APTrustHelper aptHelper, long maxBagSize) throws IOException, IncompleteSettingsException, InvalidMetadataException, InvalidFilenameException {
+        try {
+            int count = fillBag(f, aptHelper);
+            aptHelper.writeStreamingBagFiles(maxBagSize);
+            return count;
+        } finally {
+            cleanup();
+        }
     }
     public void cleanup(){
         //no action by default
@@ -50,15 +62,16 @@ public abstract class AIPToAPTHelper {
     }
     
     public static Pattern pExt = Pattern.compile("^(.*)(\\.[^\\.]*)$");
-    private File makeUnique(File f, int seq) {
-        String name = f.getName();
+    private static String numberName(String name, int seq) {
         Matcher m = pExt.matcher(name);
         if (m.matches()){
-            name = String.format("%s%d%s", m.group(1), seq, m.group(2));
-        } else {
-            name = String.format("%s%d", name, seq);
+            return String.format("%s%d%s", m.group(1), seq, m.group(2));
         }
-        File newf = new File(f.getParentFile(), name);
+        return String.format("%s%d", name, seq);
+    }
+
+    private File makeUnique(File f, int seq) {
+        File newf = new File(f.getParentFile(), numberName(f.getName(), seq));
         if (!newf.exists()) {
             return newf;
         }
@@ -89,4 +102,38 @@ public abstract class AIPToAPTHelper {
         } 
         return f;
     }
+
+    /**
+     * Check the name a file will have in the bag when it is copied into the bag without being extracted to disk,
+     * renaming it as testForAptCompliantFilenames() would rename a file on disk.
+     * Problems are added to the error message; call checkFilenames() once every name has been tested.
+     * @param used names already given to files of the bag; the name returned is added to it
+     */
+    public String testAptCompliantName(String name, Set<String> used, boolean rename) {
+        String path = "data/" + name;
+        if (path.length() > APTFILE_MAX) {
+            errorMessage.append(String.format("File Path too long: [%s]; \n", path));
+        }
+        if (name.matches(APTFILE_REGEX)) {
+            if (rename) {
+                String base = name.replaceAll(APTFILE_CHAR_REGEX, "_");
+                name = base;
+                for(int seq = 0; used.contains(name); seq++) {
+                    name = numberName(base, seq);
+                }
+            } else {
+                errorMessage.append(String.format("Invalid Path:[%s]; \n", name));
+            }
+        }
+        if (!used.add(name)) {
+            errorMessage.append(String.format("Duplicate Path:[%s]; \n", name));
+        }
+        return name;
+    }
+
+    public void checkFilenames() throws InvalidFilenameException {
+        if (errorMessage.length() != 0) {
+            throw new InvalidFilenameException(errorMessage.toString());
+        }
+    }
 }
@@ -1,74 +1,110 @@
 package edu.georgetown.library.fileAnalyzer.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-
-import org.apache.commons.io.FileUtils;
+import java.util.zip.ZipFile;
 
 import gov.loc.repository.bagit.Bag;
+import gov.loc.repository.bagit.BagFile;
 
+/**
+ * Bags a DSpace AIP zip without extracting it.
+ * <p>
+ * Each entry of the zip is added to the payload as a bag file read from the zip, so it is inflated once, straight into the bag tar, and hashed as it is copied.
+ * Entry names are checked, and renamed if allowed, as testForAptCompliantFilenames() checks extracted files, and mets.xml is parsed from the zip.
+ */
 public class AIPZipToAPTHelper extends AIPToAPTHelper {
 
-    private File outdir;
-    public AIPZipToAPTHelper(File outdir) {
-        this.outdir = outdir;
+    private ZipFile zip;
+    public AIPZipToAPTHelper() {
     }
-    
-    public static File createTempDir() throws IOException {
-        Path outpath = Files.createTempDirectory(AIPToAPTHelper.AIPEXTRACT);
-        File outdir = outpath.toFile();
-        return outdir;        
+
+    /**
+     * A payload file read from an entry of the AIP zip.
+     */
+    static class ZipEntryBagFile implements BagFile {
+        ZipFile zip;
+        ZipEntry entry;
+        String filepath;
+
+        ZipEntryBagFile(ZipFile zip, ZipEntry entry, String filepath) {
+            this.zip = zip;
+            this.entry = entry;
+            this.filepath = filepath;
+        }
+
+        public InputStream newInputStream() {
+            try {
+                return zip.getInputStream(entry);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public String getFilepath() {
+            return filepath;
+        }
+
+        public boolean exists() {
+            return true;
+        }
+
+        public long getSize() {
+            return entry.getSize();
+        }
     }
 
     @Override public int fillBag(File f, APTrustHelper aptHelper) throws FileNotFoundException, IOException, InvalidMetadataException, InvalidFilenameException{
-        byte[] buf = new byte[4096];
-        File zout = outdir;
+        errorMessage.setLength(0);
+        zip = new ZipFile(f);
         Bag bag = aptHelper.getBag();
+        HashSet<String> used = new HashSet<String>();
         int count = 0;
 
-        try(
-            ZipInputStream zis = new ZipInputStream(new FileInputStream(f));
-        ) {
-            for(ZipEntry ze = zis.getNextEntry(); ze != null; ze = zis.getNextEntry()){
-                if (ze.getName().startsWith("__MACOSX")) continue;
-                if (ze.getName().endsWith(".DS_Store")) continue;
-                
-                File ztemp = new File(ze.getName());
-                File zeout = new File(zout, ztemp.getName());
-                if (ze.isDirectory()) continue;
-                
-                try(FileOutputStream fos = new FileOutputStream(zeout)) {
-                    for(int i=zis.read(buf); i > -1; i=zis.read(buf)) {
-                        fos.write(buf, 0, i);
-                    }
-                }
-                
-                zeout = testForAptCompliantFilenames(zeout, aptHelper.allowSourceRename);
+        for(Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements();){
+            ZipEntry ze = en.nextElement();
+            if (ze.getName().startsWith("__MACOSX")) continue;
+            if (ze.getName().endsWith(".DS_Store")) continue;
+            if (ze.isDirectory()) continue;
+
+            //entries are placed at the top of the payload, as when the zip was extracted to a single directory
+            String name = testAptCompliantName(new File(ze.getName()).getName(), used, aptHelper.allowSourceRename);
 
-                if (ze.getName().equals(METSXML)) {
-                    aptHelper.parseMetsFile(zeout);
+            if (ze.getName().equals(METSXML)) {
+                try(InputStream is = zip.getInputStream(ze)) {
+                    aptHelper.parseMetsFile(is);
                 }
-                
-                bag.addFileToPayload(zeout);
-                count++;
             }
+
+            bag.putBagFile(new ZipEntryBagFile(zip, ze, bag.getBagConstants().getDataDirectory() + "/" + name));
+            count++;
         }
+        checkFilenames();
         return count;
     }
 
+    @Override public void readMetsFile(File f, APTrustHelper aptHelper) throws IOException, InvalidMetadataException {
+        try(ZipFile zf = new ZipFile(f)) {
+            ZipEntry ze = zf.getEntry(METSXML);
+            if (ze == null) return;
+            try(InputStream is = zf.getInputStream(ze)) {
+                aptHelper.parseMetsFile(is);
+            }
+        }
+    }
+
     @Override public void cleanup()  {
+        if (zip == null) return;
         try {
-            FileUtils.deleteDirectory(outdir);
-            System.out.println("**DEL: " + outdir.delete());
+            zip.close();
         } catch (IOException e1) {
             e1.printStackTrace();
         }
+        zip = null;
     }
 }
@@ -7,8 +7,14 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.xpath.XPath;
@@ -22,6 +28,8 @@ import gov.loc.repository.bagit.Bag;
 import gov.loc.repository.bagit.BagFile;
 import gov.loc.repository.bagit.BagInfoTxt;
 import gov.loc.repository.bagit.Manifest.Algorithm;
+import gov.loc.repository.bagit.impl.StringBagFile;
+import gov.loc.repository.bagit.utilities.SizeHelper;
 import edu.georgetown.library.fileAnalyzer.util.XMLUtil;
 import edu.georgetown.library.fileAnalyzer.util.XMLUtil.SimpleNamespaceContext;
 
@@ -36,6 +44,7 @@ public class APTrustHelper extends TarBagHelper {
     public static final String P_TITLE = "title";
     public static final String P_ACCESS = "access";
     public static final String P_ALLOW_RENAME = "allow-rename";
+    public static final String APTINFO = "aptrust-info.txt";
     
     public enum STAT {
         VALID,
@@ -47,6 +56,7 @@ public class APTrustHelper extends TarBagHelper {
     File aptinfo;
     private Map<String,String> checksums = new HashMap<>();
     boolean allowSourceRename;
+    List<File> bagFiles = new ArrayList<File>();
     
     public APTrustHelper(File parent, boolean allowSourceRename) {
     	super(parent);
@@ -175,22 +185,167 @@ public class APTrustHelper extends TarBagHelper {
     @Override public void generateBagInfoFiles() throws IOException, IncompleteSettingsException {
     	validate();
     	if (data.newBag == null) throw new IncompleteSettingsException("Bag File must be created - call createBagFile()");
-        aptinfo = new File(data.parent, "aptrust-info.txt");
+        aptinfo = new File(data.parent, APTINFO);
         BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(aptinfo),"UTF-8"));
-        bw.write(String.format("Title: %s%n", title));
-        bw.write(String.format("Access: %s%n", access));
+        bw.write(getAptInfoText());
         bw.close();
         data.bag.addFileAsTag(aptinfo);
 	    
         super.generateBagInfoFiles();
 
-	    BagInfoTxt bit = data.bag.getBagInfoTxt();
+        addBagInfo(data.bag.getBagInfoTxt());
+    }
+
+    String getAptInfoText() {
+        return String.format("Title: %s%nAccess: %s%n", title, access);
+    }
+
+    void addBagInfo(BagInfoTxt bit) {
         bit.addSourceOrganization(srcOrg);
 	    bit.addInternalSenderDescription(intSendDesc);
 	    bit.addInternalSenderIdentifier(intSendId);
 	    bit.addBagGroupIdentifier(parent);
 	    bit.setBagCount(String.format("%d of %d", ibagCount, ibagTotal));
     }
+
+    /**
+     * Write the bag as a tar file in a single pass over the payload, in place of generateBagInfoFiles(), saveChecksums() and writeBagFile().
+     * Each payload file is hashed as it is copied into the tar; the manifests, aptrust-info.txt and bag-info.txt follow the payload.
+     */
+    public void writeStreamingBagFile() throws IOException, IncompleteSettingsException {
+        validate();
+        if (data.newBag == null) throw new IncompleteSettingsException("Bag File must be created - call createBagFile()");
+        File tarFile = new File(data.parent, data.newBag.getName() + ".tar");
+        boolean complete = false;
+        try(TarBagWriter writer = new TarBagWriter(data.bag, tarFile, data.newBag.getName(), TarBagWriter.DEFAULT_ALGORITHMS)) {
+            for(BagFile bf: data.bag.getPayload()) {
+                writer.putPayloadFile(bf);
+            }
+            writer.putTagFile(data.bag.getBagPartFactory().createBagItTxt());
+            writer.putManifests();
+            writer.putTagFile(new StringBagFile(APTINFO, getAptInfoText().getBytes("UTF-8")));
+
+            //as with bagit, the bag size includes the tag files other than bag-info.txt
+            BagInfoTxt bit = data.bag.getBagPartFactory().createBagInfoTxt();
+            bit.setPayloadOxum(writer.getPayloadOctets(), writer.getPayloadCount());
+            bit.setBaggingDate(new Date());
+            bit.setBagSize(SizeHelper.getSize(writer.getPayloadOctets() + writer.getTagOctets()));
+            addBagInfo(bit);
+            writer.putTagFile(bit);
+
+            checksums.putAll(writer.getPayloadManifest(Algorithm.MD5));
+            complete = true;
+        } finally {
+            data.bag.close();
+            if (!complete) tarFile.delete();
+        }
+        data.newBag = tarFile;
+        bagFiles.add(tarFile);
+    }
+
+    /**
+     * Divide the payload, in path order, into groups of files whose total size does not exceed maxBagSize.
+     * A file larger than maxBagSize is placed in a group of its own.
+     * @param maxBagSize maximum payload size of a bag, 0 for no limit
+     */
+    List<List<BagFile>> splitPayload(long maxBagSize) {
+        List<BagFile> payload = new ArrayList<BagFile>(data.bag.getPayload());
+        Collections.sort(payload, new Comparator<BagFile>(){
+            public int compare(BagFile o1, BagFile o2) {
+                return o1.getFilepath().compareTo(o2.getFilepath());
+            }
+        });
+        List<List<BagFile>> parts = new ArrayList<List<BagFile>>();
+        List<BagFile> part = new ArrayList<BagFile>();
+        long size = 0;
+        for(BagFile bf: payload) {
+            if (maxBagSize > 0 && !part.isEmpty() && size + bf.getSize() > maxBagSize) {
+                parts.add(part);
+                part = new ArrayList<BagFile>();
+                size = 0;
+            }
+            part.add(bf);
+            size += bf.getSize();
+        }
+        parts.add(part);
+        return parts;
+    }
+
+    /**
+     * Create a helper for one bag of a multipart bag, with the same settings as this helper and part of its payload.
+     */
+    APTrustHelper createPart(int count, int total, List<BagFile> payload) {
+        APTrustHelper part = new APTrustHelper(data.source, allowSourceRename);
+        part.instId = instId;
+        part.itemUid = itemUid;
+        part.ibagCount = count;
+        part.ibagTotal = total;
+        part.access = access;
+        part.srcOrg = srcOrg;
+        part.intSendDesc = intSendDesc;
+        part.intSendId = intSendId;
+        part.title = title;
+        part.parent = parent;
+        for(BagFile bf: payload) {
+            part.data.bag.putBagFile(bf);
+        }
+        return part;
+    }
+
+    /**
+     * Write the bag as tar files with writeStreamingBagFile().
+     * If the payload is larger than maxBagSize it is divided between several bags named .b001.of00N, with the same bag info.
+     * The checksums of every bag are kept for compareChecksums().
+     * @param maxBagSize maximum payload size of a bag, 0 for no limit
+     * @return the tar files written
+     */
+    public List<File> writeStreamingBagFiles(long maxBagSize) throws IOException, IncompleteSettingsException {
+        validate();
+        List<List<BagFile>> parts = splitPayload(maxBagSize);
+        if (parts.size() == 1) {
+            createBagFile();
+            writeStreamingBagFile();
+            return bagFiles;
+        }
+        try {
+            for(int i = 0; i < parts.size(); i++) {
+                APTrustHelper part = createPart(i + 1, parts.size(), parts.get(i));
+                part.createBagFile();
+                part.writeStreamingBagFile();
+                checksums.putAll(part.checksums);
+                bagFiles.add(part.data.newBag);
+            }
+        } finally {
+            data.bag.close();
+        }
+        data.newBag = bagFiles.get(0);
+        return bagFiles;
+    }
+
+    public List<File> getBagFiles() {
+        return bagFiles;
+    }
+
+    /**
+     * @return the bag file of a single bag, whose name also begins the name of every bag of a multipart bag, or null if the item identifier is not known
+     */
+    public File getBaseBagFile() {
+        if (instId == null || itemUid == null) return null;
+        return new File(data.parent, instId + "." + itemUid);
+    }
+
+    /**
+     * @return the name of the bag file, or the names of every bag of a multipart bag separated by commas
+     */
+    @Override public String getFinalBagName() throws IncompleteSettingsException {
+        if (bagFiles.size() < 2) return super.getFinalBagName();
+        StringBuilder sb = new StringBuilder();
+        for(File f: bagFiles) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(f.getName());
+        }
+        return sb.toString();
+    }
     
     @Override public void writeBagFile() throws IOException, IncompleteSettingsException {
     	if (aptinfo == null) throw new IncompleteSettingsException("Aptinfo File must be created - call generateBagInfoFiles()");
@@ -200,7 +355,25 @@ public class APTrustHelper extends TarBagHelper {
 
     public void parseMetsFile(File zeout) throws IOException, InvalidMetadataException {
         try {
-            Document doc = XMLUtil.db_ns.parse(zeout);
+            parseMetsDocument(XMLUtil.getNamespaceDocumentBuilder().parse(zeout));
+        } catch (SAXException e) {
+            throw new InvalidMetadataException(e.getMessage());
+        }
+    }
+
+    /**
+     * Parse a mets.xml read from a stream, such as an entry of an AIP zip.
+     */
+    public void parseMetsFile(InputStream is) throws IOException, InvalidMetadataException {
+        try {
+            parseMetsDocument(XMLUtil.getNamespaceDocumentBuilder().parse(is));
+        } catch (SAXException e) {
+            throw new InvalidMetadataException(e.getMessage());
+        }
+    }
+
+    void parseMetsDocument(Document doc) throws InvalidMetadataException {
+        try {
             String id = doc.getDocumentElement().getAttribute("OBJID");
             if (id == null) throw new InvalidMetadataException("mets.xml root element must have an OBJID field");
             if (id.isEmpty()) throw new InvalidMetadataException("mets.xml root element must not have an empty OBJID field");
@@ -208,7 +381,7 @@ public class APTrustHelper extends TarBagHelper {
             
             setItemIdentifer(id.replaceFirst("hdl:", "").replaceFirst("/", "_"));
             
-            XPath xp = XMLUtil.xf.newXPath();
+            XPath xp = XMLUtil.newXPath();
             SimpleNamespaceContext nsContext = new XMLUtil().new SimpleNamespaceContext();
             nsContext.add("mods", "http://www.loc.gov/mods/v3");
             nsContext.add("mets", "http://www.loc.gov/METS/");
@@ -226,8 +399,6 @@ public class APTrustHelper extends TarBagHelper {
             }
             setParent(parent);
             setInstitutionalSenderDesc("See the bag manifest for the contents of the bag");
-        } catch (SAXException e) {
-            throw new InvalidMetadataException(e.getMessage());
         } catch (XPathExpressionException e) {
             throw new InvalidMetadataException(e.getMessage());
         }
@@ -236,9 +407,9 @@ public class APTrustHelper extends TarBagHelper {
     public void parseEadFile(File zeout) throws IOException, InvalidMetadataException {
         try {
 	    //namespace is opaque when coming out of AS
-            Document doc = XMLUtil.db.parse(zeout);
+            Document doc = XMLUtil.getDocumentBuilder().parse(zeout);
 		
-            XPath xp = XMLUtil.xf.newXPath();
+            XPath xp = XMLUtil.newXPath();
             String id = xp.evaluate("/ead/archdesc/did/unitid/text()", doc);
             if (id == null) throw new InvalidMetadataException("The ead must have a unitid");
             if (id.isEmpty()) throw new InvalidMetadataException("The ead must not have an empty unitid");
@@ -263,7 +434,7 @@ public class APTrustHelper extends TarBagHelper {
     public void parseHierarchyFile(File zeout) throws IOException, InvalidMetadataException {
         try {
             //namespace is opaque when coming out of AS
-            Document doc = XMLUtil.db.parse(zeout);
+            Document doc = XMLUtil.getDocumentBuilder().parse(zeout);
             NodeList nl = doc.getDocumentElement().getElementsByTagName("handle");
             if (nl.getLength() == 0) {
                     throw new InvalidMetadataException("The hierarchy file must have a root handle");
@@ -0,0 +1,319 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import gov.loc.repository.bagit.Bag;
+import gov.loc.repository.bagit.BagFactory;
+import gov.loc.repository.bagit.ManifestReader;
+import gov.loc.repository.bagit.ManifestReader.FilenameFixity;
+import gov.loc.repository.bagit.Manifest.Algorithm;
+import gov.loc.repository.bagit.impl.StringBagFile;
+import gov.loc.repository.bagit.utilities.SimpleResult;
+import gov.loc.repository.bagit.utilities.SimpleResultHelper;
+
+/**
+ * Verifies a bag held in an archive file without extracting it.
+ * <p>
+ * Subclasses list the files of the archive, keep the contents of the small files that may be tag files, and supply the digests of files.
+ * The bag is then checked the way bagit checks a bag on disk: it must be complete, and every file listed in a manifest must match its digest.
+ * Messages use the codes and wording of bagit so results can be compared with those of an extracted bag.
+ * <p>
+ * An archive holding a single directory is treated as a bag held in that directory.
+ * @author TBrady
+ *
+ */
+public abstract class ArchiveBagVerifier {
+    /** files other than manifests larger than this are never treated as tag files */
+    public static final int TAG_LIMIT = 1024 * 1024;
+    public static final String BAGIT = "bagit.txt";
+    public static final String DATA = "data/";
+    public static final String MANIFEST = "manifest-";
+    public static final String TAGMANIFEST = "tagmanifest-";
+    public static final String TXT = ".txt";
+
+    protected File archive;
+    BagFactory bf = new BagFactory();
+    //digests of each file in the archive, by name within the archive
+    LinkedHashMap<String, EnumMap<Algorithm, String>> files = new LinkedHashMap<String, EnumMap<Algorithm, String>>();
+    TreeSet<String> dirs = new TreeSet<String>();
+    HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+    String prefix = "";
+    int payloadCount = 0;
+    Bag tagBag;
+
+    public ArchiveBagVerifier(File archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * List every file and directory in the archive, keeping the contents of possible tag files and any digests computed on the way.
+     */
+    protected abstract void readEntries() throws IOException;
+
+    /**
+     * Compute the digests that were not supplied while the archive was read.
+     * @param needed algorithms needed for each file, by name within the archive
+     */
+    protected abstract void computeDigests(Map<String, Set<Algorithm>> needed) throws IOException;
+
+    protected void addDirectory(String name) {
+        name = normalize(name);
+        if (!name.isEmpty()) dirs.add(name.endsWith("/") ? name : name + "/");
+    }
+
+    protected void addFile(String name) {
+        name = normalize(name);
+        if (!files.containsKey(name)) files.put(name, new EnumMap<Algorithm, String>(Algorithm.class));
+    }
+
+    protected void putDigest(String name, Algorithm alg, String digest) {
+        EnumMap<Algorithm, String> digests = files.get(normalize(name));
+        if (digests != null) digests.put(alg, digest);
+    }
+
+    protected void putContents(String name, byte[] data) {
+        contents.put(normalize(name), data);
+    }
+
+    /**
+     * @return true if a file may be a tag file of the bag, either at the top of the archive or at the top of its only directory.
+     * Manifests are kept whatever their size.
+     */
+    protected boolean isPossibleTag(String name, long size) {
+        name = normalize(name);
+        if (name.startsWith(DATA) || name.contains("/" + DATA)) return false;
+        int slash = name.indexOf('/');
+        if (slash >= 0 && name.indexOf('/', slash + 1) >= 0) return false;
+        String base = name.substring(slash + 1);
+        if (base.startsWith(MANIFEST) || base.startsWith(TAGMANIFEST)) return true;
+        return size <= TAG_LIMIT;
+    }
+
+    static String normalize(String name) {
+        while(name.startsWith("./")) name = name.substring(2);
+        return name;
+    }
+
+    /**
+     * @return a digest of each algorithm, updated together
+     */
+    protected static EnumMap<Algorithm, MessageDigest> createDigests(Set<Algorithm> algs) throws IOException {
+        EnumMap<Algorithm, MessageDigest> digests = new EnumMap<Algorithm, MessageDigest>(Algorithm.class);
+        for(Algorithm alg: algs) {
+            try {
+                digests.put(alg, MessageDigest.getInstance(alg.javaSecurityAlgorithm));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+        return digests;
+    }
+
+    protected static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for(byte b: digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the number of payload files listed in the manifests, available once the bag has been verified
+     */
+    public int getPayloadCount() {
+        return payloadCount;
+    }
+
+    /**
+     * @return a bag holding the tag files found at the top of the bag, available once the bag has been verified
+     */
+    public Bag getTagBag() {
+        return tagBag;
+    }
+
+    String getPath(String name) {
+        return name.substring(prefix.length());
+    }
+
+    /**
+     * An archive whose names all start with the same directory holds the bag in that directory.
+     */
+    void findPrefix() {
+        String top = null;
+        List<String> names = new ArrayList<String>(files.keySet());
+        names.addAll(dirs);
+        for(String name: names) {
+            int slash = name.indexOf('/');
+            String seg = slash < 0 ? name : name.substring(0, slash + 1);
+            if (top == null) {
+                top = seg;
+            } else if (!top.equals(seg)) {
+                return;
+            }
+        }
+        if (top != null && top.endsWith("/")) prefix = top;
+    }
+
+    Algorithm getAlgorithm(String path, String start) {
+        if (!path.startsWith(start) || !path.endsWith(TXT) || path.contains("/")) return null;
+        try {
+            return Algorithm.valueOfBagItAlgorithm(path.substring(start.length(), path.length() - TXT.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    LinkedHashMap<String, String> readManifest(String name) {
+        LinkedHashMap<String, String> manifest = new LinkedHashMap<String, String>();
+        ManifestReader reader = bf.getBagPartFactory().createManifestReader(new ByteArrayInputStream(contents.get(name)), "UTF-8");
+        try {
+            while(reader.hasNext()) {
+                FilenameFixity ff = reader.next();
+                manifest.put(ff.getFilename(), ff.getFixityValue());
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Read the archive and check that the bag it holds is complete and valid.
+     */
+    public SimpleResult verify() throws IOException {
+        readEntries();
+        findPrefix();
+
+        tagBag = bf.createBag();
+        LinkedHashMap<String, Map<String, String>> payloadManifests = new LinkedHashMap<String, Map<String, String>>();
+        LinkedHashMap<String, Map<String, String>> tagManifests = new LinkedHashMap<String, Map<String, String>>();
+        HashMap<String, Algorithm> algs = new HashMap<String, Algorithm>();
+        HashMap<String, String> names = new HashMap<String, String>();
+        for(String name: files.keySet()) {
+            if (!name.startsWith(prefix)) continue;
+            String path = getPath(name);
+            names.put(path, name);
+            if (path.startsWith(DATA)) continue;
+            if (path.contains("/") || !contents.containsKey(name)) continue;
+            byte[] data = contents.get(name);
+            if (path.equals(tagBag.getBagConstants().getBagInfoTxt())) {
+                tagBag.putBagFile(tagBag.getBagPartFactory().createBagInfoTxt(new StringBagFile(path, data)));
+            } else {
+                tagBag.putBagFile(new StringBagFile(path, data));
+            }
+            Algorithm alg = getAlgorithm(path, MANIFEST);
+            if (alg != null) {
+                payloadManifests.put(path, readManifest(name));
+                algs.put(path, alg);
+            }
+            alg = getAlgorithm(path, TAGMANIFEST);
+            if (alg != null) {
+                tagManifests.put(path, readManifest(name));
+                algs.put(path, alg);
+            }
+        }
+
+        //like a bag loaded by bagit, the payload is the set of files listed in the payload manifests
+        HashSet<String> payload = new HashSet<String>();
+        for(Map<String, String> manifest: payloadManifests.values()) {
+            payload.addAll(manifest.keySet());
+        }
+        payloadCount = payload.size();
+
+        SimpleResult result = new SimpleResult(true);
+        if (payloadManifests.isEmpty()) {
+            result.setSuccess(false);
+            result.addMessage("no_payload_manifest", "Bag does not have any payload manifests.");
+        }
+        if (!names.containsKey(BAGIT)) {
+            result.setSuccess(false);
+            result.addMessage("no_bagittxt", MessageFormat.format("Bag does not have {0}.", BAGIT));
+        }
+        if (!result.isSuccess()) return result;
+
+        for(Map.Entry<String, Map<String, String>> manifest: payloadManifests.entrySet()) {
+            for(String path: manifest.getValue().keySet()) {
+                if (!path.startsWith(DATA)) {
+                    result.setSuccess(false);
+                    result.addMessage("tag_in_payload_manifest", MessageFormat.format("Tag file is listed in payload manifest {0}: {1}", manifest.getKey(), path), manifest.getKey(), path);
+                }
+            }
+        }
+        for(String path: names.keySet()) {
+            if (!path.startsWith(DATA)) continue;
+            boolean found = false;
+            for(Map<String, String> manifest: payloadManifests.values()) {
+                if (manifest.containsKey(path)) found = true;
+            }
+            if (!found) {
+                result.setSuccess(false);
+                result.addMessage("payload_file_not_in_payload_manifest", MessageFormat.format("Payload file {0} not found in any payload manifest.", path), path);
+            }
+        }
+        for(Map.Entry<String, Map<String, String>> manifest: payloadManifests.entrySet()) {
+            for(String path: manifest.getValue().keySet()) {
+                if (!names.containsKey(path)) SimpleResultHelper.missingPayloadFile(result, manifest.getKey(), path);
+            }
+        }
+        for(Map.Entry<String, Map<String, String>> manifest: tagManifests.entrySet()) {
+            for(String path: manifest.getValue().keySet()) {
+                if (!names.containsKey(path)) SimpleResultHelper.missingTagFile(result, manifest.getKey(), path);
+            }
+        }
+        if (!result.isSuccess()) return result;
+
+        LinkedHashMap<String, Set<Algorithm>> needed = new LinkedHashMap<String, Set<Algorithm>>();
+        LinkedHashMap<String, Map<String, String>> manifests = new LinkedHashMap<String, Map<String, String>>(tagManifests);
+        manifests.putAll(payloadManifests);
+        for(Map.Entry<String, Map<String, String>> manifest: manifests.entrySet()) {
+            Algorithm alg = algs.get(manifest.getKey());
+            for(String path: manifest.getValue().keySet()) {
+                String name = names.get(path);
+                if (files.get(name).containsKey(alg)) continue;
+                Set<Algorithm> set = needed.get(name);
+                if (set == null) {
+                    set = EnumSet.noneOf(Algorithm.class);
+                    needed.put(name, set);
+                }
+                set.add(alg);
+            }
+        }
+        if (!needed.isEmpty()) computeDigests(needed);
+
+        for(Map.Entry<String, Map<String, String>> manifest: manifests.entrySet()) {
+            Algorithm alg = algs.get(manifest.getKey());
+            boolean isPayload = payloadManifests.containsKey(manifest.getKey());
+            for(Map.Entry<String, String> entry: manifest.getValue().entrySet()) {
+                String digest = files.get(names.get(entry.getKey())).get(alg);
+                if (digest != null && digest.equalsIgnoreCase(entry.getValue().trim())) continue;
+                result.setSuccess(false);
+                if (isPayload) {
+                    SimpleResultHelper.invalidPayloadFile(result, manifest.getKey(), entry.getKey());
+                } else {
+                    SimpleResultHelper.invalidTagFile(result, manifest.getKey(), entry.getKey());
+                }
+            }
+        }
+        return result;
+    }
+}
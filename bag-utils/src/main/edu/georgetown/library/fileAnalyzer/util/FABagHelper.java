@@ -2,12 +2,23 @@ package edu.georgetown.library.fileAnalyzer.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import gov.loc.repository.bagit.Bag;
 import gov.loc.repository.bagit.BagFactory;
+import gov.loc.repository.bagit.BagFile;
 import gov.loc.repository.bagit.BagInfoTxt;
+import gov.loc.repository.bagit.Manifest;
+import gov.loc.repository.bagit.Manifest.Algorithm;
+import gov.loc.repository.bagit.ManifestHelper;
+import gov.loc.repository.bagit.impl.FileBagFile;
 import gov.loc.repository.bagit.transformer.impl.DefaultCompleter;
+import gov.loc.repository.bagit.utilities.MessageDigestHelper;
+import gov.loc.repository.bagit.utilities.SimpleResult;
 import gov.loc.repository.bagit.writer.Writer;
 import gov.loc.repository.bagit.writer.impl.FileSystemWriter;
 
@@ -57,6 +68,31 @@ public class FABagHelper {
     public Bag getBag() {
     	return data.bag;
     }
+
+    /**
+     * Use a fixity cache to supply the digests of unchanged payload files when the payload manifest is generated.
+     */
+    public void setFixityCache(FixityCache fixityCache) {
+        data.fixityCache = fixityCache;
+    }
+
+    /**
+     * Fill the payload manifest from the fixity cache.
+     * @return false if the payload contains a file that is not on disk, in which case the completer must generate the manifest
+     */
+    boolean fillPayloadManifest(Algorithm alg) throws IOException {
+        Manifest manifest = data.bag.getBagPartFactory().createManifest(ManifestHelper.getPayloadManifestFilename(alg, data.bag.getBagConstants()));
+        for(BagFile bf: data.bag.getPayload()) {
+            if (!(bf instanceof FileBagFile)) return false;
+            try {
+                manifest.put(bf.getFilepath(), data.fixityCache.digest(((FileBagFile)bf).getFile(), alg.javaSecurityAlgorithm));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+        data.bag.putBagFile(manifest);
+        return true;
+    }
     
     public void generateBagInfoFiles() throws IOException, IncompleteSettingsException {
     	validate();
@@ -69,6 +105,9 @@ public class FABagHelper {
 		comp.setUpdateBagSize(true);
 		comp.setUpdatePayloadOxum(true);
 		comp.setGenerateTagManifest(false);
+		if ((data.fixityCache != null) && (data.fixityCache.getPolicy() != FixityCache.Policy.OFF)) {
+		    comp.setCompletePayloadManifests(!fillPayloadManifest(Algorithm.MD5));
+		}
 		
 		data.bag = comp.complete(data.bag);
     }
@@ -87,6 +126,43 @@ public class FABagHelper {
     	return data.newBag.getName();
     }
 
+    /**
+     * Verify a bag using a fixity cache for the digests of files on disk.
+     * The bag is first checked for completeness; each manifest entry is then compared with the digest supplied by the cache.
+     * Entries of a bag that is not a directory (such as a zip file) are hashed from the bag.
+     */
+    public static SimpleResult verifyValid(Bag bag, FixityCache cache) {
+        SimpleResult result = bag.verifyComplete();
+        if (!result.isSuccess()) return result;
+        File dir = bag.getFile().isDirectory() ? bag.getFile() : null;
+        ArrayList<Manifest> manifests = new ArrayList<Manifest>(bag.getPayloadManifests());
+        manifests.addAll(bag.getTagManifests());
+        for(Manifest manifest: manifests) {
+            Algorithm alg = manifest.getAlgorithm();
+            for(Map.Entry<String,String> entry: manifest.entrySet()) {
+                String digest;
+                try {
+                    if (dir != null) {
+                        digest = cache.digest(new File(dir, entry.getKey()), alg.javaSecurityAlgorithm);
+                    } else {
+                        try(InputStream is = bag.getBagFile(entry.getKey()).newInputStream()) {
+                            digest = MessageDigestHelper.generateFixity(is, alg);
+                        }
+                    }
+                } catch (IOException | NoSuchAlgorithmException e) {
+                    result.setSuccess(false);
+                    result.addMessage(String.format("Fixity of %s cannot be computed: %s", entry.getKey(), e.getMessage()));
+                    continue;
+                }
+                if (!digest.equalsIgnoreCase(entry.getValue().trim())) {
+                    result.setSuccess(false);
+                    result.addMessage(String.format("Fixity failure in manifest %s: %s expected %s, found %s", manifest.getFilepath(), entry.getKey(), entry.getValue(), digest));
+                }
+            }
+        }
+        return result;
+    }
+
     public void setBagCountStr(String countStr) throws IncompleteSettingsException {
         BagInfoTxt bit = data.bag.getBagInfoTxt();
         if (bit == null) {
@@ -11,6 +11,7 @@ public class FABagHelperData {
     public File newBag;
     public Bag bag;
     public BagFactory bf;
+    public FixityCache fixityCache;
 
     public FABagHelperData() {
     }
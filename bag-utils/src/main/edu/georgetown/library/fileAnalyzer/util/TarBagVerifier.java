@@ -0,0 +1,94 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import gov.loc.repository.bagit.Manifest.Algorithm;
+
+/**
+ * Verifies a bag held in a tar file with a single read of the tar.
+ * <p>
+ * Each file is hashed as it is read with the algorithms of the manifests found so far and the algorithms bags are usually made with,
+ * so payload files stored before the manifests can still be checked.
+ * The tar is only read a second time, for the files concerned, if a manifest uses an algorithm that was not computed for a file stored before it.
+ * @author TBrady
+ *
+ */
+public class TarBagVerifier extends ArchiveBagVerifier {
+    public static final Set<Algorithm> DEFAULT_ALGORITHMS = EnumSet.of(Algorithm.MD5, Algorithm.SHA256);
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    public TarBagVerifier(File tar) {
+        super(tar);
+    }
+
+    TarArchiveInputStream open() throws IOException {
+        return new TarArchiveInputStream(new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE));
+    }
+
+    @Override protected void readEntries() throws IOException {
+        Set<Algorithm> algs = EnumSet.copyOf(DEFAULT_ALGORITHMS);
+        byte[] buf = new byte[BUFFER_SIZE];
+        try(TarArchiveInputStream tar = open()) {
+            for(TarArchiveEntry entry = tar.getNextTarEntry(); entry != null; entry = tar.getNextTarEntry()) {
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    addDirectory(name);
+                    continue;
+                }
+                //only the first of several files with the same name is kept
+                if (!entry.isFile() || files.containsKey(normalize(name))) continue;
+                addFile(name);
+                boolean keep = isPossibleTag(name, entry.getSize());
+                ByteArrayOutputStream bos = keep ? new ByteArrayOutputStream((int)Math.min(entry.getSize(), BUFFER_SIZE)) : null;
+                Map<Algorithm, MessageDigest> digests = createDigests(algs);
+                for(int n = tar.read(buf); n > 0; n = tar.read(buf)) {
+                    for(MessageDigest md: digests.values()) {
+                        md.update(buf, 0, n);
+                    }
+                    if (keep) bos.write(buf, 0, n);
+                }
+                for(Map.Entry<Algorithm, MessageDigest> digest: digests.entrySet()) {
+                    putDigest(name, digest.getKey(), toHex(digest.getValue().digest()));
+                }
+                if (keep) {
+                    putContents(name, bos.toByteArray());
+                    //later files are also hashed for the algorithm of a manifest
+                    String base = name.substring(name.lastIndexOf('/') + 1);
+                    Algorithm alg = getAlgorithm(base, MANIFEST);
+                    if (alg == null) alg = getAlgorithm(base, TAGMANIFEST);
+                    if (alg != null) algs.add(alg);
+                }
+            }
+        }
+    }
+
+    @Override protected void computeDigests(Map<String, Set<Algorithm>> needed) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        try(TarArchiveInputStream tar = open()) {
+            for(TarArchiveEntry entry = tar.getNextTarEntry(); entry != null; entry = tar.getNextTarEntry()) {
+                String name = normalize(entry.getName());
+                if (!entry.isFile() || !needed.containsKey(name)) continue;
+                Map<Algorithm, MessageDigest> digests = createDigests(needed.remove(name));
+                for(int n = tar.read(buf); n > 0; n = tar.read(buf)) {
+                    for(MessageDigest md: digests.values()) {
+                        md.update(buf, 0, n);
+                    }
+                }
+                for(Map.Entry<Algorithm, MessageDigest> digest: digests.entrySet()) {
+                    putDigest(name, digest.getKey(), toHex(digest.getValue().digest()));
+                }
+            }
+        }
+    }
+}
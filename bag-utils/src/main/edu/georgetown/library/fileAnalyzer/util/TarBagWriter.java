@@ -0,0 +1,159 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import gov.loc.repository.bagit.Bag;
+import gov.loc.repository.bagit.BagFile;
+import gov.loc.repository.bagit.Manifest;
+import gov.loc.repository.bagit.Manifest.Algorithm;
+import gov.loc.repository.bagit.ManifestHelper;
+
+/**
+ * Writes a bag straight into a tar file.
+ * <p>
+ * Each payload file is read once, hashed while it is copied into the tar, and its digests are added to the payload manifests.
+ * The tag files that depend on the payload, such as the manifests and the Payload-Oxum of bag-info.txt, are written after the payload.
+ * @author TBrady
+ *
+ */
+public class TarBagWriter implements Closeable {
+    public static final Set<Algorithm> DEFAULT_ALGORITHMS = TarBagVerifier.DEFAULT_ALGORITHMS;
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    Bag bag;
+    String base;
+    TarArchiveOutputStream tar;
+    EnumMap<Algorithm, Manifest> manifests = new EnumMap<Algorithm, Manifest>(Algorithm.class);
+    HashSet<String> dirs = new HashSet<String>();
+    byte[] buf = new byte[BUFFER_SIZE];
+    long payloadOctets = 0;
+    int payloadCount = 0;
+    long tagOctets = 0;
+
+    /**
+     * @param bag bag supplying the part factory and constants used to create the manifests
+     * @param tarFile tar file to create
+     * @param name name of the directory holding the bag within the tar
+     * @param algs algorithms of the payload manifests
+     */
+    public TarBagWriter(Bag bag, File tarFile, String name, Set<Algorithm> algs) throws IOException {
+        this.bag = bag;
+        this.base = name + "/";
+        for(Algorithm alg: algs) {
+            manifests.put(alg, bag.getBagPartFactory().createManifest(ManifestHelper.getPayloadManifestFilename(alg, bag.getBagConstants())));
+        }
+        tar = new TarArchiveOutputStream(new BufferedOutputStream(new FileOutputStream(tarFile), BUFFER_SIZE));
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+        putDirectory(base);
+    }
+
+    void putDirectory(String path) throws IOException {
+        if (!dirs.add(path)) return;
+        tar.putArchiveEntry(new TarArchiveEntry(path));
+        tar.closeArchiveEntry();
+    }
+
+    /**
+     * Write the directory entries leading to a file that have not been written yet.
+     */
+    void putParents(String path) throws IOException {
+        for(int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            putDirectory(base + path.substring(0, slash + 1));
+        }
+    }
+
+    /**
+     * Copy a payload file into the tar, adding its digests to the payload manifests.
+     */
+    public void putPayloadFile(BagFile bf) throws IOException {
+        String path = bf.getFilepath();
+        putParents(path);
+        TarArchiveEntry arch = new TarArchiveEntry(base + path);
+        arch.setSize(bf.getSize());
+        tar.putArchiveEntry(arch);
+        EnumMap<Algorithm, MessageDigest> digests = ArchiveBagVerifier.createDigests(manifests.keySet());
+        long size = 0;
+        try(InputStream is = bf.newInputStream()) {
+            for(int n = is.read(buf); n > -1; n = is.read(buf)) {
+                for(MessageDigest md: digests.values()) {
+                    md.update(buf, 0, n);
+                }
+                tar.write(buf, 0, n);
+                size += n;
+            }
+        }
+        tar.closeArchiveEntry();
+        for(Map.Entry<Algorithm, MessageDigest> digest: digests.entrySet()) {
+            manifests.get(digest.getKey()).put(path, ArchiveBagVerifier.toHex(digest.getValue().digest()));
+        }
+        payloadOctets += size;
+        payloadCount++;
+    }
+
+    /**
+     * Write a tag file into the tar.  Its content is generated in memory so that its size is known before it is written.
+     */
+    public void putTagFile(BagFile bf) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try(InputStream is = bf.newInputStream()) {
+            for(int n = is.read(buf); n > -1; n = is.read(buf)) {
+                bos.write(buf, 0, n);
+            }
+        }
+        String path = bf.getFilepath();
+        putParents(path);
+        TarArchiveEntry arch = new TarArchiveEntry(base + path);
+        arch.setSize(bos.size());
+        tar.putArchiveEntry(arch);
+        bos.writeTo(tar);
+        tar.closeArchiveEntry();
+        tagOctets += bos.size();
+    }
+
+    /**
+     * Write the payload manifests once every payload file has been written.
+     */
+    public void putManifests() throws IOException {
+        for(Manifest manifest: manifests.values()) {
+            putTagFile(manifest);
+        }
+    }
+
+    public Manifest getPayloadManifest(Algorithm alg) {
+        return manifests.get(alg);
+    }
+
+    public long getPayloadOctets() {
+        return payloadOctets;
+    }
+
+    public int getPayloadCount() {
+        return payloadCount;
+    }
+
+    /**
+     * @return the size of the tag files written so far
+     */
+    public long getTagOctets() {
+        return tagOctets;
+    }
+
+    @Override public void close() throws IOException {
+        tar.close();
+    }
+}
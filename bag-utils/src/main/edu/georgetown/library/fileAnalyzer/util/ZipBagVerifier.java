@@ -0,0 +1,138 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import gov.loc.repository.bagit.Manifest.Algorithm;
+import gov.loc.repository.bagit.utilities.SimpleResult;
+
+/**
+ * Verifies a bag held in a zip file without extracting it.
+ * <p>
+ * The central directory of the zip lists every file, so the tag files and manifests are read first.
+ * The files listed in the manifests are then hashed by a thread pool belonging to the verification, each worker inflating its own entry,
+ * and the digests are collected on the calling thread.  The pool is shut down when the hashing ends.
+ * @author TBrady
+ *
+ */
+public class ZipBagVerifier extends ArchiveBagVerifier {
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    ZipFile zip;
+
+    public ZipBagVerifier(File zipFile) {
+        super(zipFile);
+    }
+
+    @Override protected void readEntries() throws IOException {
+        zip = new ZipFile(archive);
+        for(Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements();) {
+            ZipEntry entry = en.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory()) {
+                addDirectory(name);
+                continue;
+            }
+            addFile(name);
+            if (isPossibleTag(name, entry.getSize())) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                byte[] buf = new byte[BUFFER_SIZE];
+                try(InputStream is = zip.getInputStream(entry)) {
+                    for(int n = is.read(buf); n > 0; n = is.read(buf)) {
+                        bos.write(buf, 0, n);
+                    }
+                }
+                putContents(name, bos.toByteArray());
+            }
+        }
+    }
+
+    Map<Algorithm, String> digest(String name, Set<Algorithm> algs) throws IOException {
+        Map<Algorithm, MessageDigest> digests = createDigests(algs);
+        byte[] buf = new byte[BUFFER_SIZE];
+        try(InputStream is = zip.getInputStream(zip.getEntry(name))) {
+            for(int n = is.read(buf); n > 0; n = is.read(buf)) {
+                for(MessageDigest md: digests.values()) {
+                    md.update(buf, 0, n);
+                }
+            }
+        }
+        EnumMap<Algorithm, String> result = new EnumMap<Algorithm, String>(Algorithm.class);
+        for(Map.Entry<Algorithm, MessageDigest> digest: digests.entrySet()) {
+            result.put(digest.getKey(), toHex(digest.getValue().digest()));
+        }
+        return result;
+    }
+
+    static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verification interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Hash the files in parallel.  A limited number of files are hashed ahead of the digests being collected.
+     */
+    @Override protected void computeDigests(Map<String, Set<Algorithm>> needed) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int ahead = Math.max(2, threads * 2);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<String> names = new ArrayDeque<String>();
+        ArrayDeque<Future<Map<Algorithm, String>>> pending = new ArrayDeque<Future<Map<Algorithm, String>>>();
+        try {
+            for(final Map.Entry<String, Set<Algorithm>> entry: needed.entrySet()) {
+                names.add(entry.getKey());
+                pending.add(pool.submit(new Callable<Map<Algorithm, String>>(){
+                    public Map<Algorithm, String> call() throws IOException {
+                        return digest(entry.getKey(), entry.getValue());
+                    }
+                }));
+                if (pending.size() >= ahead) collect(names.poll(), await(pending.poll()));
+            }
+            while(!pending.isEmpty()) {
+                collect(names.poll(), await(pending.poll()));
+            }
+        } finally {
+            for(Future<Map<Algorithm, String>> task: pending) {
+                task.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    void collect(String name, Map<Algorithm, String> digests) {
+        for(Map.Entry<Algorithm, String> digest: digests.entrySet()) {
+            putDigest(name, digest.getKey(), digest.getValue());
+        }
+    }
+
+    @Override public SimpleResult verify() throws IOException {
+        try {
+            return super.verify();
+        } finally {
+            if (zip != null) zip.close();
+            zip = null;
+        }
+    }
+}
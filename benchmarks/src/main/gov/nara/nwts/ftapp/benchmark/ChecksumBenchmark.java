@@ -0,0 +1,58 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import gov.nara.nwts.ftapp.FTDriver;
+import gov.nara.nwts.ftapp.filetest.NameChecksum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checksum of a single file by the checksum test.  Files are read from the page cache after the first iteration.
+ * @author TBrady
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+	@Param({"1024", "65536", "1048576", "16777216", "134217728"})
+	public int size;
+
+	@Param({"MD5", "SHA1", "SHA256"})
+	public String algorithm;
+
+	NameChecksum test;
+	File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File dir = FixtureGenerator.getFixtureDir();
+		file = FixtureGenerator.sizedFile(dir, size, FixtureGenerator.SEED);
+		FTDriver dt = new FTDriver(dir);
+		test = new NameChecksum(dt);
+		test.setProperty(NameChecksum.ALGORITHM, algorithm);
+		test.init();
+	}
+
+	@Benchmark
+	public String getChecksum() {
+		return test.getChecksum(file);
+	}
+}
@@ -0,0 +1,67 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import gov.nara.nwts.ftapp.importer.DelimitedFileReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading every row of a generated delimited file, as the importers do.
+ * @author TBrady
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DelimitedReaderBenchmark {
+	@Param({"TAB", "COMMA"})
+	public String sep;
+
+	@Param({"false", "true"})
+	public boolean quoted;
+
+	@Param({"10000", "100000"})
+	public int rows;
+
+	@Param({"10"})
+	public int cols;
+
+	File file;
+	String separator;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		separator = sep.equals("TAB") ? "\t" : ",";
+		file = FixtureGenerator.delimitedFile(FixtureGenerator.getFixtureDir(), rows, cols, separator, quoted, FixtureGenerator.SEED);
+	}
+
+	@Benchmark
+	public int getRow(Blackhole bh) throws IOException {
+		DelimitedFileReader dfr = new DelimitedFileReader(file, separator);
+		int count = 0;
+		for(Vector<String> row = dfr.getRow(); row != null; row = dfr.getRow()) {
+			bh.consume(row);
+			count++;
+		}
+		return count;
+	}
+}
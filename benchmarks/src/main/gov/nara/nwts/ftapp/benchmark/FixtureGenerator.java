@@ -0,0 +1,203 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates reproducible fixtures for the benchmarks.
+ * <p>
+ * The same shape, file count and seed always produce the same directory names, file names, file sizes and file content.
+ * A fixture is created once and reused by later runs; a marker file written next to the fixture directory records the settings that produced it.
+ * <p>
+ * Usage: FixtureGenerator dir WIDE|DEEP files [seed] [maxsize]
+ * @author TBrady
+ *
+ */
+public class FixtureGenerator {
+	public static final long SEED = 20161018L;
+	public static final int MAX_SIZE = 4096;
+	static final String[] EXTS = {"txt", "jpg", "tif", "xml", "pdf", "csv", "TIF", "wav"};
+
+	/**
+	 * Layout of a fixture tree.  Files are placed in directories holding {@link #fanout} files,
+	 * and directories are nested {@link #fanout} to a level.
+	 */
+	public static enum Shape {
+		/** a thousand files per directory, few levels */
+		WIDE(1000),
+		/** four files per directory, many levels */
+		DEEP(4);
+		int fanout;
+		Shape(int fanout) {this.fanout = fanout;}
+	}
+
+	/**
+	 * Return the directory holding a fixture tree, creating it if the tree does not already exist.
+	 */
+	public static File tree(File parent, Shape shape, int files, long seed, int maxSize) throws IOException {
+		String name = String.format("%s-%d-%d-%d", shape.toString().toLowerCase(), files, seed, maxSize);
+		File root = new File(parent, name);
+		File marker = new File(parent, name + ".fixture");
+		if (marker.exists()) return root;
+		root.mkdirs();
+		Random rand = new Random(seed);
+		byte[] buf = new byte[maxSize + 1];
+		for(int i=0; i<files; i++) {
+			File dir = new File(root, getDirPath(shape, i / shape.fanout));
+			dir.mkdirs();
+			int size = rand.nextInt(maxSize + 1);
+			rand.nextBytes(buf);
+			File f = new File(dir, String.format("f%07d.%s", i, EXTS[rand.nextInt(EXTS.length)]));
+			try(FileOutputStream fos = new FileOutputStream(f)) {
+				fos.write(buf, 0, size);
+			}
+		}
+		Files.write(marker.toPath(), String.format("%s\t%d\t%d\t%d%n", shape, files, seed, maxSize).getBytes(StandardCharsets.UTF_8));
+		return root;
+	}
+
+	public static File tree(File parent, Shape shape, int files) throws IOException {
+		return tree(parent, shape, files, SEED, MAX_SIZE);
+	}
+
+	/**
+	 * Path of a directory within the tree, one level per digit of the directory number.
+	 */
+	static String getDirPath(Shape shape, int dirnum) {
+		String path = "d" + (dirnum % shape.fanout);
+		for(dirnum /= shape.fanout; dirnum > 0; dirnum /= shape.fanout) {
+			path = "d" + (dirnum % shape.fanout) + File.separator + path;
+		}
+		return path;
+	}
+
+	/**
+	 * Return a file of random content of the given size, creating it if it does not already exist.
+	 */
+	public static File sizedFile(File parent, int size, long seed) throws IOException {
+		File f = new File(parent, String.format("data-%d-%d.bin", size, seed));
+		if (f.exists() && f.length() == size) return f;
+		parent.mkdirs();
+		Random rand = new Random(seed);
+		byte[] buf = new byte[64 * 1024];
+		try(FileOutputStream fos = new FileOutputStream(f)) {
+			for(int remain = size; remain > 0; remain -= buf.length) {
+				rand.nextBytes(buf);
+				fos.write(buf, 0, Math.min(remain, buf.length));
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Return a delimited file of random words, creating it if it does not already exist.
+	 * When quoted, every other column is quoted and some quoted values contain the separator or an escaped quote.
+	 */
+	public static File delimitedFile(File parent, int rows, int cols, String sep, boolean quoted, long seed) throws IOException {
+		String sepname = sep.equals("\t") ? "tab" : sep.equals(",") ? "comma" : "sep";
+		File f = new File(parent, String.format("delim-%s-%s-%d-%d-%d.txt", sepname, quoted, rows, cols, seed));
+		if (f.exists()) return f;
+		parent.mkdirs();
+		Random rand = new Random(seed);
+		try(Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+			for(int r=0; r<rows; r++) {
+				for(int c=0; c<cols; c++) {
+					if (c > 0) w.write(sep);
+					String word = word(rand);
+					if (quoted && (c % 2 == 1)) {
+						int mode = rand.nextInt(4);
+						if (mode == 0) word = word + sep + word(rand);
+						else if (mode == 1) word = word + "\"\"" + word(rand);
+						w.write("\"" + word + "\"");
+					} else {
+						w.write(word);
+					}
+				}
+				w.write("\n");
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Return a file of log lines suited to the rules of {@link #parserRules(File)}, creating it if it does not already exist.
+	 */
+	public static File parserInput(File parent, int rows, long seed) throws IOException {
+		File f = new File(parent, String.format("parse-%d-%d.txt", rows, seed));
+		if (f.exists()) return f;
+		parent.mkdirs();
+		Random rand = new Random(seed);
+		try(Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+			for(int r=0; r<rows; r++) {
+				switch(rand.nextInt(4)) {
+				case 0:
+					w.write(String.format("%s-%d\t%s\tpaid $%d today", word(rand), rand.nextInt(100000), word(rand), rand.nextInt(1000)));
+					break;
+				case 1:
+					w.write(String.format("%s-%d\t%s\tno payment", word(rand), rand.nextInt(100000), word(rand)));
+					break;
+				case 2:
+					w.write(String.format("WARNING %s %s", word(rand), word(rand)));
+					break;
+				default:
+					w.write(String.format("%s %s %s", word(rand), word(rand), word(rand)));
+				}
+				w.write("\n");
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Return a MultiParser rule file using named groups, creating it if it does not already exist.
+	 */
+	public static File parserRules(File parent) throws IOException {
+		File f = new File(parent, "parse-rules.txt");
+		if (f.exists()) return f;
+		parent.mkdirs();
+		try(Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+			w.write("[COLS]\nFIRST,LAST,ID,COST\n[FILTERS]\nLAST\n[PATTERNS]\n");
+			w.write("[CATEGORY: PASS: paid]\n");
+			w.write("^(?<FIRST>[^\\t\\-]+)-(?<ID>[^\\t]+)\\t(?<LAST>[^\\t]+).*\\$(?<COST>\\d+).*$\n");
+			w.write("[CATEGORY: WARN: unpaid]\n");
+			w.write("^(?<FIRST>[^\\t\\-]+)-(?<ID>[^\\t]+)\\t(?<LAST>[^\\t]+).*$\n");
+			w.write("[CATEGORY: SKIP: warning]\n");
+			w.write("^WARNING .*$\n");
+		}
+		return f;
+	}
+
+	static String word(Random rand) {
+		int len = 3 + rand.nextInt(8);
+		char[] c = new char[len];
+		for(int i=0; i<len; i++) {
+			c[i] = (char)('a' + rand.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	/**
+	 * Directory under which benchmark fixtures are kept, set with -Dfa.bench.dir
+	 */
+	public static File getFixtureDir() {
+		return new File(System.getProperty("fa.bench.dir", new File(System.getProperty("java.io.tmpdir"), "fa-bench").getPath()));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: FixtureGenerator dir WIDE|DEEP files [seed] [maxsize]");
+			System.exit(10);
+		}
+		long seed = (args.length > 3) ? Long.parseLong(args[3]) : SEED;
+		int maxSize = (args.length > 4) ? Integer.parseInt(args[4]) : MAX_SIZE;
+		File root = tree(new File(args[0]), Shape.valueOf(args[1].toUpperCase()), Integer.parseInt(args[2]), seed, maxSize);
+		System.out.println(root.getAbsolutePath());
+	}
+}
@@ -0,0 +1,66 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import gov.nara.nwts.ftapp.ActionResult;
+import gov.nara.nwts.ftapp.FTDriver;
+import gov.nara.nwts.ftapp.ftprop.FTProp;
+import gov.nara.nwts.ftapp.importer.MultiParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a generated log file by the Multi Parser using the rules of {@link FixtureGenerator#parserRules(File)}.
+ * @author TBrady
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultiParserBenchmark {
+	@Param({"10000", "100000"})
+	public int rows;
+
+	@Param({"N", "Y"})
+	public String caseInsensitive;
+
+	MultiParser parser;
+	File input;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File dir = FixtureGenerator.getFixtureDir();
+		input = FixtureGenerator.parserInput(dir, rows, FixtureGenerator.SEED);
+		FTDriver dt = new FTDriver(dir);
+		parser = new MultiParser(dt);
+		File rules = FixtureGenerator.parserRules(dir);
+		for(FTProp prop: parser.getPropertyList()) {
+			//file properties are not set from text by setProperty
+			if (prop.getName().equals(MultiParser.F_PARSE)) prop.setValue(rules.getAbsolutePath());
+		}
+		parser.setProperty(MultiParser.F_CASE, caseInsensitive);
+		parser.initValidate(input);
+	}
+
+	@Benchmark
+	public int importFile() throws IOException {
+		ActionResult res = parser.importFile(input);
+		return res.types.size();
+	}
+}
@@ -0,0 +1,108 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import gov.nara.nwts.ftapp.stats.Stats;
+import gov.nara.nwts.ftapp.stats.StatsItem;
+import gov.nara.nwts.ftapp.stats.StatsItemConfig;
+import gov.nara.nwts.ftapp.stats.StatsItemEnum;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Accumulation of values into a result row, as done by tests that count or collect values for a key.
+ * The shared benchmarks update a single row from several threads, as a parallel traversal does.
+ * @author TBrady
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsBenchmark {
+	public static enum BenchStatsItems implements StatsItemEnum {
+		Key(StatsItem.makeStringStatsItem("Key")),
+		Count(StatsItem.makeIntStatsItem("Count")),
+		Size(StatsItem.makeLongStatsItem("Size")),
+		Ratio(StatsItem.makeFloatStatsItem("Ratio")),
+		Notes(StatsItem.makeStringStatsItem("Notes"));
+
+		StatsItem si;
+		BenchStatsItems(StatsItem si) {this.si=si;}
+		public StatsItem si() {return si;}
+	}
+
+	public static StatsItemConfig details = StatsItemConfig.create(BenchStatsItems.class);
+
+	@State(Scope.Thread)
+	public static class RowPerThread {
+		Stats stats;
+		@Setup(Level.Iteration)
+		public void setup() {
+			stats = Stats.Generator.INSTANCE.create(details, "key");
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SharedRow {
+		Stats stats;
+		@Setup(Level.Iteration)
+		public void setup() {
+			stats = Stats.Generator.INSTANCE.create(details, "key");
+		}
+	}
+
+	@Benchmark
+	public Stats sumInt(RowPerThread row) {
+		row.stats.sumVal(BenchStatsItems.Count, 1);
+		return row.stats;
+	}
+
+	@Benchmark
+	public Stats sumLong(RowPerThread row) {
+		row.stats.sumVal(BenchStatsItems.Size, 4096L);
+		return row.stats;
+	}
+
+	@Benchmark
+	public Stats sumFloat(RowPerThread row) {
+		row.stats.sumVal(BenchStatsItems.Ratio, 0.5f);
+		return row.stats;
+	}
+
+	@Benchmark
+	public Stats appendString(RowPerThread row) {
+		//reset so that the appended value does not grow without bound
+		if (row.stats.getStringVal(BenchStatsItems.Notes).length() > 4096) {
+			row.stats.setVal(BenchStatsItems.Notes, "");
+		}
+		row.stats.appendVal(BenchStatsItems.Notes, "abc", ",");
+		return row.stats;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Stats sumIntShared(SharedRow row) {
+		row.stats.sumVal(BenchStatsItems.Count, 1);
+		return row.stats;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Stats sumLongShared(SharedRow row) {
+		row.stats.sumVal(BenchStatsItems.Size, 4096L);
+		return row.stats;
+	}
+}
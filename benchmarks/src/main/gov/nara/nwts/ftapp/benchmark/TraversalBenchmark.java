@@ -0,0 +1,85 @@
+package gov.nara.nwts.ftapp.benchmark;
+
+import gov.nara.nwts.ftapp.ActionResult;
+import gov.nara.nwts.ftapp.FTDriver;
+import gov.nara.nwts.ftapp.ParallelFileTraversal;
+import gov.nara.nwts.ftapp.filetest.ActionRegistry;
+import gov.nara.nwts.ftapp.filetest.FileTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Traversal of a generated tree by a file test, as run from the File Analyzer or BatchAnalyzer.
+ * Results are kept in the driver but not written to an output file.
+ * <p>
+ * The largest trees take a while to generate on first use: -p files=1000000
+ * @author TBrady
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark {
+	@Param({"WIDE", "DEEP"})
+	public FixtureGenerator.Shape shape;
+
+	@Param({"1000", "10000", "100000"})
+	public int files;
+
+	/** short name of the file test, as passed to BatchAnalyzer */
+	@Param({"ByType", "Files"})
+	public String test;
+
+	@Param({"false", "true"})
+	public boolean scan;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	FTDriver dt;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File root = FixtureGenerator.tree(FixtureGenerator.getFixtureDir(), shape, files);
+		dt = new FTDriver(root) {
+			@Override public void saveResult(ActionResult res) {
+			}
+		};
+		dt.scanAttributes = scan;
+		if (threads > 1) {
+			dt.fileTraversal = new ParallelFileTraversal(dt, threads);
+		}
+		for(FileTest ft: new ActionRegistry(dt, false)) {
+			if (test.equalsIgnoreCase(ft.getShortNameNormalized())) {
+				dt.fileTraversal.setTraversal(ft, Integer.MAX_VALUE);
+			}
+		}
+		if (dt.fileTraversal.fileTest == null) {
+			throw new IllegalArgumentException("Invalid File Test name: " + test);
+		}
+	}
+
+	@Benchmark
+	public int traverse() {
+		dt.fileTraversal.traverseFile();
+		return dt.types.size();
+	}
+}
@@ -0,0 +1,190 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Compute one or more message digests for a file while reading the file only once.
+ * <p>
+ * Files are read through a FileChannel into a pair of direct buffers.
+ * Buffer pairs are borrowed from a shared pool that keeps at most {@link #POOL_SIZE} idle pairs, so the direct memory held between files is bounded.
+ * For files larger than a single buffer, the digests of one buffer are computed on a shared worker pool while the next buffer is read,
+ * so read I/O overlaps with hashing and several algorithms are computed concurrently.
+ * Smaller files are read and hashed on the calling thread.
+ * The file channel is closed before a result is returned.
+ */
+public class ChecksumEngine {
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    public static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService pool;
+    private static final ArrayBlockingQueue<ByteBuffer[]> buffers = new ArrayBlockingQueue<ByteBuffer[]>(POOL_SIZE);
+
+    private String[] algorithms;
+
+    /**
+     * @param algorithms MessageDigest algorithm names such as MD5, SHA-1, SHA-256 or SHA-512
+     */
+    public ChecksumEngine(String... algorithms) throws NoSuchAlgorithmException {
+        this.algorithms = algorithms;
+        for(String alg: algorithms) {
+            MessageDigest.getInstance(alg);
+        }
+    }
+
+    public String[] getAlgorithms() {
+        return algorithms;
+    }
+
+    static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory(){
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "checksum");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    public static String toHex(byte[] mdbytes) {
+        StringBuilder sb = new StringBuilder(mdbytes.length * 2);
+        for(int i=0; i<mdbytes.length; i++){
+            sb.append(Integer.toString((mdbytes[i] & 0xFF) + 0x100, 16).substring(1));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compute a single digest for a file.
+     * @return the lower case hex value of the digest
+     */
+    public static String digest(File f, String algorithm) throws IOException, NoSuchAlgorithmException {
+        return new ChecksumEngine(algorithm).digest(f)[0];
+    }
+
+    /**
+     * Borrow a pair of buffers from the pool, allocating a new pair if none is idle.
+     */
+    static ByteBuffer[] borrowBuffers() {
+        ByteBuffer[] bufs = buffers.poll();
+        if (bufs == null) {
+            bufs = new ByteBuffer[]{ByteBuffer.allocateDirect(BUFFER_SIZE), ByteBuffer.allocateDirect(BUFFER_SIZE)};
+        }
+        return bufs;
+    }
+
+    /**
+     * Return a buffer pair to the pool.  Pairs beyond the pool size are dropped and left to the garbage collector.
+     */
+    static void returnBuffers(ByteBuffer[] bufs) {
+        buffers.offer(bufs);
+    }
+
+    /**
+     * Fill a buffer from the channel.
+     * Buffer methods are called through {@link Buffer} so that the classes run on Java 8, where ByteBuffer does not override them.
+     * @return false if the end of the file was reached before the buffer was filled
+     */
+    static boolean fill(FileChannel ch, ByteBuffer buf) throws IOException {
+        ((Buffer)buf).clear();
+        while(buf.hasRemaining()) {
+            if (ch.read(buf) < 0) {
+                ((Buffer)buf).flip();
+                return false;
+            }
+        }
+        ((Buffer)buf).flip();
+        return true;
+    }
+
+    static void update(MessageDigest[] mds, ByteBuffer buf) {
+        for(MessageDigest md: mds) {
+            md.update(buf.duplicate());
+        }
+    }
+
+    static ArrayList<Future<?>> submit(MessageDigest[] mds, final ByteBuffer buf) {
+        ArrayList<Future<?>> pending = new ArrayList<Future<?>>(mds.length);
+        for(final MessageDigest md: mds) {
+            pending.add(getPool().submit(new Runnable(){
+                public void run() {
+                    md.update(buf.duplicate());
+                }
+            }));
+        }
+        return pending;
+    }
+
+    static void await(ArrayList<Future<?>> pending) throws IOException {
+        try {
+            for(Future<?> f: pending) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Checksum interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Checksum failed", e.getCause());
+        }
+    }
+
+    /**
+     * Compute all configured digests with a single read of the file.
+     * @return lower case hex digest values in the order of {@link #getAlgorithms()}
+     */
+    public String[] digest(File f) throws IOException {
+        MessageDigest[] mds = new MessageDigest[algorithms.length];
+        try {
+            for(int i=0; i<algorithms.length; i++) {
+                mds[i] = MessageDigest.getInstance(algorithms[i]);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            //validated by the constructor
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer[] bufs = borrowBuffers();
+        try(FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            int cur = 0;
+            boolean more = fill(ch, bufs[cur]);
+            if (!more) {
+                update(mds, bufs[cur]);
+            } else {
+                while(bufs[cur].hasRemaining()) {
+                    ArrayList<Future<?>> pending = submit(mds, bufs[cur]);
+                    int next = 1 - cur;
+                    if (more) {
+                        more = fill(ch, bufs[next]);
+                    } else {
+                        ((Buffer)bufs[next]).clear();
+                        ((Buffer)bufs[next]).flip();
+                    }
+                    await(pending);
+                    cur = next;
+                }
+            }
+        } finally {
+            returnBuffers(bufs);
+        }
+        String[] result = new String[mds.length];
+        for(int i=0; i<mds.length; i++) {
+            result[i] = toHex(mds[i].digest());
+        }
+        return result;
+    }
+}
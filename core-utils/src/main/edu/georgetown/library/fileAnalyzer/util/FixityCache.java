@@ -0,0 +1,311 @@
+package edu.georgetown.library.fileAnalyzer.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of file digests kept as an append-only log.
+ * <p>
+ * Each entry is keyed by the canonical path of a file and a digest algorithm.
+ * The size, modification time and file key (the inode on file systems that provide one) of the file are recorded with the digest;
+ * a cached digest is only used while all three are unchanged.
+ * New digests are appended to the log as they are computed and the log is flushed every few seconds and on close, so an interrupted run keeps most of the work it has completed.
+ * When the log is opened, the last entry for a key wins; a log holding mostly superseded entries is rewritten.
+ * <p>
+ * The {@link Policy} controls how much trust is placed in the cache.
+ * Each caller of {@link #open(File, Policy, int)} receives its own view of the log with its own policy, sample rate and counts,
+ * so callers sharing a directory do not change each other's settings.
+ * When an unchanged file is hashed again and the digest differs from the cached value, the file is reported through {@link #getMismatches()}
+ * and the cached digest is kept, so that the original value is still available to later runs.
+ */
+public class FixityCache {
+    public static final String CACHE_FILE = "fixity-cache.txt";
+    static final String HEADER = "#fixity-cache 1";
+    static final long FLUSH_INTERVAL = 5000;
+
+    public static enum Policy {
+        /** Do not consult or update the cache */
+        OFF,
+        /** Use the cached digest of any unchanged file */
+        TRUST,
+        /** Hash a percentage of unchanged files again, use the cached digest for the rest */
+        SAMPLE,
+        /** Hash every file again, caching the digests of new and changed files */
+        VERIFY;
+    }
+
+    static class Entry {
+        long size;
+        long mtime;
+        String inode;
+        String digest;
+        Entry(long size, long mtime, String inode, String digest) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.digest = digest;
+        }
+        boolean matches(Entry e) {
+            return (size == e.size) && (mtime == e.mtime) && inode.equals(e.inode);
+        }
+    }
+
+    /**
+     * The entries and log file of a directory, shared by every view opened on that directory.
+     */
+    static class Log {
+        File logFile;
+        ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+        BufferedWriter writer;
+        long lastFlush = System.currentTimeMillis();
+        int refs = 0;
+
+        Log(File logFile) throws IOException {
+            this.logFile = logFile;
+            int lines = load();
+            if (lines > 2 * entries.size() + 1000) {
+                compact();
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8));
+            if (lines == 0 && logFile.length() == 0) {
+                writer.write(HEADER);
+                writer.newLine();
+                writer.flush();
+            }
+        }
+
+        int load() throws IOException {
+            if (!logFile.exists()) return 0;
+            int count = 0;
+            try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+                for(String line = br.readLine(); line != null; line = br.readLine()) {
+                    if (line.startsWith("#")) continue;
+                    //path is the last field so that it may contain tabs
+                    String[] cols = line.split("\t", 6);
+                    if (cols.length < 6) continue;
+                    try {
+                        Entry e = new Entry(Long.parseLong(cols[0]), Long.parseLong(cols[1]), cols[2], cols[4]);
+                        entries.put(key(cols[5], cols[3]), e);
+                        count++;
+                    } catch (NumberFormatException ex) {
+                        //a partially written line from an interrupted run
+                    }
+                }
+            }
+            return count;
+        }
+
+        void compact() throws IOException {
+            File tmp = new File(logFile.getPath() + ".tmp");
+            try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                bw.write(HEADER);
+                bw.newLine();
+                for(Map.Entry<String, Entry> me: entries.entrySet()) {
+                    int pos = me.getKey().indexOf('\t');
+                    bw.write(line(me.getKey().substring(pos + 1), me.getKey().substring(0, pos), me.getValue()));
+                    bw.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        synchronized void append(String path, String algorithm, Entry e) throws IOException {
+            writer.write(line(path, algorithm, e));
+            writer.newLine();
+            long now = System.currentTimeMillis();
+            if (now - lastFlush > FLUSH_INTERVAL) {
+                writer.flush();
+                lastFlush = now;
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            writer.flush();
+            lastFlush = System.currentTimeMillis();
+        }
+    }
+
+    private static HashMap<String, Log> logs = new HashMap<String, Log>();
+
+    private Log log;
+    private Policy policy;
+    private int samplePercent;
+    private AtomicInteger hits = new AtomicInteger();
+    private AtomicInteger misses = new AtomicInteger();
+    private List<String> mismatches = new ArrayList<String>();
+
+    /**
+     * Open the cache stored in a directory.  Callers using the same directory share a single log until each of them has called {@link #close()}.
+     * @param samplePercent percentage of unchanged files hashed again under the SAMPLE policy
+     */
+    public static FixityCache open(File dir, Policy policy, int samplePercent) throws IOException {
+        File f = new File(dir, CACHE_FILE).getCanonicalFile();
+        Log log;
+        synchronized(FixityCache.class) {
+            log = logs.get(f.getPath());
+            if (log == null) {
+                log = new Log(f);
+                logs.put(f.getPath(), log);
+            }
+            log.refs++;
+        }
+        return new FixityCache(log, policy, samplePercent);
+    }
+
+    private FixityCache(Log log, Policy policy, int samplePercent) {
+        this.log = log;
+        this.policy = policy;
+        this.samplePercent = Math.max(0, Math.min(100, samplePercent));
+    }
+
+    public File getLogFile() {
+        return log.logFile;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getSamplePercent() {
+        return samplePercent;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return descriptions of unchanged files whose digest no longer matches the cached value
+     */
+    public synchronized List<String> getMismatches() {
+        return new ArrayList<String>(mismatches);
+    }
+
+    static String key(String path, String algorithm) {
+        return algorithm + "\t" + path;
+    }
+
+    static String line(String path, String algorithm, Entry e) {
+        return e.size + "\t" + e.mtime + "\t" + e.inode + "\t" + algorithm + "\t" + e.digest + "\t" + path;
+    }
+
+    static Entry stat(File f) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+        Object fileKey = attrs.fileKey();
+        String inode = (fileKey == null) ? "-" : fileKey.toString().replaceAll("[\t\r\n]", " ");
+        return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), inode, null);
+    }
+
+    synchronized void reportMismatch(String path, String algorithm, String cached, String digest) {
+        mismatches.add(String.format("%s %s: cached %s, found %s", path, algorithm, cached, digest));
+    }
+
+    boolean resample() {
+        if (policy == Policy.VERIFY) return true;
+        if (policy == Policy.SAMPLE) return ThreadLocalRandom.current().nextInt(100) < samplePercent;
+        return false;
+    }
+
+    /**
+     * Return the digest of a file, consulting the cache according to the policy of this caller.
+     */
+    public String digest(File f, String algorithm) throws IOException, NoSuchAlgorithmException {
+        return digest(f, new String[]{algorithm})[0];
+    }
+
+    /**
+     * Return the digests of a file, consulting the cache according to the policy of this caller.
+     * Algorithms missing from the cache are computed with a single read of the file.
+     * @return lower case hex digest values in the order of the algorithms requested
+     */
+    public String[] digest(File f, String... algorithms) throws IOException, NoSuchAlgorithmException {
+        if (policy == Policy.OFF) {
+            return new ChecksumEngine(algorithms).digest(f);
+        }
+        String path = f.getCanonicalPath();
+        Entry current = stat(f);
+        String[] result = new String[algorithms.length];
+        Entry[] cached = new Entry[algorithms.length];
+        boolean resample = resample();
+        ArrayList<String> missing = new ArrayList<String>();
+        for(int i=0; i<algorithms.length; i++) {
+            Entry e = log.entries.get(key(path, algorithms[i]));
+            if ((e != null) && e.matches(current)) {
+                cached[i] = e;
+                if (!resample) {
+                    result[i] = e.digest;
+                    continue;
+                }
+            }
+            missing.add(algorithms[i]);
+        }
+        if (missing.isEmpty()) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        String[] computed = new ChecksumEngine(missing.toArray(new String[missing.size()])).digest(f);
+        //paths containing line breaks cannot be recorded in the log
+        boolean record = path.indexOf('\n') < 0 && path.indexOf('\r') < 0;
+        for(int i=0, j=0; i<algorithms.length; i++) {
+            if (result[i] != null) continue;
+            String digest = computed[j++];
+            result[i] = digest;
+            if (cached[i] != null) {
+                //the file is unchanged, so a different digest is reported rather than replacing the cached value
+                if (!cached[i].digest.equals(digest)) {
+                    reportMismatch(path, algorithms[i], cached[i].digest, digest);
+                }
+                continue;
+            }
+            if (!record) continue;
+            Entry e = new Entry(current.size, current.mtime, current.inode, digest);
+            log.entries.put(key(path, algorithms[i]), e);
+            log.append(path, algorithms[i], e);
+        }
+        return result;
+    }
+
+    /**
+     * Release a cache returned by {@link #open(File, Policy, int)}.
+     * The log is flushed, and it is closed once every caller sharing the log has released it.  A closed cache may not be used again.
+     */
+    public void close() throws IOException {
+        synchronized(FixityCache.class) {
+            if (--log.refs > 0) {
+                log.flush();
+                return;
+            }
+            if (logs.get(log.logFile.getPath()) == log) logs.remove(log.logFile.getPath());
+        }
+        synchronized(log) {
+            log.writer.close();
+        }
+    }
+
+    public void flush() throws IOException {
+        log.flush();
+    }
+}
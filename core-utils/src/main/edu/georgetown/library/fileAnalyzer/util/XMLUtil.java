@@ -10,10 +10,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -24,6 +27,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -31,6 +35,15 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+/**
+ * Shared XML parsing, XPath and XSL transformation services.
+ * <p>
+ * Document builders, transformer factories and XPath objects are not thread safe, so each thread is given its own
+ * through {@link #getDocumentBuilder()}, {@link #getNamespaceDocumentBuilder()}, {@link #getTransformerFactory()} and {@link #newXPath()}.
+ * The static builders and XPath objects below must only be used from a single thread.
+ * <p>
+ * Stylesheets named through a resolver are compiled once into thread safe {@link Templates} that are cached by resolver and stylesheet name.
+ */
 public class XMLUtil {
         public static DocumentBuilderFactory dbf;
         public static DocumentBuilder db;
@@ -56,6 +69,135 @@ public class XMLUtil {
                 }                
         }
 
+        private static ThreadLocal<DocumentBuilder> threadDb = new ThreadLocal<DocumentBuilder>() {
+                protected DocumentBuilder initialValue() {
+                        return newDocumentBuilder(dbf);
+                }
+        };
+        private static ThreadLocal<DocumentBuilder> threadDbNs = new ThreadLocal<DocumentBuilder>() {
+                protected DocumentBuilder initialValue() {
+                        return newDocumentBuilder(dbf_ns);
+                }
+        };
+        private static ThreadLocal<TransformerFactory> threadTf = new ThreadLocal<TransformerFactory>() {
+                protected TransformerFactory initialValue() {
+                        return TransformerFactory.newInstance();
+                }
+        };
+        private static ThreadLocal<CompiledXPath> threadXp = new ThreadLocal<CompiledXPath>() {
+                protected CompiledXPath initialValue() {
+                        return new CompiledXPath(newXPath());
+                }
+        };
+        private static ThreadLocal<HashMap<NamespaceContext, CompiledXPath>> threadNsXp = new ThreadLocal<HashMap<NamespaceContext, CompiledXPath>>() {
+                protected HashMap<NamespaceContext, CompiledXPath> initialValue() {
+                        return new HashMap<NamespaceContext, CompiledXPath>();
+                }
+        };
+        private static ConcurrentHashMap<URIResolver, ConcurrentHashMap<String, Templates>> templates = new ConcurrentHashMap<URIResolver, ConcurrentHashMap<String, Templates>>();
+
+        private static DocumentBuilder newDocumentBuilder(DocumentBuilderFactory factory) {
+                //factories are not thread safe
+                synchronized(factory) {
+                        try {
+                                return factory.newDocumentBuilder();
+                        } catch (ParserConfigurationException e) {
+                                throw new IllegalStateException(e);
+                        }
+                }
+        }
+
+        /**
+         * @return a document builder belonging to the calling thread
+         */
+        public static DocumentBuilder getDocumentBuilder() {
+                DocumentBuilder builder = threadDb.get();
+                builder.reset();
+                return builder;
+        }
+
+        /**
+         * @return a namespace aware document builder belonging to the calling thread
+         */
+        public static DocumentBuilder getNamespaceDocumentBuilder() {
+                DocumentBuilder builder = threadDbNs.get();
+                builder.reset();
+                return builder;
+        }
+
+        /**
+         * @return a transformer factory belonging to the calling thread
+         */
+        public static TransformerFactory getTransformerFactory() {
+                return threadTf.get();
+        }
+
+        /**
+         * @return a new XPath object that may be used by the calling thread
+         */
+        public static XPath newXPath() {
+                synchronized(xf) {
+                        return xf.newXPath();
+                }
+        }
+
+        /**
+         * @return XPath expressions without namespaces, compiled once for the calling thread
+         */
+        public static CompiledXPath getCompiledXPath() {
+                return threadXp.get();
+        }
+
+        /**
+         * @param nsContext namespace context shared by the callers; it must not be changed once it is in use
+         * @return XPath expressions using a namespace context, compiled once for the calling thread
+         */
+        public static CompiledXPath getCompiledXPath(NamespaceContext nsContext) {
+                HashMap<NamespaceContext, CompiledXPath> byContext = threadNsXp.get();
+                CompiledXPath cxp = byContext.get(nsContext);
+                if (cxp == null) {
+                        XPath xpath = newXPath();
+                        xpath.setNamespaceContext(nsContext);
+                        cxp = new CompiledXPath(xpath);
+                        byContext.put(nsContext, cxp);
+                }
+                return cxp;
+        }
+
+        /**
+         * Return the compiled form of a stylesheet, compiling it the first time it is requested.
+         * @param urir resolver locating the stylesheet and any stylesheets it includes
+         * @param xsl name of the stylesheet passed to the resolver
+         */
+        public static Templates getTemplates(URIResolver urir, String xsl) throws TransformerException {
+                ConcurrentHashMap<String, Templates> byName = templates.get(urir);
+                if (byName == null) {
+                        templates.putIfAbsent(urir, new ConcurrentHashMap<String, Templates>());
+                        byName = templates.get(urir);
+                }
+                Templates t = byName.get(xsl);
+                if (t == null) {
+                        TransformerFactory tfres = TransformerFactory.newInstance();
+                        tfres.setURIResolver(urir);
+                        t = tfres.newTemplates(urir.resolve(xsl, ""));
+                        Templates prev = byName.putIfAbsent(xsl, t);
+                        if (prev != null) t = prev;
+                }
+                return t;
+        }
+
+        /**
+         * Create a transformer for a stylesheet, compiling the stylesheet only the first time it is used.
+         */
+        public static Transformer newTransformer(URIResolver urir, String xsl, Map<String,Object> pmap) throws TransformerException {
+                Transformer t = getTemplates(urir, xsl).newTransformer();
+                t.setURIResolver(urir);
+                for(String s:pmap.keySet()) {
+                        t.setParameter(s, pmap.get(s));
+                }
+                return t;
+        }
+
         public static void serialize(Document d, File f) {
                 try {
                         doSerialize(d, f);
@@ -67,7 +209,7 @@ public class XMLUtil {
         }
 
         public static void doSerialize(Document d, File f) throws TransformerException, IOException {
-                Transformer t = tf.newTransformer();
+                Transformer t = getTransformerFactory().newTransformer();
                 FileOutputStream fos = new FileOutputStream(f);
                 StreamResult sr = new StreamResult(fos);
                 t.transform(new DOMSource(d), sr);
@@ -78,7 +220,7 @@ public class XMLUtil {
                 doTransform(d,f,is,new HashMap<String,Object>());
         }
         public static void doTransform(Document d, File f, InputStream is, HashMap<String,Object> pmap) throws TransformerException, IOException {
-                Transformer t = tf.newTransformer(new StreamSource(is));
+                Transformer t = getTransformerFactory().newTransformer(new StreamSource(is));
                 try(FileOutputStream fos = new FileOutputStream(f)){
                         StreamResult sr = new StreamResult(fos);
                         for(String s:pmap.keySet()) {
@@ -98,16 +240,9 @@ public class XMLUtil {
                 return doTransformToDom(d, xsl, new HashMap<String,Object>());
         }
         public static Node doTransformToDom(Document d, String xsl, HashMap<String,Object> pmap) throws TransformerException, IOException {
-                TransformerFactory tfres = TransformerFactory.newInstance();
-
-                tfres.setURIResolver(FileAnalyzerURIResolver.INSTANCE);
-
-                Transformer t = tfres.newTransformer(FileAnalyzerURIResolver.INSTANCE.resolve(xsl, ""));
+                Transformer t = newTransformer(FileAnalyzerURIResolver.INSTANCE, xsl, pmap);
 
                 DOMResult dr = new DOMResult();
-                for(String s:pmap.keySet()) {
-                        t.setParameter(s, pmap.get(s));
-                }
                 t.transform(new DOMSource(d), dr);
                 return dr.getNode();
         }
@@ -116,16 +251,9 @@ public class XMLUtil {
                 doTransform(d, f, urir, xsl, new HashMap<String,Object>());                
         }
         public static void doTransform(Document d, File f, URIResolver urir, String xsl, HashMap<String,Object> pmap) throws TransformerException, IOException {
-                TransformerFactory tfres = TransformerFactory.newInstance();
-
-                tfres.setURIResolver(urir);
-
-                Transformer t = tfres.newTransformer(urir.resolve(xsl, ""));
+                Transformer t = newTransformer(urir, xsl, pmap);
                 try(FileOutputStream fos = new FileOutputStream(f)){
                     StreamResult sr = new StreamResult(fos);
-                    for(String s:pmap.keySet()) {
-                            t.setParameter(s, pmap.get(s));
-                    }
                     t.transform(new DOMSource(d), sr);
                 }
         }
@@ -160,13 +288,63 @@ public class XMLUtil {
 
         }
         
+        /**
+         * XPath expressions compiled once for an XPath object and its namespace context.
+         * Neither XPath objects nor compiled expressions are thread safe, so an instance must only be used by one thread.
+         */
+        public static class CompiledXPath {
+                XPath xpath;
+                HashMap<String, XPathExpression> exprs = new HashMap<String, XPathExpression>();
+
+                public CompiledXPath(XPath xpath) {
+                        this.xpath = xpath;
+                }
+
+                public XPath getXPath() {
+                        return xpath;
+                }
+
+                public XPathExpression compile(String xq) throws XPathExpressionException {
+                        XPathExpression expr = exprs.get(xq);
+                        if (expr == null) {
+                                expr = xpath.compile(xq);
+                                exprs.put(xq, expr);
+                        }
+                        return expr;
+                }
+
+                public String getValue(Node d, String xq, String def) {
+                        if (xq.isEmpty()) {
+                                return def;
+                        }
+                        try {
+                                return getXPathValue(compile(xq), d, def);
+                        } catch (XPathExpressionException e) {
+                                e.printStackTrace();
+                        }
+                        return def;
+                }
+        }
+
         public static String getXPathValue(XPath xpath, Node d, String xq, String def) {
                 if (xq.isEmpty()) {
                         return def;
                 }
+                try {
+                    return getXPathValue(xpath.compile(xq), d, def);
+                } catch (XPathExpressionException e) {
+                    e.printStackTrace();
+                }
+                return def;
+        }
+
+        /**
+         * @return the non-blank text of the nodes selected by an expression separated by semicolons, or the default if there are none
+         */
+        public static String getXPathValue(XPathExpression expr, Node d, String def) {
                 StringBuilder sb = new StringBuilder();
                 try {
-                    NodeList nl = (NodeList)xpath.evaluate(xq, d, XPathConstants.NODESET);
+                    NodeList nl = (NodeList)expr.evaluate(d, XPathConstants.NODESET);
                     for(int i=0; i<nl.getLength(); i++) {
                             String s = nl.item(i).getTextContent();
                             if (s == null) {
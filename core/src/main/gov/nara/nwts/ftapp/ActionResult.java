@@ -4,6 +4,7 @@ import gov.nara.nwts.ftapp.stats.Stats;
 import gov.nara.nwts.ftapp.stats.StatsItemConfig;
 
 import java.io.File;
+import java.util.Map;
 import java.util.TreeMap;
 /**
  * This class contains details about the completion of a {@link gov.nara.nwts.ftapp.filetest.FileTest} or a {@link gov.nara.nwts.ftapp.importer.Importer}
@@ -32,7 +33,7 @@ public class ActionResult {
 	 */
 	public StatsItemConfig details;
 	/**
-	 * Container of the stats generated by the action
+	 * Container of the stats generated by the action, sorted by key
 	 */
 	public TreeMap<String,Stats>types;
 	/**
@@ -44,14 +45,14 @@ public class ActionResult {
 	 */
 	public double duration;
 
-	public ActionResult(File root, String name, String action, StatsItemConfig details, TreeMap<String,Stats>types, boolean completed, double duration) {
+	public ActionResult(File root, String name, String action, StatsItemConfig details, Map<String,Stats>types, boolean completed, double duration) {
 		this.root = root;
 		this.name = name;
 		String s = (root.getParentFile() == null) ? "" : root.getParentFile().getName();
 		this.longname = action + " for .../" + s + "/" + root.getName();
 		this.action = action;
 		this.details = details;
-		this.types = types;
+		this.types = (types instanceof TreeMap) ? (TreeMap<String,Stats>)types : new TreeMap<String,Stats>(types);
 		this.completed = completed;
 		this.duration = duration;
 	}
@@ -27,8 +27,14 @@ public class BatchAnalyzer {
         FileTestFilter ftf;
         String filtername;
         int max = 500000;
+        int threads = 1;
+        int batchthreads = 1;
+        boolean resume = false;
         ActionRegistry ar;
         boolean overwrite = true;
+        boolean scan = false;
+        boolean stream = false;
+        boolean incremental = false;
         boolean listfilters = false;
         boolean listparams = false;
         
@@ -72,6 +78,18 @@ public class BatchAnalyzer {
                         } else if (s.equalsIgnoreCase("-overwrite")) {
                                 overwrite = !getArg(args,++i).equals("false");
 
+                        } else if (s.equalsIgnoreCase("-scan")) {
+                                scan = !getArg(args,++i).equals("false");
+
+                        } else if (s.equalsIgnoreCase("-stream")) {
+                                stream = !getArg(args,++i).equals("false");
+
+                        } else if (s.equalsIgnoreCase("-incremental")) {
+                                incremental = !getArg(args,++i).equals("false");
+
+                        } else if (s.equalsIgnoreCase("-resume")) {
+                                resume = !getArg(args,++i).equals("false");
+
                         } else if (s.equalsIgnoreCase("-root")) {
                                 root = new File(getArg(args,++i));
                         } else if (s.equalsIgnoreCase("-filter")) {
@@ -116,6 +134,24 @@ public class BatchAnalyzer {
                                 } catch (NumberFormatException e) {
                                         reportError("Max value must be a number");
                                 }
+                        } else if (s.equalsIgnoreCase("-threads")) {
+                                try {
+                                        threads = Integer.parseInt(getArg(args,++i));
+                                } catch (NumberFormatException e) {
+                                        reportError("Threads value must be a number");
+                                }
+                                if (threads < 1) {
+                                        reportError("Threads value must be greater than 0");
+                                }
+                        } else if (s.equalsIgnoreCase("-batchthreads")) {
+                                try {
+                                        batchthreads = Integer.parseInt(getArg(args,++i));
+                                } catch (NumberFormatException e) {
+                                        reportError("Batch threads value must be a number");
+                                }
+                                if (batchthreads < 1) {
+                                        reportError("Batch threads value must be greater than 0");
+                                }
                         } else if (s.startsWith("-")) {
                                 reportError("Invalid Option: "+s);
                         } else if (ftname == null){
@@ -196,23 +232,77 @@ public class BatchAnalyzer {
         
         public boolean run() {
                 dt.overwrite = overwrite;
+                dt.scanAttributes = scan;
+                dt.streamResults = stream;
+                dt.incremental = incremental;
+                if (incremental) {
+                        dt.scanAttributes = true;
+                }
                 dt.root = root;
                 dt.saveDir = outdir;
                 dt.saveFile = outfile;
+                if (threads > 1) {
+                        dt.fileTraversal = new ParallelFileTraversal(dt, threads);
+                }
                 dt.fileTraversal.setTraversal(ft, max);                
                 if (batch!=null){
                         try {
                                 dt.loadBatch(batch);
-                                dt.batchStart();
                         } catch (IOException e) {
                                 e.printStackTrace();
+                                return false;
                         }
-                        return true;
+                        BatchScheduler scheduler = new BatchScheduler(outdir, batchthreads, resume) {
+                                public FTDriver createDriver(File rowroot, String rowfile) {
+                                        return createBatchDriver(rowroot, rowfile);
+                                }
+                        };
+                        return scheduler.run(dt.batchItems);
                 } else {
                         return dt.fileTraversal.traverseFile();                                        
                 }
         }
 
+        /**
+         * Create a driver for a single row of a batch file.
+         * Each row receives its own instance of the file test so that rows may be run concurrently.
+         */
+        public FTDriver createBatchDriver(File rowroot, String rowfile) {
+                FTDriver rowdt = new FTDriver(rowroot);
+                FileTest rowft = null;
+                for(FileTest ftest: getActionRegistry(rowdt)) {
+                        if (ft.getShortNameNormalized().equalsIgnoreCase(ftest.getShortNameNormalized())){
+                                rowft = ftest;
+                        }
+                }
+                if (filtername != null) {
+                        for(FileTestFilter fil: rowft.getFilters()){
+                                if (fil.getShortNameNormalized().equalsIgnoreCase(filtername)) {
+                                        rowdt.myfilter = fil;
+                                }
+                        }
+                }
+                for(String param: params.keySet()) {
+                        rowft.setProperty(param, params.get(param));
+                }
+                rowdt.prefix = dt.prefix;
+                rowdt.suffix = dt.suffix;
+                rowdt.contains = dt.contains;
+                rowdt.excludes = dt.excludes;
+                rowdt.myresfilter = dt.myresfilter;
+                rowdt.overwrite = dt.overwrite;
+                rowdt.scanAttributes = dt.scanAttributes;
+                rowdt.streamResults = dt.streamResults;
+                rowdt.incremental = dt.incremental;
+                rowdt.saveDir = outdir;
+                rowdt.saveFile = rowfile;
+                if (threads > 1) {
+                        rowdt.fileTraversal = new ParallelFileTraversal(rowdt, threads);
+                }
+                rowdt.fileTraversal.setTraversal(rowft, max);
+                return rowdt;
+        }
+
         public void reportUsage() {
                 System.out.println("");
                 System.out.println("Usage:");
@@ -228,7 +318,13 @@ public class BatchAnalyzer {
                 System.out.println("where options include");
                 System.out.println("\t-outdir <dir>  \tDirectory to which output files will be written.\n\t\t\t\tDefaults to working directory");
                 System.out.println("\t-max <num>     \tdefaults to 500000");
+                System.out.println("\t-threads <num> \tnumber of threads used to scan and test files.\n\t\t\t\tdefaults to 1");
+                System.out.println("\t-batchthreads <num>\tnumber of batch rows processed at the same time.\n\t\t\t\tdefaults to 1");
+                System.out.println("\t-resume <bool> \tskip batch rows whose output file is complete.\n\t\t\t\tdefaults to false");
                 System.out.println("\t-overwrite     \tdefaults to true");
+                System.out.println("\t-scan <bool>   \tread directories with NIO, fetching file attributes once.\n\t\t\t\tdefaults to false (always used with -threads)");
+                System.out.println("\t-stream <bool> \twrite results as files are tested for tests that support it.\n\t\t\t\trows are not sorted.  defaults to false");
+                System.out.println("\t-incremental <bool>\tonly test files changed since the last run with the same output file\n\t\t\t\tfor tests that support it.  defaults to false");
                 System.out.println("\t-listparams    \tlists the parameters associated with a file test");
                 System.out.println("\t-listfilters   \tlists the filters associated with a file test");
                 System.out.println("\t-filter <name> \tname of the filter to use.\n\t\t\t\tdefaults to the first filter");
@@ -263,7 +359,16 @@ public class BatchAnalyzer {
                 System.out.println("Output File:     \t" +outfile);
                 System.out.println("FileTest:        \t" + ft.getShortNameNormalized()+": "+ft.toString());
                 System.out.println("Max Files:       \t" + max);
+                System.out.println("Threads:         \t" + threads);
                 System.out.println("Overwrite:       \t" + overwrite);
+                System.out.println("Scan Attributes: \t" + scan);
+                System.out.println("Stream Results:  \t" + stream);
+                System.out.println("Incremental:     \t" + incremental);
+                if (batch != null) {
+                        System.out.println("Batch File:      \t" + batch.getAbsolutePath());
+                        System.out.println("Batch Threads:   \t" + batchthreads);
+                        System.out.println("Resume:          \t" + resume);
+                }
                 System.out.flush();
         }
 
@@ -0,0 +1,151 @@
+package gov.nara.nwts.ftapp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the rows of a batch file, several rows at a time.
+ * <p>
+ * Each row is processed by its own {@link FTDriver} holding its own root, output file, result store and file test, so rows do not share any traversal state.
+ * When resuming, rows whose output file is complete (see {@link ResultSink#isComplete(File)}) are skipped, so a row interrupted by a crash is run again.
+ * Rows whose file test reports {@link gov.nara.nwts.ftapp.filetest.FileTest#hasSharedDetails()} are run one at a time.
+ * A completion and timing summary for every row is reported when the batch ends.
+ * @author TBrady
+ *
+ */
+public abstract class BatchScheduler {
+	public static enum STATUS {COMPLETE, INCOMPLETE, SKIPPED, ERROR, INVALID;}
+
+	/**
+	 * Outcome of a single batch row.
+	 */
+	public static class Row {
+		public int num;
+		public File root;
+		public File output;
+		public STATUS status;
+		public int items;
+		public double duration;
+		public String message = "";
+	}
+
+	protected int threads;
+	protected boolean resume;
+	protected File outdir;
+	/** Held while running a row whose file test shares its stats details with other instances */
+	private final Object sharedDetailsLock = new Object();
+
+	public BatchScheduler(File outdir, int threads, boolean resume) {
+		this.outdir = outdir;
+		this.threads = threads;
+		this.resume = resume;
+	}
+
+	/**
+	 * Create a driver with its own file test that will process a single row.
+	 * @param root directory to analyze
+	 * @param saveFile name of the output file (without the .txt extension added when results are saved)
+	 */
+	public abstract FTDriver createDriver(File root, String saveFile);
+
+	/**
+	 * The file to which a row's results are saved.
+	 */
+	public File getOutputFile(String saveFile) {
+		return new File(outdir, saveFile + ".txt");
+	}
+
+	void runRow(Row row, String saveFile) {
+		if (!row.root.isDirectory()) {
+			row.status = STATUS.INVALID;
+			row.message = "Root directory not found";
+			return;
+		}
+		if (resume && ResultSink.isComplete(row.output)) {
+			row.status = STATUS.SKIPPED;
+			row.message = "Output exists";
+			return;
+		}
+		Timer timer = new Timer();
+		try {
+			FTDriver rowdt = createDriver(row.root, saveFile);
+			boolean completed;
+			if (rowdt.fileTraversal.fileTest.hasSharedDetails()) {
+				synchronized(sharedDetailsLock) {
+					completed = rowdt.fileTraversal.traverseFile();
+				}
+			} else {
+				completed = rowdt.fileTraversal.traverseFile();
+			}
+			row.items = rowdt.fileTraversal.getNumProcessed();
+			row.status = completed ? STATUS.COMPLETE : STATUS.INCOMPLETE;
+		} catch (Exception e) {
+			e.printStackTrace();
+			row.status = STATUS.ERROR;
+			row.message = e.getClass().getName() + " " + e.getMessage();
+		}
+		row.duration = timer.getDuration();
+	}
+
+	/**
+	 * Run the rows of a batch file.  Each row contains a root directory and an output file name.
+	 * @return true if every row completed or was skipped
+	 */
+	public boolean run(Vector<Vector<String>> batchItems) {
+		final List<Row> rows = new ArrayList<Row>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for(Vector<String> inout: batchItems) {
+			final Row row = new Row();
+			row.num = rows.size() + 1;
+			rows.add(row);
+			if (inout.size() != 2) {
+				row.status = STATUS.INVALID;
+				row.message = "Batch rows must contain a root directory and an output file";
+				continue;
+			}
+			row.root = new File(inout.get(0));
+			final String saveFile = inout.get(1);
+			row.output = getOutputFile(saveFile);
+			pool.submit(new Runnable(){
+				public void run() {
+					runRow(row, saveFile);
+					reportRow(row);
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			while(!pool.awaitTermination(1, TimeUnit.MINUTES));
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		report(rows);
+		boolean success = true;
+		for(Row row: rows) {
+			if (row.status != STATUS.COMPLETE && row.status != STATUS.SKIPPED) success = false;
+		}
+		return success;
+	}
+
+	public synchronized void reportRow(Row row) {
+		System.out.println(String.format("  * Batch row %d: %s %s", row.num, row.status, row.root.getAbsolutePath()));
+		System.out.flush();
+	}
+
+	public void report(List<Row> rows) {
+		System.out.println("Batch Summary");
+		System.out.println(String.format("  %5s  %-10s  %10s  %10s  %s", "Row", "Status", "Items", "Seconds", "Root --> Output"));
+		for(Row row: rows) {
+			String desc = (row.root == null) ? "" : row.root.getAbsolutePath() + " --> " + row.output.getAbsolutePath();
+			if (!row.message.isEmpty()) desc += " (" + row.message + ")";
+			System.out.println(String.format("  %5d  %-10s  %10s  %10s  %s", row.num, row.status, FTDriver.nf.format(row.items), FTDriver.ndurf.format(row.duration), desc));
+		}
+		System.out.flush();
+	}
+}
@@ -0,0 +1,110 @@
+package gov.nara.nwts.ftapp;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+
+/**
+ * Listing of a single directory read with a {@link DirectoryStream}.
+ * The attributes of each entry are read once and retained so that the filename filter, the traversal and the file tests do not need to query the file system again.
+ * For symbolic links, the attributes of the link target are retained (the same view of the file that {@link File#isDirectory()} and {@link File#length()} provide).
+ * A listing made by {@link #list(File, FilenameFilter)} has no attributes, and the file system is queried for each entry when needed.
+ * @author TBrady
+ *
+ */
+public class DirectoryScan {
+	public File dir;
+	public File[] files;
+	public BasicFileAttributes[] attrs;
+	public boolean[] links;
+
+	public int size() {
+		return files.length;
+	}
+
+	public boolean isDirectory(int i) {
+		if (attrs[i] == null) return (links == null) && files[i].isDirectory();
+		return attrs[i].isDirectory();
+	}
+
+	public boolean isLink(int i) {
+		if (links == null) return Files.isSymbolicLink(files[i].toPath());
+		return links[i];
+	}
+
+	static boolean accept(FilenameFilter filter, File dir, String name, boolean isDirectory) {
+		if (filter == null) return true;
+		if (filter instanceof MyFilenameFilter) {
+			return ((MyFilenameFilter)filter).accept(name, isDirectory);
+		}
+		if (filter instanceof MyDirectoryFilter) {
+			return ((MyDirectoryFilter)filter).accept(name, isDirectory);
+		}
+		return filter.accept(dir, name);
+	}
+
+	/**
+	 * List the entries of a directory that are accepted by a filter with {@link File#listFiles(FilenameFilter)}, without reading their attributes.
+	 * @return null if the directory cannot be read
+	 */
+	public static DirectoryScan list(File dir, FilenameFilter filter) {
+		File[] files = dir.listFiles(filter);
+		if (files == null) return null;
+		DirectoryScan ds = new DirectoryScan();
+		ds.dir = dir;
+		ds.files = files;
+		ds.attrs = new BasicFileAttributes[files.length];
+		return ds;
+	}
+
+	/**
+	 * List the entries of a directory that are accepted by a filter.
+	 * @return null if the directory cannot be read; this mirrors the behavior of {@link File#listFiles(FilenameFilter)}
+	 */
+	public static DirectoryScan scan(File dir, FilenameFilter filter) {
+		ArrayList<File> flist = new ArrayList<File>();
+		ArrayList<BasicFileAttributes> alist = new ArrayList<BasicFileAttributes>();
+		ArrayList<Boolean> llist = new ArrayList<Boolean>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+			for(Path p: stream) {
+				BasicFileAttributes battr = null;
+				boolean link = false;
+				try {
+					battr = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					link = battr.isSymbolicLink();
+					if (link) {
+						battr = Files.readAttributes(p, BasicFileAttributes.class);
+					}
+				} catch (IOException e) {
+					//a broken link or an entry removed during the scan, treat it as a plain file
+				}
+				String name = p.getFileName().toString();
+				boolean isDir = (battr != null) && battr.isDirectory();
+				if (!accept(filter, dir, name, isDir)) continue;
+				flist.add(new File(dir, name));
+				alist.add(battr);
+				llist.add(link);
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (DirectoryIteratorException e) {
+			return null;
+		}
+		DirectoryScan ds = new DirectoryScan();
+		ds.dir = dir;
+		ds.files = flist.toArray(new File[flist.size()]);
+		ds.attrs = alist.toArray(new BasicFileAttributes[alist.size()]);
+		ds.links = new boolean[llist.size()];
+		for(int i=0; i<ds.links.length; i++) {
+			ds.links[i] = llist.get(i);
+		}
+		return ds;
+	}
+}
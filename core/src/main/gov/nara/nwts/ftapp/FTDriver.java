@@ -2,6 +2,7 @@ package gov.nara.nwts.ftapp;
 
 import gov.nara.nwts.ftapp.filetest.FileTest;
 import gov.nara.nwts.ftapp.filter.FileTestFilter;
+import gov.nara.nwts.ftapp.ftprop.FTProp;
 import gov.nara.nwts.ftapp.importer.DelimitedFileReader;
 import gov.nara.nwts.ftapp.importer.Importer;
 import gov.nara.nwts.ftapp.stats.Stats;
@@ -12,6 +13,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
@@ -19,6 +22,8 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.prefs.Preferences;
 
 import javax.swing.JFrame;
@@ -54,6 +59,29 @@ public class FTDriver {
 	public boolean followLinks() {
 		return false;
 	}
+	/**
+	 * When set, directories are read with a DirectoryStream and file attributes are read once per file.
+	 */
+	public boolean scanAttributes = false;
+	public boolean scanAttributes() {
+		return scanAttributes;
+	}
+	/**
+	 * When set, the results of file tests that support streaming are written to the output file as they are computed rather than held in memory until the traversal ends.
+	 */
+	public boolean streamResults = false;
+	protected ResultSink resultSink;
+	public ResultSink getResultSink() {
+		return resultSink;
+	}
+	/**
+	 * When set, files that have not changed since the previous run of the same test are not tested again; their results are restored from a snapshot saved alongside the output file.
+	 */
+	public boolean incremental = false;
+	protected Snapshot snapshot;
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
 	
 	public FileTestFilter myfilter;
 	public ResultFilter myresfilter;
@@ -91,7 +119,10 @@ public class FTDriver {
 		System.err.println();
 	}
 	public File root;
-	public TreeMap<String,Stats> types;
+	/**
+	 * Results of the current action.  This store is unordered and may be updated from several threads; results are sorted once when an {@link ActionResult} is created.
+	 */
+	public ConcurrentMap<String,Stats> types;
 	public File getRoot() {return root;}
 	public JFrame getFrame() {return null;}
 	
@@ -100,11 +131,19 @@ public class FTDriver {
 		this.root = root;
 		saveDir = new File(System.getProperty("user.dir"));
 		saveFile = "test";
-		types = new TreeMap<String,Stats>();
+		types = createResultStore();
 		fileTraversal = new FileTraversal(this);
 		myresfilter = new ResultFilter();
 	}
 
+	/**
+	 * Create the container that will hold the results of a file test.
+	 * Override to supply an alternative store.
+	 */
+	public ConcurrentMap<String,Stats> createResultStore() {
+		return new ConcurrentHashMap<String,Stats>(1024);
+	}
+
 	public void showSummary(String name, String longname, StatsItemConfig details, TreeMap<String,Stats>types, boolean completed, String note){
 		
 	}
@@ -156,7 +195,62 @@ public class FTDriver {
 		System.out.println("\t\t * "+nf.format(fileTraversal.numProcessed)+ " items");
 		processBatch();
 	}
+	/**
+	 * Open a result sink for the file test if results are to be streamed.
+	 */
+	public void openResultSink(String name, FileTest fileTest) {
+		resultSink = null;
+		if (!streamResults || !fileTest.isStreamable()) return;
+		try {
+			resultSink = new ResultSink(getSaveFile(name), fileTest.getStatsDetails(), myresfilter);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	/**
+	 * Describe the settings that must match for the snapshot of a previous run to be reused.
+	 */
+	public String getSnapshotSignature(FileTest fileTest) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(root.getAbsolutePath());
+		sb.append("|").append(fileTest.getClass().getName());
+		for(FTProp prop: fileTest.getPropertyList()) {
+			sb.append("|").append(prop.getName()).append("=").append(prop.getValue());
+		}
+		sb.append("|").append((myfilter == null) ? fileTest.getDefaultFilter().getClass().getName() : myfilter.getClass().getName());
+		sb.append("|").append(prefix).append("|").append(suffix).append("|").append(contains).append("|").append(excludes);
+		sb.append("|").append(followLinks());
+		return sb.toString();
+	}
+	/**
+	 * Load the snapshot of the previous run if the file test is run incrementally.
+	 */
+	public void openSnapshot(FileTest fileTest) {
+		snapshot = null;
+		if (!incremental || !fileTest.isStreamable()) return;
+		if (getSaveFileName().equals("")) return;
+		snapshot = new Snapshot(new File(getSaveDir(), getSaveFileName() + ".snapshot"), getSnapshotSignature(fileTest));
+		snapshot.load();
+	}
 	public void saveResult(ActionResult res) { 
+		if (snapshot != null) {
+			if (res.completed) {
+				try {
+					snapshot.save();
+					System.out.println("\t\t * "+nf.format(snapshot.getRestoredCount())+ " unchanged items restored from snapshot");
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			snapshot = null;
+		}
+		if (resultSink != null) {
+			resultSink.close(res.completed);
+			lastSavedFile = resultSink.getFile();
+			resultSink = null;
+			reportSave(lastSavedFile);
+			return;
+		}
 		if (isSave() && res.completed) {
 			lastSavedFile = save(
 				res.name,
@@ -181,8 +275,10 @@ public class FTDriver {
 		System.out.println(" ==> "+f.getAbsolutePath());
 	}
 	
-	public File save(String fname, StatsItemConfig details, TreeMap<String, Stats> mystats, boolean completed) {
-		boolean writeheader = false;
+	/**
+	 * Determine the file to which the results of an action will be written.
+	 */
+	public File getSaveFile(String fname) {
 		String newname = getSaveFileName();
 		if (newname.equals("")) {
 			SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-hhmmss");
@@ -198,8 +294,20 @@ public class FTDriver {
 			newname2 = newname+"-"+i+".txt";			
 			f = new File(pf,newname2);
 		}
+		return f;
+	}
+
+	/**
+	 * Write results to the output file.  Results are written to a temporary file that is renamed once complete,
+	 * so an output file is never left partially written (batch runs rely on this when resuming).
+	 * The incomplete marker of an earlier streamed run is removed once the output file has been replaced.
+	 */
+	public File save(String fname, StatsItemConfig details, TreeMap<String, Stats> mystats, boolean completed) {
+		boolean writeheader = false;
+		File f = getSaveFile(fname);
+		File part = ResultSink.getPartFile(f);
 		try {
-			FileWriter fw = new FileWriter(f);
+			FileWriter fw = new FileWriter(part);
 			BufferedWriter bw = new BufferedWriter(fw);
 			boolean[] cols = details.getExportArray();
 			boolean first = true;
@@ -218,34 +326,14 @@ public class FTDriver {
 			}
 			for (Iterator<String> i = mystats.keySet().iterator(); i.hasNext();) {
 				String s = i.next();
-				Vector<Object> curvals = mystats.get(s).getVals();
-				if (myresfilter.evaluate(curvals)){
-					int c = 0;
-					first = true;
-					if (cols[c]) {
-						bw.write("\"");
-						bw.write(s);
-						bw.write("\"");
-						first = false;
-					}
-					for (Iterator<Object> j = curvals.iterator(); j.hasNext();) {
-						Object o = j.next();
-						String sc = (o==null)?"":o.toString();
-						c++;
-						if (cols[c]) {
-							if (first)
-								first = false;
-							else
-								bw.write("\t");
-							bw.write("\"");
-							bw.write(sc);
-							bw.write("\"");
-						}
-					}
-					bw.write("\r\n");					
+				Stats stats = mystats.get(s);
+				if (myresfilter.evaluate(stats)){
+					ResultSink.writeRow(bw, cols, s, stats);
 				}
 			}
 			bw.close();
+			Files.move(part.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(ResultSink.getIncompleteFile(f).toPath());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashSet;
 import java.util.regex.Pattern;
 
@@ -30,7 +31,7 @@ public class FileTraversal {
         public FileTest fileTest;
         protected int max;
         protected int numProcessed = 0;
-        protected boolean cancelled = false;
+        protected volatile boolean cancelled = false;
         public InitializationStatus iStat;
         
         public int getNumProcessed() {
@@ -57,28 +58,44 @@ public class FileTraversal {
         public void reportCancel() {
                 System.err.println("Stopping: " +max + " items found.");
         }
+        /**
+         * List a directory, reading the attributes of each entry during the listing when the driver scans attributes.
+         * @return null if the directory cannot be read
+         */
+        protected DirectoryScan list(File dir, FilenameFilter filter) {
+                if (driver.scanAttributes()) {
+                        return DirectoryScan.scan(dir, filter);
+                }
+                return DirectoryScan.list(dir, filter);
+        }
+
+        protected boolean isMatchingDirectory(File f, FileTest fileTest) {
+                Pattern p = fileTest.getDirectoryPattern();
+                if (p == null) return true;
+                return p.matcher(f.getAbsolutePath()).matches();
+        }
+
+        /**
+         * Traverse a directory.  When the driver scans attributes, the attributes of each file are read once and passed to the file test.
+         */
         public boolean traverse(File f, FileTest fileTest, int max) {
                 if (f==null) return false;
-                File[] files = f.listFiles(fileFilter);
-                if (files == null) return true;
+                DirectoryScan scan = list(f, fileFilter);
+                if (scan == null) return true;
                 if (fileTest.processRoot() && fileTest.isTestDirectory(f)) {
-                        boolean test = true;
-                        Pattern p = fileTest.getDirectoryPattern();
-                        if (p != null){
-                            test = p.matcher(f.getAbsolutePath()).matches();
-                        }
-                        if (test) {
+                        if (isMatchingDirectory(f, fileTest)) {
                                 if (!Files.isSymbolicLink(f.toPath()) || driver.followLinks()) {
                                         checkDirFile(f, fileTest);
                                 }
                         }
                         
                 }
-                for(int i=0; i<files.length; i++) {
+                for(int i=0; i<scan.size(); i++) {
+                        File file = scan.files[i];
                         if (driver.followLinks()) {
                                 String path;
                                 try {
-                                        path = files[i].getCanonicalPath().intern();
+                                        path = file.getCanonicalPath().intern();
                                         if (alreadyVisited.contains(path)) {
                                                 continue;
                                         }
@@ -86,31 +103,25 @@ public class FileTraversal {
                                 } catch (IOException e) {
                                         e.printStackTrace();
                                 }
-                        } else if (Files.isSymbolicLink(files[i].toPath())) {
+                        } else if (scan.isLink(i)) {
                                 continue;
                         }
-                        if (files[i].isDirectory()) {
+                        if (scan.isDirectory(i)) {
                                 if (isCancelled()) return false; 
                                 if (getNumProcessed() >= max) {
                                         return false; 
                                 }
-                                traverse(files[i], fileTest, max);
-                                if (fileTest.isTestDirectory(files[i])) {
-                                        boolean test = true;
-                                        Pattern p = fileTest.getDirectoryPattern();
-                                        if (p != null){
-                                            test = p.matcher(files[i].getAbsolutePath()).matches();
-                                        }
-                                        if (test) {
-                                                checkDirFile(files[i], fileTest);
+                                traverse(file, fileTest, max);
+                                if (fileTest.isTestDirectory(file)) {
+                                        if (isMatchingDirectory(file, fileTest)) {
+                                                checkDirFile(file, fileTest);
                                         }
                                 }
                                 increment();
                         } else {
                                 if (isCancelled()) return false; 
-                                File thefile = files[i];
                                 
-                                checkFile(thefile, fileTest);
+                                checkFile(file, scan.attrs[i], fileTest);
 
                                 fileTest.progress(getNumProcessed());
                                 numProcessed++;
@@ -128,25 +139,88 @@ public class FileTraversal {
                         Stats mystats = fileTest.getStats(thefile);
                         if (mystats!=null){
                                 mystats.compute(thefile, fileTest);
+                                emit(mystats);
+                        }
+                }
+        }
+        /**
+         * Test a file whose attributes have already been read by the traversal.
+         */
+        public void checkFile(File thefile, BasicFileAttributes attrs, FileTest fileTest) {
+                if (attrs == null) {
+                        checkFile(thefile, fileTest);
+                        return;
+                }
+                if (fileTest.isTestable(thefile)){
+                        if (restore(thefile, attrs, fileTest)) return;
+                        Stats mystats = fileTest.getStats(thefile);
+                        if (mystats!=null){
+                                mystats.compute(thefile, attrs, fileTest);
+                                record(thefile, attrs, mystats);
+                                emit(mystats);
                         }
                 }
         }
         public void checkDirFile(File thefile, FileTest fileTest) {
                 if (fileTest.isTestable(thefile)){
+                        BasicFileAttributes attrs = null;
+                        if (driver.getSnapshot() != null) {
+                                try {
+                                        attrs = Files.readAttributes(thefile.toPath(), BasicFileAttributes.class);
+                                        if (restore(thefile, attrs, fileTest)) return;
+                                } catch (IOException e) {
+                                        e.printStackTrace();
+                                }
+                        }
                         Stats mystats = fileTest.getStats(thefile);
                         mystats.compute(thefile, fileTest);
+                        if (attrs != null) record(thefile, attrs, mystats);
+                        emit(mystats);
                 }
         }
+
+        /**
+         * In incremental mode, restore the result of the previous run for a file that has not changed.
+         * @return true if the result was restored and the file does not need to be tested
+         */
+        protected boolean restore(File thefile, BasicFileAttributes attrs, FileTest fileTest) {
+                Snapshot snapshot = driver.getSnapshot();
+                if (snapshot == null) return false;
+                Stats mystats = snapshot.restore(thefile, attrs, fileTest);
+                if (mystats == null) return false;
+                driver.types.put(mystats.key, mystats);
+                emit(mystats);
+                return true;
+        }
+
+        /**
+         * In incremental mode, record the result of a file for use by the next run.
+         */
+        protected void record(File thefile, BasicFileAttributes attrs, Stats mystats) {
+                Snapshot snapshot = driver.getSnapshot();
+                if (snapshot == null) return;
+                snapshot.record(thefile, attrs, mystats);
+        }
+
+        /**
+         * When results are streamed, write a completed result to the output file and release it.
+         */
+        protected void emit(Stats mystats) {
+                ResultSink sink = driver.getResultSink();
+                if (sink == null) return;
+                driver.types.remove(mystats.key, mystats);
+                sink.write(mystats);
+        }
         
         
         public void countDirectories(File f) {
                 if (f==null) return;
-                File[] files = f.listFiles(dirnameFilter);
+                DirectoryScan scan = list(f, dirnameFilter);
                 
                 increment();
-                if (files == null) return;
-                for(int i=0; i<files.length && !isCancelled(); i++) {
-                        countDirectories(files[i]);
+                if (scan == null) return;
+                for(int i=0; i<scan.size() && !isCancelled(); i++) {
+                        countDirectories(scan.files[i]);
                 }
         }
         public void clear() {                
@@ -172,13 +246,15 @@ public class FileTraversal {
                         traversalEnd(name, false, duration); 
                         return false;                
                 }
+                String name = fileTest.getShortName()+(++driver.summaryCount);
+                driver.openResultSink(name, fileTest);
+                driver.openSnapshot(fileTest);
                 countDirectories(driver.root);
                 completeDirectoryScan();
                 boolean completed = traverse(driver.root, fileTest, max);
                 fileTest.refineResults();
                 completeFileScan();
                 double duration = timer.getDuration();
-                String name = fileTest.getShortName()+(++driver.summaryCount);
                 traversalEnd(name,completed, duration); 
                 return completed;
         }
@@ -21,4 +21,14 @@ public class MyDirectoryFilter implements FilenameFilter {
 		return (new File(dir,filename)).isDirectory();
 	}
 	
+	/**
+	 * Evaluate a filename when the directory status of the file is already known.
+	 */
+	public boolean accept(String filename, boolean isDirectory) {
+		if (ignorePeriods) {
+			if (filename.contains(".")) return false;
+		}
+		return isDirectory;
+	}
+	
 }
@@ -63,19 +63,32 @@ public class MyFilenameFilter implements FilenameFilter {
     		reExclusion = Pattern.compile(exclusion, Pattern.CASE_INSENSITIVE);
     }
 	public boolean accept(File dir, String filename) {
+		if (ignorePeriods && filename.contains(".")) {
+			return acceptFile(filename);
+		}
+		return accept(filename, (new File(dir,filename)).isDirectory());
+	}
+	
+	/**
+	 * Evaluate a filename when the directory status of the file is already known.
+	 */
+	public boolean accept(String filename, boolean isDirectory) {
 
 		if (ignorePeriods) {
 			if (!filename.contains(".")){
-				if ((new File(dir,filename)).isDirectory()){
+				if (isDirectory){
 					return true;
 				}						
 			}
 		}else {
-			if ((new File(dir,filename)).isDirectory()){
+			if (isDirectory){
 				return true;
 			}									
 		}
-		
+		return acceptFile(filename);
+	}
+	
+	boolean acceptFile(String filename) {
 		if (!isTestFiles) return false;
 		
 		if (prefix.length() > 0){
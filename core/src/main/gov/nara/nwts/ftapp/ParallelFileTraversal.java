@@ -0,0 +1,310 @@
+package gov.nara.nwts.ftapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.nara.nwts.ftapp.filetest.FileTest;
+
+/**
+ * File traversal that spreads directory listing and file testing across a ForkJoinPool.
+ * <p>
+ * The traversal runs in three overlapping stages.
+ * <ol>
+ * <li>Directories are listed ahead of the traversal, each by its own fork/join subtask, so that directory scans run concurrently.
+ * Directories are read with a {@link DirectoryScan} so that file attributes are fetched once and passed to the file test.
+ * Once the listings hold max entries, no further directories are listed ahead; the rest are listed as the replay reaches them.</li>
+ * <li>The listings are replayed in exactly the order used by {@link FileTraversal#traverse(File, FileTest, int)}, waiting on a directory only when the replay reaches it.
+ * The max cutoff, cancellation and the alreadyVisited symlink check are applied during this replay so that the same set of items is selected.</li>
+ * <li>Items are tested as the replay selects them.  If the file test reports {@link FileTest#isParallelSafe()}, batches of items are tested concurrently, otherwise the items are tested in order on the calling thread.</li>
+ * </ol>
+ * The results are identical to those of the serial traversal.
+ * This class is used by the command line version of the application when more than one thread is requested.
+ * @author TBrady
+ *
+ */
+public class ParallelFileTraversal extends FileTraversal {
+        /** Number of items tested by a single subtask */
+        public static final int BATCH = 64;
+
+        protected int threads;
+        protected ForkJoinPool pool;
+        protected AtomicInteger numTested = new AtomicInteger();
+        protected AtomicInteger numListed = new AtomicInteger();
+        protected int listLimit;
+        protected volatile boolean listingStopped;
+
+        /**
+         * Listing of a single directory produced by the discovery phase.
+         */
+        static class DirNode {
+                File dir;
+                DirectoryScan scan;
+                String[] canonical;
+                ForkJoinTask<DirNode>[] children;
+        }
+
+        /**
+         * An item selected for testing along with the kind of test to perform.
+         */
+        static class WorkItem {
+                File file;
+                BasicFileAttributes attrs;
+                boolean dir;
+                WorkItem(File file, BasicFileAttributes attrs, boolean dir) {
+                        this.file = file;
+                        this.attrs = attrs;
+                        this.dir = dir;
+                }
+        }
+
+        public ParallelFileTraversal(FTDriver dt, int threads) {
+                super(dt);
+                this.threads = threads;
+        }
+
+        public int getThreads() {
+                return threads;
+        }
+
+        /**
+         * Fork/join subtask listing a single directory and forking one subtask per subdirectory.
+         * The chain of canonical paths above a directory is used to stop runaway recursion through symbolic link cycles.
+         * Recursion is permitted to revisit a canonical path once since the serial traversal does not record the root directory as visited.
+         */
+        class ListDirectory extends RecursiveTask<DirNode> {
+                private static final long serialVersionUID = 1L;
+                File dir;
+                HashMap<String,Integer> chain;
+
+                ListDirectory(File dir, HashMap<String,Integer> chain) {
+                        this.dir = dir;
+                        this.chain = chain;
+                }
+
+                @SuppressWarnings("unchecked")
+                protected DirNode compute() {
+                        DirNode node = new DirNode();
+                        node.dir = dir;
+                        if (listingStopped || ParallelFileTraversal.this.isCancelled()) return node;
+                        node.scan = DirectoryScan.scan(dir, fileFilter);
+                        if (node.scan == null) return node;
+                        int len = node.scan.size();
+                        //subdirectories left unlisted here are listed by getChild when the replay reaches them
+                        boolean listAhead = numListed.addAndGet(len) < listLimit;
+                        node.canonical = new String[len];
+                        node.children = new ForkJoinTask[len];
+                        boolean follow = driver.followLinks();
+                        for(int i=0; i<len; i++) {
+                                File f = node.scan.files[i];
+                                if (follow) {
+                                        try {
+                                                node.canonical[i] = f.getCanonicalPath();
+                                        } catch (IOException e) {
+                                                e.printStackTrace();
+                                        }
+                                } else if (node.scan.links[i]) {
+                                        continue;
+                                }
+                                if (!node.scan.isDirectory(i)) continue;
+                                if (!listAhead) continue;
+                                String cpath = node.canonical[i];
+                                Integer seen = (cpath == null) ? null : chain.get(cpath);
+                                if ((seen != null) && (seen > 1)) continue;
+                                HashMap<String,Integer> subchain = chain;
+                                if (cpath != null) {
+                                        subchain = new HashMap<String,Integer>(chain);
+                                        subchain.put(cpath, (seen == null) ? 1 : seen + 1);
+                                }
+                                node.children[i] = new ListDirectory(f, subchain).fork();
+                        }
+                        return node;
+                }
+        }
+
+        /**
+         * Fork/join subtask testing a batch of the selected items.
+         */
+        class TestItems extends RecursiveAction {
+                private static final long serialVersionUID = 1L;
+                ArrayList<WorkItem> items;
+                FileTest fileTest;
+
+                TestItems(ArrayList<WorkItem> items, FileTest fileTest) {
+                        this.items = items;
+                        this.fileTest = fileTest;
+                }
+
+                protected void compute() {
+                        for(WorkItem item: items) {
+                                if (ParallelFileTraversal.this.isCancelled()) break;
+                                testItem(item, fileTest);
+                        }
+                        //release the batch while the task is still referenced by the feed
+                        items = null;
+                }
+        }
+
+        /**
+         * Receives the selected items in traversal order and tests them as they arrive.
+         * Items of a parallel safe test are submitted to the pool in batches; at most a few batches per thread are left pending
+         * so that the selected items are not held in memory when testing falls behind the replay.
+         * Items of other tests are tested on the calling thread.
+         */
+        class Feed {
+                FileTest fileTest;
+                boolean parallel;
+                ArrayList<WorkItem> batch = new ArrayList<WorkItem>(BATCH);
+                ArrayDeque<ForkJoinTask<?>> pending = new ArrayDeque<ForkJoinTask<?>>();
+
+                Feed(FileTest fileTest) {
+                        this.fileTest = fileTest;
+                        this.parallel = fileTest.isParallelSafe();
+                }
+
+                void add(WorkItem item) {
+                        if (!parallel) {
+                                testItem(item, fileTest);
+                                return;
+                        }
+                        batch.add(item);
+                        if (batch.size() >= BATCH) submit();
+                }
+
+                void submit() {
+                        if (batch.isEmpty()) return;
+                        pending.add(pool.submit(new TestItems(batch, fileTest)));
+                        batch = new ArrayList<WorkItem>(BATCH);
+                        while(!pending.isEmpty() && (pending.peek().isDone() || pending.size() > 4 * threads)) {
+                                pending.poll().join();
+                        }
+                }
+
+                void finish() {
+                        submit();
+                        while(!pending.isEmpty()) {
+                                pending.poll().join();
+                        }
+                }
+        }
+
+        DirNode getChild(DirNode node, int i) {
+                ForkJoinTask<DirNode> child = node.children[i];
+                if (child != null) {
+                        //the listing is only replayed once, release it with its parent
+                        node.children[i] = null;
+                        return child.join();
+                }
+                //the directory was not listed ahead (list limit reached or symbolic link cycle), list it now
+                HashMap<String,Integer> chain = new HashMap<String,Integer>();
+                return pool.invoke(new ListDirectory(node.scan.files[i], chain));
+        }
+
+        /**
+         * Replay the discovered listings in the order used by the serial traversal, passing the selected items to the feed.
+         * @return false if the traversal was cancelled or stopped by the max cutoff
+         */
+        boolean select(DirNode node, FileTest fileTest, int max, Feed items) {
+                File f = node.dir;
+                DirectoryScan scan = node.scan;
+                if (scan == null) return true;
+                if (fileTest.processRoot() && fileTest.isTestDirectory(f)) {
+                        if (isMatchingDirectory(f, fileTest)) {
+                                if (!Files.isSymbolicLink(f.toPath()) || driver.followLinks()) {
+                                        items.add(new WorkItem(f, null, true));
+                                }
+                        }
+                }
+                for(int i=0; i<scan.size(); i++) {
+                        if (driver.followLinks()) {
+                                String path = node.canonical[i];
+                                if (path != null) {
+                                        if (alreadyVisited.contains(path)) {
+                                                continue;
+                                        }
+                                        alreadyVisited.add(path);
+                                }
+                        } else if (scan.links[i]) {
+                                continue;
+                        }
+                        if (scan.isDirectory(i)) {
+                                if (isCancelled()) return false;
+                                if (numProcessed >= max) {
+                                        return false;
+                                }
+                                select(getChild(node, i), fileTest, max, items);
+                                if (fileTest.isTestDirectory(scan.files[i])) {
+                                        if (isMatchingDirectory(scan.files[i], fileTest)) {
+                                                items.add(new WorkItem(scan.files[i], null, true));
+                                        }
+                                }
+                                increment();
+                        } else {
+                                if (isCancelled()) return false;
+                                items.add(new WorkItem(scan.files[i], scan.attrs[i], false));
+                                numProcessed++;
+                                if (numProcessed >= max) {
+                                        reportCancel();
+                                        return false;
+                                }
+                        }
+                }
+                return true;
+        }
+
+        void testItem(WorkItem item, FileTest fileTest) {
+                if (item.dir) {
+                        checkDirFile(item.file, fileTest);
+                        return;
+                }
+                checkFile(item.file, item.attrs, fileTest);
+                int count = numTested.getAndIncrement();
+                synchronized(fileTest) {
+                        fileTest.progress(count);
+                }
+        }
+
+        public boolean traverse(File f, FileTest fileTest, int max) {
+                if (f==null) return false;
+                pool = new ForkJoinPool(threads);
+                numListed.set(0);
+                listLimit = max;
+                listingStopped = false;
+                try {
+                        DirNode root = pool.invoke(new ListDirectory(f, new HashMap<String,Integer>()));
+                        Feed items = new Feed(fileTest);
+                        numProcessed = 0;
+                        numTested.set(0);
+                        boolean completed = select(root, fileTest, max, items);
+                        //directories listed ahead beyond the max cutoff are no longer needed
+                        listingStopped = true;
+                        items.finish();
+                        numProcessed = numTested.get();
+                        return completed && !isCancelled();
+                } finally {
+                        listingStopped = true;
+                        pool.shutdownNow();
+                        pool = null;
+                }
+        }
+
+        /**
+         * The directory count is only used to drive the GUI progress bar, skip the extra scan of the tree.
+         */
+        public void countDirectories(File f) {
+        }
+
+        public void reportDuration(double duration) {
+                System.out.println(numProcessed+" items.  "+ threads + " threads.  " + FTDriver.ndurf.format(duration) + " seconds");
+                System.out.flush();
+        }
+}
@@ -2,6 +2,8 @@ package gov.nara.nwts.ftapp;
 
 import java.util.Vector;
 
+import gov.nara.nwts.ftapp.stats.Stats;
+
 /**
  * Container for the various filters that may be applied to a set of results allowing results to be filtered by one or more columns.
  * @author TBrady
@@ -38,4 +40,20 @@ public class ResultFilter {
 		}
 		return true;
 	}
+
+	/**
+	 * Evaluate the values of a Stats object without copying them.
+	 */
+	public boolean evaluate(Stats stats) {
+		for(ResultFilterItem rfi: resfilters){
+			if (rfi.col < stats.getValCount()) {
+				Object o = stats.getValAt(rfi.col);
+				if (o == null) o = "";
+				if (!rfi.val.equals(o.toString())){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
 }
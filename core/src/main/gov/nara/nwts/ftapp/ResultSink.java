@@ -0,0 +1,152 @@
+package gov.nara.nwts.ftapp;
+
+import gov.nara.nwts.ftapp.stats.Stats;
+import gov.nara.nwts.ftapp.stats.StatsItemConfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Writes result rows to an output file as they are produced.
+ * <p>
+ * When results are streamed, each row is written as soon as the file test has computed it and the row is not retained in memory.
+ * Rows use the same format as {@link FTDriver#save(String, StatsItemConfig, java.util.TreeMap, boolean)} but appear in the order in which they were completed rather than in key order.
+ * Streaming is only used for file tests whose rows are final once computed (see {@link gov.nara.nwts.ftapp.filetest.FileTest#isStreamable()}).
+ * Rows are written straight to the output file so that it can be read while the traversal runs.
+ * An incomplete marker file is kept beside the output file until the traversal completes, so a batch run being resumed can tell a partial output from a finished one.
+ * @author TBrady
+ *
+ */
+public class ResultSink {
+	File file;
+	BufferedWriter bw;
+	boolean[] cols;
+	ResultFilter filter;
+	int count = 0;
+	IOException error;
+
+	public ResultSink(File file, StatsItemConfig details, ResultFilter filter) throws IOException {
+		this.file = file;
+		this.cols = details.getExportArray();
+		this.filter = filter;
+		getIncompleteFile(file).createNewFile();
+		bw = new BufferedWriter(new FileWriter(file));
+	}
+
+	/**
+	 * The temporary file to which results are written by {@link FTDriver#save(String, StatsItemConfig, java.util.TreeMap, boolean)} before being renamed to the output file.
+	 */
+	public static File getPartFile(File f) {
+		return new File(f.getPath() + ".part");
+	}
+
+	/**
+	 * The marker file present while results are being streamed to an output file.
+	 */
+	public static File getIncompleteFile(File f) {
+		return new File(f.getPath() + ".incomplete");
+	}
+
+	/**
+	 * @return true if the output file exists and was not left partially written by a streamed run
+	 */
+	public static boolean isComplete(File f) {
+		return f.exists() && !getIncompleteFile(f).exists();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Write a single row in the tab delimited format used for saved results.
+	 */
+	public static void writeRow(Writer bw, boolean[] cols, String key, Vector<Object> curvals) throws IOException {
+		int c = 0;
+		boolean first = true;
+		if (cols[c]) {
+			bw.write("\"");
+			bw.write(key);
+			bw.write("\"");
+			first = false;
+		}
+		for (Iterator<Object> j = curvals.iterator(); j.hasNext();) {
+			Object o = j.next();
+			String sc = (o==null)?"":o.toString();
+			c++;
+			if (cols[c]) {
+				if (first)
+					first = false;
+				else
+					bw.write("\t");
+				bw.write("\"");
+				bw.write(sc);
+				bw.write("\"");
+			}
+		}
+		bw.write("\r\n");
+	}
+
+	/**
+	 * Write a single row, reading the values from the Stats object rather than a copy of them.
+	 */
+	public static void writeRow(Writer bw, boolean[] cols, String key, Stats stats) throws IOException {
+		boolean first = true;
+		if (cols[0]) {
+			bw.write("\"");
+			bw.write(key);
+			bw.write("\"");
+			first = false;
+		}
+		int n = stats.getValCount();
+		for (int c = 0; c < n && c + 1 < cols.length; c++) {
+			if (!cols[c + 1]) continue;
+			Object o = stats.getValAt(c);
+			if (first)
+				first = false;
+			else
+				bw.write("\t");
+			bw.write("\"");
+			bw.write((o==null)?"":o.toString());
+			bw.write("\"");
+		}
+		bw.write("\r\n");
+	}
+
+	public synchronized void write(Stats stats) {
+		if (error != null) return;
+		if (!filter.evaluate(stats)) return;
+		try {
+			writeRow(bw, cols, stats.key, stats);
+			count++;
+		} catch (IOException e) {
+			error = e;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Close the output file.
+	 * @param completed true if the traversal completed, in which case the incomplete marker is removed
+	 */
+	public synchronized void close(boolean completed) {
+		try {
+			bw.close();
+			if (completed && error == null) {
+				Files.deleteIfExists(getIncompleteFile(file).toPath());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package gov.nara.nwts.ftapp;
+
+import gov.nara.nwts.ftapp.filetest.FileTest;
+import gov.nara.nwts.ftapp.stats.Stats;
+import gov.nara.nwts.ftapp.stats.StatsItem;
+import gov.nara.nwts.ftapp.stats.StatsItemConfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record of the files tested by a run along with the result row produced for each file.
+ * <p>
+ * In incremental mode the snapshot of the previous run is loaded before the traversal.
+ * A file (or directory) whose size and modification time match the snapshot is not tested again; the recorded row is restored instead.
+ * The snapshot is only reused when the root, the file test, its properties and the file filters match those of the previous run.
+ * A new snapshot is written when the run completes.
+ * <p>
+ * Only file tests whose rows are final once computed ({@link FileTest#isStreamable()}) can be run incrementally.
+ * @author TBrady
+ *
+ */
+public class Snapshot {
+	static final String HEADER = "#snapshot 1";
+	static final String NULL = "\\0";
+
+	static class Entry {
+		long size;
+		long mtime;
+		String key;
+		String[] vals;
+		Entry(long size, long mtime, String key, String[] vals) {
+			this.size = size;
+			this.mtime = mtime;
+			this.key = key;
+			this.vals = vals;
+		}
+	}
+
+	File file;
+	String signature;
+	HashMap<String,Entry> previous = new HashMap<String,Entry>();
+	ConcurrentHashMap<String,Entry> current = new ConcurrentHashMap<String,Entry>();
+	int restored = 0;
+
+	public Snapshot(File file, String signature) {
+		this.file = file;
+		this.signature = signature;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getPreviousCount() {
+		return previous.size();
+	}
+
+	public synchronized int getRestoredCount() {
+		return restored;
+	}
+
+	static String escape(String s) {
+		if (s == null) return NULL;
+		StringBuilder sb = new StringBuilder(s.length() + 8);
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '\\': sb.append("\\\\"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			default: sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static String unescape(String s) {
+		if (s.equals(NULL)) return null;
+		if (s.indexOf('\\') < 0) return s;
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char n = s.charAt(++i);
+				if (n == 't') sb.append('\t');
+				else if (n == 'n') sb.append('\n');
+				else if (n == 'r') sb.append('\r');
+				else sb.append(n);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Load the snapshot left by the previous run.  The snapshot is ignored if it was produced with a different signature.
+	 */
+	public void load() {
+		if (!file.exists()) return;
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = br.readLine();
+			if (!HEADER.equals(line)) return;
+			line = br.readLine();
+			if (line == null || !line.equals("#" + escape(signature))) return;
+			for(line = br.readLine(); line != null; line = br.readLine()) {
+				String[] cols = line.split("\t", -1);
+				if (cols.length < 4) continue;
+				String[] vals = new String[cols.length - 4];
+				for(int i=0; i<vals.length; i++) {
+					vals[i] = unescape(cols[i + 4]);
+				}
+				try {
+					previous.put(unescape(cols[2]), new Entry(Long.parseLong(cols[0]), Long.parseLong(cols[1]), unescape(cols[3]), vals));
+				} catch (NumberFormatException e) {
+					//a damaged line, the file will be tested again
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			previous.clear();
+		}
+	}
+
+	static Object parse(Class<?> c, String s) {
+		if (s == null) return null;
+		try {
+			if (c == String.class) return s;
+			if (c == Long.class) return Long.valueOf(s);
+			if (c == Integer.class) return Integer.valueOf(s);
+			if (c == Float.class) return Float.valueOf(s);
+			if (c == Double.class) return Double.valueOf(s);
+			if (c != null && c.isEnum()) {
+				for(Object o: c.getEnumConstants()) {
+					if (o.toString().equals(s)) return o;
+				}
+			}
+		} catch (NumberFormatException e) {
+			//the value was not of the column type when it was recorded
+		}
+		//results are reported as text, so the text of other values is retained
+		return s;
+	}
+
+	/**
+	 * Return the result recorded for a file if the file has not changed since the previous run.
+	 */
+	public Stats restore(File f, BasicFileAttributes attrs, FileTest fileTest) {
+		Entry e = previous.get(f.getPath());
+		if (e == null) return null;
+		if (e.size != attrs.size() || e.mtime != attrs.lastModifiedTime().toMillis()) return null;
+		StatsItemConfig details = fileTest.getStatsDetails();
+		if (e.vals.length != details.size() - 1) return null;
+		Stats stats = fileTest.createStats(e.key);
+		for(int i=0; i<e.vals.length; i++) {
+			StatsItem si = details.get(i + 1);
+			stats.setKeyVal(si, parse(si.myclass, e.vals[i]));
+		}
+		current.put(f.getPath(), e);
+		synchronized(this) {
+			restored++;
+		}
+		return stats;
+	}
+
+	/**
+	 * Record the result computed for a file.
+	 */
+	public void record(File f, BasicFileAttributes attrs, Stats stats) {
+		String[] svals = new String[stats.getValCount()];
+		for(int i=0; i<svals.length; i++) {
+			Object o = stats.getValAt(i);
+			svals[i] = (o == null) ? null : o.toString();
+		}
+		current.put(f.getPath(), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), stats.key, svals));
+	}
+
+	/**
+	 * Replace the snapshot file with the results of the current run.
+	 */
+	public void save() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+			bw.write(HEADER);
+			bw.newLine();
+			bw.write("#" + escape(signature));
+			bw.newLine();
+			ArrayList<String> cols = new ArrayList<String>();
+			for(Map.Entry<String,Entry> me: current.entrySet()) {
+				Entry e = me.getValue();
+				cols.clear();
+				cols.add(Long.toString(e.size));
+				cols.add(Long.toString(e.mtime));
+				cols.add(escape(me.getKey()));
+				cols.add(escape(e.key));
+				for(String s: e.vals) {
+					cols.add(escape(s));
+				}
+				bw.write(String.join("\t", cols));
+				bw.newLine();
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -1,46 +1,52 @@
 package gov.nara.nwts.ftapp.counter;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * A check applied to a rectangular range of cells.  Cells are visited row by row without building a list of the range.
+ */
 public class CellCheck {
-	ArrayList<Cell> cells = new ArrayList<Cell>();
+	int srow;
+	int scol;
+	int endrow;
+	int endcol;
 	
 	CounterCheck check;
-	CellCheck(CounterCheck check) {
-		this.check = check;
-	}
 	CellCheck(CounterCheck check, Cell cell) {
-		this.check = check;
-		cells.add(cell);
+		this(check, cell.row, cell.col, cell.row, cell.col);
 	}
-	CellCheck(CounterCheck check, List<Cell> acell) {
+	CellCheck(CounterCheck check, int srow, int scol, int endrow, int endcol) {
 		this.check = check;
-		for(Cell cell: acell){
-			cells.add(cell);
-		}
+		this.srow = srow;
+		this.scol = scol;
+		this.endrow = endrow;
+		this.endcol = endcol;
 	}
-	List<CheckResult> performCheck(CounterData cd) {
-		ArrayList<CheckResult> results = new ArrayList<CheckResult>();
-		for(Cell cell: cells) {
-			CheckResult res = check.performCheck(cd, cell, cd.getCellValue(cell)); 
-			results.add(res);
-			
-			if (res.stat != CounterStat.VALID) {
-				if (res.newVal != null) {
-					CounterData.setCellValue(cd.getFix(false), res.cell, res.newVal);
-				} else {
-					if (check.ignoreVal) {
-						res.setIgnoreVal(true);
+	/**
+	 * Check each cell of the range, recording the results and proposed fixes in the report data.
+	 * @return true if checking stopped at an error
+	 */
+	boolean performCheck(CounterData cd) {
+		for(int r=srow; r<=endrow; r++) {
+			for(int c=scol; c<=endcol; c++) {
+				Cell cell = new Cell(r, c);
+				CheckResult res = check.performCheck(cd, cell, cd.getCellValue(cell)); 
+				cd.addResult(res);
+				
+				if (res.stat != CounterStat.VALID) {
+					if (res.newVal != null) {
+						cd.setFixValue(res.cell, res.newVal);
+					} else {
+						if (check.ignoreVal) {
+							res.setIgnoreVal(true);
+						}
 					}
 				}
-			}
-			
-			if (res.stat.ordinal() >= CounterStat.ERROR.ordinal()) {
-				break;
+				
+				if (res.stat.ordinal() >= CounterStat.ERROR.ordinal()) {
+					return true;
+				}
 			}
 		}
-		return results;
+		return false;
 	}
 
 }
@@ -1,16 +1,51 @@
 package gov.nara.nwts.ftapp.counter;
 
+import gov.nara.nwts.ftapp.importer.DelimitedFileReader;
+import gov.nara.nwts.ftapp.importer.DelimitedFileWriter;
+import gov.nara.nwts.ftapp.importer.DelimitedRow;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * The cells of a COUNTER report and the results of validating them.
+ * <p>
+ * The values of all cells are held in a single character buffer: each row is a range of cells and each cell a range of characters.
+ * Rows are removed by shifting an index of row numbers, so the cells themselves are never copied.
+ * Replacement values proposed by the checks are held as an overlay of changed cells rather than in a copy of the report.
+ * @author TBrady
+ *
+ */
 public class CounterData {
     Pattern pRptType = Pattern.compile("^(.*?)\\(([^\\)]+)\\)( - )?(.*?)$");
-	Vector<Vector<String>> data;
-	private Vector<Vector<String>> fix;
+	//the value of cell i is chars[cellStart[i]] up to chars[cellStart[i+1]]
+	char[] chars = new char[4096];
+	int charCount = 0;
+	int[] cellStart = new int[257];
+	int cellCount = 0;
+	//cells without a value, only present in data read from a spreadsheet
+	BitSet nullCells;
+	//the cells of stored row r are rowFirst[r] up to rowEnd[r]
+	int[] rowFirst = new int[64];
+	int[] rowEnd = new int[64];
+	//the stored row shown at each row number
+	int[] rows = new int[64];
+	int rowCount = 0;
+	int lastRow = -1;
+	//replacement values keyed by row and column, null if no fix has been started
+	private HashMap<Long,String> fix;
 	public ArrayList<CheckResult> results = new ArrayList<CheckResult>();
+	//number of results of each status
+	int[] resultCount = new int[CounterStat.values().length];
+	/** set to false to only keep the results of cells that are not valid */
+	public boolean keepValid = true;
 	
 	public CheckResult fileStat = CheckResult.createFileStatus(CounterStat.VALID);
 
@@ -20,64 +55,186 @@ public class CounterData {
 	public String title = "";
 	boolean allFixable = true;
 	
-	public Vector<Vector<String>> getFix(boolean force) {
-		if (fix == null || force) {
-			fix = new Vector<Vector<String>>();
-			for(Vector<String> row: data) {
-				Vector<String> newRow = new Vector<String>();
-				fix.add(newRow);
-				for(String col: row) {
-					newRow.add(col);
+	public CounterData(Vector<Vector<String>> data) {
+		for(Vector<String> row: data) {
+			for(String val: row) {
+				if (val == null) {
+					if (nullCells == null) nullCells = new BitSet();
+					nullCells.set(cellCount);
+				}
+				addCell(val == null ? "" : val);
+			}
+			endRow();
+		}
+	}
+	
+	/**
+	 * Read the rows of a delimited file directly into the cell buffer.
+	 */
+	public CounterData(File f, String sep) throws IOException {
+		DelimitedFileReader dfr = new DelimitedFileReader(f, sep);
+		try {
+			DelimitedRow row = new DelimitedRow();
+			while(dfr.readRow(row)) {
+				for(int i=0; i<row.size(); i++) {
+					addCell(row.get(i));
 				}
+				endRow();
 			}
+		} finally {
+			dfr.close();
 		}
-		return fix;
+	}
+	
+	void addCell(String val) {
+		if (charCount + val.length() > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + val.length()));
+		}
+		val.getChars(0, val.length(), chars, charCount);
+		charCount += val.length();
+		if (cellCount + 2 > cellStart.length) {
+			cellStart = Arrays.copyOf(cellStart, cellStart.length * 2);
+		}
+		cellCount++;
+		cellStart[cellCount] = charCount;
+	}
+	
+	void endRow() {
+		if (rowCount == rows.length) {
+			int len = rowCount * 2;
+			rowFirst = Arrays.copyOf(rowFirst, len);
+			rowEnd = Arrays.copyOf(rowEnd, len);
+			rows = Arrays.copyOf(rows, len);
+		}
+		rowFirst[rowCount] = rowCount == 0 ? 0 : rowEnd[rowCount - 1];
+		rowEnd[rowCount] = cellCount;
+		rows[rowCount] = rowCount;
+		rowCount++;
+		lastRow = -1;
+	}
+	
+	void removeRow(int r) {
+		System.arraycopy(rows, r + 1, rows, r, rowCount - r - 1);
+		rowCount--;
+		lastRow = -1;
+	}
+	
+	/**
+	 * @return the number of cells in a row
+	 */
+	int getRowSize(int row) {
+		int r = rows[row];
+		return rowEnd[r] - rowFirst[r];
+	}
+	
+	/**
+	 * @return the length of a cell without creating its value
+	 */
+	int getCellLength(int row, int col) {
+		int i = rowFirst[rows[row]] + col;
+		return cellStart[i + 1] - cellStart[i];
+	}
+	
+	/**
+	 * Start a new set of fixes, discarding any replacement values already proposed.
+	 */
+	public void resetFix() {
+		fix = new HashMap<Long,String>();
 	}
 	
 	public boolean hasFix() {return fix != null;}
 	
+	static Long getFixKey(Cell cell) {
+		return ((long)cell.row << 32) | cell.col;
+	}
+	
+	/**
+	 * Propose a replacement value for a cell.  Cells outside of the report are ignored.
+	 */
+	public void setFixValue(Cell cell, String val) {
+		if (cell.row >= rowCount || cell.row < 0) return;
+		if (cell.col >= getRowSize(cell.row) || cell.col < 0) return;
+		if (fix == null) resetFix();
+		fix.put(getFixKey(cell), val);
+	}
+	
+	/**
+	 * @return the value of a cell with any replacement applied
+	 */
+	public String getFixValue(Cell cell) {
+		if (fix != null) {
+			String val = fix.get(getFixKey(cell));
+			if (val != null) return val;
+		}
+		return getCellValue(cell);
+	}
+	
+	/**
+	 * Write the report with every replacement applied as a CSV file.
+	 */
+	public void writeFix(File f) throws IOException {
+		DelimitedFileWriter dfw = new DelimitedFileWriter(f, ",");
+		try {
+			for(int row=0; row<rowCount; row++) {
+				int size = getRowSize(row);
+				for(int col=0; col<size; col++) {
+					dfw.writeField(getFixValue(Cell.at(row, col)), col == size - 1);
+				}
+			}
+		} finally {
+			dfw.close();
+		}
+	}
+	
 	public int getMaxRow() {
-		return data.size();
+		return rowCount;
 	}
 	
 	public int getMaxCol(int row) {
-		if (data.size() > row) {
-			return data.get(row).size()-1;
+		if (rowCount > row) {
+			return getRowSize(row)-1;
 		}
 		return 0;
 	}
 	
 	public int getLastCol(int row) {
-		if (data.size() > row) {
-			Vector<String> drow = data.get(row);
-			return getLastCol(row, drow.size() - 1);
+		if (rowCount > row) {
+			return getLastCol(row, getRowSize(row) - 1);
 		}
 		return 0;
 	}
 
 	public int getLastCol(int row, int mcol) {
-		if (data.size() > row) {
-			Vector<String> drow = data.get(row);
-			if (mcol > drow.size()-1) mcol = drow.size() - 1;
+		if (rowCount > row) {
+			if (mcol > getRowSize(row)-1) mcol = getRowSize(row) - 1;
 			for(int c=mcol; c>=0; c--) {
-				String s = drow.get(c);
-				if (s == null) continue;
-				if (!s.isEmpty()) return c;
+				if (getCellLength(row, c) > 0) return c;
 			}
 		}
 		return 0;
 	}
 
+	boolean isBlank(int row) {
+		for(int c=getRowSize(row)-1; c>=0; c--) {
+			if (getCellLength(row, c) > 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the last row holding a value; the result is kept until a row is added or removed
+	 */
 	public int getLastRow() {
-		for(int r=data.size()-1; r>=0; r--) {
-			Vector<String> row = data.get(r);
-			if (row == null) continue;
-			for(String s: row) {
-				if (s == null) continue;
-				if (!s.isEmpty()) return r;
+		if (lastRow < 0) {
+			lastRow = 0;
+			for(int r=rowCount-1; r>=0; r--) {
+				if (!isBlank(r)) {
+					lastRow = r;
+					break;
+				}
 			}
 		}
-		return 0;
+		return lastRow;
 	}
 	
 	public CounterStat getStat() {
@@ -94,22 +251,18 @@ public class CounterData {
 		return fileStat.message;
 	}
 	
-	public CounterData(Vector<Vector<String>> data) {
-		this.data = data;
-	}
-	
 
 	public void prepFileJStor() {
-		if (data.size() > 3) {
+		if (rowCount > 3) {
 			String A1 = getCellValue(Cell.at("A1"));
 			String A2 = getCellValue(Cell.at("A2"));
 			String A3 = getCellValue(Cell.at("A3"));
 			
 			//Eliminate JSTOR Leader
 			if (A1.equals("Counter Report") && A2.isEmpty() && A3.startsWith("Create time")) {
-				data.remove(0);
-				data.remove(0);
-				data.remove(0);
+				removeRow(0);
+				removeRow(0);
+				removeRow(0);
 				fileStat = CheckResult.createFileStatus(CounterStat.JSTOR).setMessage("JSTOR: Remove first 3 lines. ");
 			}			
 		}
@@ -118,7 +271,7 @@ public class CounterData {
 		if (Last1 != null) {
 			if (Last1.isEmpty()) {
 			} else if (Last1.charAt(0) == 0x00A9) {
-				data.remove(getLastRow());
+				removeRow(getLastRow());
 				
 				if (fileStat.stat == CounterStat.JSTOR) {
 					fileStat.message = fileStat.message + "JSTOR: Remove trailing copyright. ";
@@ -129,19 +282,10 @@ public class CounterData {
 		}
 		
 		//handle JSTOR empty row
-		int r = 0;
-		for(Vector<String>row: data) {
-			boolean isBlank = true;
-			for(String c: row) {
-				if (c == null) continue;
-				if (c.isEmpty()) continue;
-				isBlank = false;
-				break;
-			}
-			
-			if (isBlank) {
+		for(int r=0; r<rowCount; r++) {
+			if (isBlank(r)) {
 				if ((r==4) || (r==8)) {
-					data.remove(r);
+					removeRow(r);
 					if (fileStat.stat == CounterStat.JSTOR) {
 						fileStat.message = fileStat.message + "JSTOR: Remove blank line before header. ";
 					} else {
@@ -150,21 +294,21 @@ public class CounterData {
 					break;					
 				}
 			}
-			r++;
 		}
 		if (fileStat.stat == CounterStat.JSTOR) {
-			getFix(true);
+			resetFix();
 		}
 	}
 	
 	public void shiftCols(ReportType reportType) {
-		Vector<String> header = data.get(reportType.getHeadRow());
+		int head = reportType.getHeadRow();
+		int size = head < rowCount ? getRowSize(head) : 0;
 		boolean bMatch = true;
 		boolean bMatch2 = true;
 		int col = 0;
 		for(String c: reportType.getCols()) {
-			String s = (col < header.size()) ? header.get(col) : null;
-			String s2 = (col+2 < header.size()) ? header.get(col+2) : null;
+			String s = (col < size) ? getCellValue(Cell.at(head, col)) : null;
+			String s2 = (col+2 < size) ? getCellValue(Cell.at(head, col+2)) : null;
 			if (!c.equals(s)) bMatch = false;
 			if (!c.equals(s2)) bMatch2 = false;
 			col++;
@@ -174,16 +318,14 @@ public class CounterData {
 		
 		fileStat = CheckResult.createFileStatus(CounterStat.SHIFT_2_COL).setMessage("SHIFT: The first 2 cols of data header and rows must be removed");
 		
-		int r=0;
-		for(Vector<String> row : data) {
-			if (r >= reportType.getHeadRow()) {
-				row.remove(0);
-				row.remove(0);
-			}
-			r++;
+		//the stored rows shown from the header on lose their first 2 cells
+		for(int r=head; r<rowCount; r++) {
+			int sr = rows[r];
+			rowFirst[sr] = Math.min(rowFirst[sr] + 2, rowEnd[sr]);
 		}
+		lastRow = -1;
 		
-		getFix(true);
+		resetFix();
 	}
 	
 	public void validate() {
@@ -199,24 +341,20 @@ public class CounterData {
 			return;
 		}
 		
-		results.addAll(reportType.validate(this));
-		TreeMap<CounterStat,Integer> resultCount = new TreeMap<CounterStat,Integer>();
+		reportType.validate(this);
 		CounterStat overall = fileStat.stat;
-		for(CheckResult cr: results) {
-			overall = (cr.stat.ordinal() > overall.ordinal()) ? cr.stat : overall;
-			Integer x = resultCount.get(cr.stat);
-			x = (x == null) ? 1 : x.intValue() + 1;
-			resultCount.put(cr.stat, x);
+		for(CounterStat st: CounterStat.values()) {
+			if (resultCount[st.ordinal()] > 0 && st.ordinal() > overall.ordinal()) overall = st;
 		}
 		StringBuffer buf = new StringBuffer(fileStat.message);
 		Vector<CounterStat> cstats = new Vector<CounterStat>();
-		for(CounterStat st: resultCount.keySet()) {
-			cstats.add(0, st);
+		for(CounterStat st: CounterStat.values()) {
+			if (resultCount[st.ordinal()] > 0) cstats.add(0, st);
 		}
 		for(CounterStat st: cstats) {
 			buf.append(st.name());
 			buf.append(": ");
-			buf.append(resultCount.get(st));
+			buf.append(resultCount[st.ordinal()]);
 			buf.append(" cells; ");
 		}
 		
@@ -277,15 +415,20 @@ public class CounterData {
 		return reportType;
 	}
 	
-	public String getCellValue(Cell cell) {
-		if (cell.row >= data.size() || cell.row < 0) return null;
-		if (cell.col >= data.get(cell.row).size() || cell.col < 0) return null;
-		return data.get(cell.row).get(cell.col);
+	/**
+	 * Record the result of a check.  Results for valid cells are only kept if {@link #keepValid} is set.
+	 */
+	void addResult(CheckResult res) {
+		resultCount[res.stat.ordinal()]++;
+		if (res.stat != CounterStat.VALID || keepValid) results.add(res);
 	}
-	public static void setCellValue(Vector<Vector<String>> xdata, Cell cell, String val) {
-		if (cell.row >= xdata.size() || cell.row < 0) return;
-		if (cell.col >= xdata.get(cell.row).size() || cell.col < 0) return;
-		xdata.get(cell.row).set(cell.col, val);
+	
+	public String getCellValue(Cell cell) {
+		if (cell.row >= rowCount || cell.row < 0) return null;
+		if (cell.col >= getRowSize(cell.row) || cell.col < 0) return null;
+		int i = rowFirst[rows[cell.row]] + cell.col;
+		if (nullCells != null && nullCells.get(i)) return null;
+		return new String(chars, cellStart[i], cellStart[i + 1] - cellStart[i]);
 	}
 	
 }
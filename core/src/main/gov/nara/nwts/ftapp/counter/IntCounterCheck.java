@@ -1,13 +1,23 @@
 package gov.nara.nwts.ftapp.counter;
 
+import java.util.regex.Pattern;
+
 public class IntCounterCheck extends CounterCheck {
+	//a decimal fraction ignored when reading an integer
+	static final Pattern pFraction = Pattern.compile("\\.\\d+$");
 	String val;
 	public IntCounterCheck(String message) {
 		this.message = message;
 	}
 
+	static String stripFraction(String cellval) {
+		if (cellval == null) return "";
+		if (cellval.indexOf('.') < 0) return cellval;
+		return pFraction.matcher(cellval).replaceAll("");
+	}
+
 	public Integer getIntValue(String cellval) {
-		cellval = (cellval == null) ? "" : cellval.replaceAll("\\.\\d+$", "");
+		cellval = stripFraction(cellval);
 		try {
 			return Integer.parseInt(cellval);
 		} catch(NumberFormatException e) {
@@ -16,7 +26,7 @@ public class IntCounterCheck extends CounterCheck {
 	}
 	
 	public Integer getIntValue(String cellval, int def) {
-		cellval = (cellval == null) ? "" : cellval.replaceAll("\\.\\d+$", "");
+		cellval = stripFraction(cellval);
 		try {
 			return Integer.parseInt(cellval);
 		} catch(NumberFormatException e) {
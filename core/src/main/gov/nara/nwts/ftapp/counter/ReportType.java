@@ -1,7 +1,6 @@
 package gov.nara.nwts.ftapp.counter;
 
 import java.util.ArrayList;
-import java.util.List;
 import java.util.regex.Pattern;
 
 public abstract class ReportType {
@@ -46,24 +45,21 @@ public abstract class ReportType {
 	}
 
 	protected void addCheckRange(CounterCheck ccheck, int srow, int scol, int endrow, int endcol) {
-		checks.add(new CellCheck(ccheck, Cell.makeRange(srow, scol, endrow, endcol)));
+		checks.add(new CellCheck(ccheck, srow, scol, endrow, endcol));
 	}
 	
 	public boolean isSupported() {
 		return false;
 	}
-	List<CheckResult> validate(CounterData cd) {
-		ArrayList<CheckResult> results = new ArrayList<CheckResult>();
+	/**
+	 * Run each check against the report data, stopping at the first error.
+	 */
+	void validate(CounterData cd) {
 		for(CellCheck check: checks) {
-			results.addAll(check.performCheck(cd));
-			if (results.size() > 0) {
-				CheckResult last = results.get(results.size()-1); 
-				if (last.stat.ordinal() >= CounterStat.ERROR.ordinal()){
-					break;
-				}
+			if (check.performCheck(cd)) {
+				break;
 			}
 		}
-		return results;
 	}
 
 	public void checkColHeader(CounterData data) {
@@ -32,6 +32,9 @@ class CountByType extends DefaultFileTest {
     	return FileCountStats.details;
     }
     public String getShortName(){return "By Type";}
+    public boolean isParallelSafe() {
+    	return true;
+    }
 	public void initFilters() {
 		initAllFilters();
 	}
@@ -16,8 +16,6 @@ import gov.nara.nwts.ftapp.filter.TxtFilter;
 import gov.nara.nwts.ftapp.ftprop.FTPropEnum;
 import gov.nara.nwts.ftapp.ftprop.FTPropString;
 import gov.nara.nwts.ftapp.ftprop.InitializationStatus;
-import gov.nara.nwts.ftapp.importer.DelimitedFileReader;
-import gov.nara.nwts.ftapp.importer.DelimitedFileWriter;
 import gov.nara.nwts.ftapp.importer.Importer;
 import gov.nara.nwts.ftapp.stats.Stats;
 import gov.nara.nwts.ftapp.stats.StatsGenerator;
@@ -124,15 +122,18 @@ public class CounterValidation extends DefaultFileTest implements Importer {
     	return "\t";
     }
     
-    public Vector<Vector<String>> getDataFromFile(File f, Stats s) {
+    /**
+     * Read the cells of a report.  Files other than CSV and TXT files produce an empty report.
+     * @return null if the file could not be read
+     */
+    public CounterData getDataFromFile(File f, Stats s) {
 		String ext = getExt(f);
 		String sep = getSeparator(f, ext);
 		try {
-			Vector<Vector<String>> data = new Vector<Vector<String>>();
 			if (ext.equals("CSV") || ext.endsWith("TXT")) {
-				data = DelimitedFileReader.parseFile(f, sep);
+				return new CounterData(f, sep);
 			}
-			return data;
+			return new CounterData(new Vector<Vector<String>>());
 		} catch (IOException e) {
 			s.setVal(CounterStatsItems.Stat, CounterStat.UNSUPPORTED_FILE);
 			s.setVal(CounterStatsItems.Message, e.toString());
@@ -154,10 +155,10 @@ public class CounterValidation extends DefaultFileTest implements Importer {
 	public Object fileTest(File f) {
 		Stats s = getStats(f);
 		
-		Vector<Vector<String>> data = getDataFromFile(f, s);
-		if (data == null) return s.getVal(CounterStatsItems.Stat);
+		CounterData cd = getDataFromFile(f, s);
+		if (cd == null) return s.getVal(CounterStatsItems.Stat);
 			
-		CounterData cd = new CounterData(data);
+		cd.keepValid = showValid;
 		cd.validate();
 		
 		if (cd.report != null) {
@@ -220,7 +221,7 @@ public class CounterValidation extends DefaultFileTest implements Importer {
 			if (cd.isFixable()) {
 				File fixf = new File(f.getParentFile(), f.getName() + getProperty(FIXSUFF,""));
 				try {
-					DelimitedFileWriter.writeCsv(fixf, cd.getFix(false));
+					cd.writeFix(fixf);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -1,6 +1,8 @@
 package gov.nara.nwts.ftapp.filetest;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -14,10 +16,13 @@ import gov.nara.nwts.ftapp.filter.ImageFileTestFilter;
 import gov.nara.nwts.ftapp.filter.JpegFileTestFilter;
 import gov.nara.nwts.ftapp.filter.TiffFileTestFilter;
 import gov.nara.nwts.ftapp.ftprop.FTProp;
+import gov.nara.nwts.ftapp.ftprop.FTPropEnum;
+import gov.nara.nwts.ftapp.ftprop.FTPropInt;
 import gov.nara.nwts.ftapp.ftprop.InitializationStatus;
 import gov.nara.nwts.ftapp.stats.Stats;
 import gov.nara.nwts.ftapp.stats.CountStats;
 import gov.nara.nwts.ftapp.stats.StatsItemConfig;
+import edu.georgetown.library.fileAnalyzer.util.FixityCache;
 
 /**
  * Abstract implementation of the FileTest interface; FileTest objects will derive these behaviors unless explicitly overridden.
@@ -25,9 +30,12 @@ import gov.nara.nwts.ftapp.stats.StatsItemConfig;
  *
  */
 public abstract class DefaultFileTest implements FileTest {
+	public static final String FIXITY_CACHE = "fixity-cache";
+	public static final String FIXITY_SAMPLE = "fixity-sample";
 	protected FTDriver dt;
 	protected ArrayList<FileTestFilter>filters;
 	protected ArrayList<FTProp>ftprops;
+	protected FixityCache fixityCache;
 	
 	public File getRoot() {
 		return dt.getRoot();
@@ -100,10 +108,12 @@ public abstract class DefaultFileTest implements FileTest {
 	public Stats getStats(String key) {
 		Stats mystats = dt.types.get(key);
 		if (mystats == null) {
-			mystats = createStats(key);
+			Stats newstats = createStats(key);
+			mystats = dt.types.putIfAbsent(key, newstats);
+			if (mystats == null) {
+				mystats = newstats;
+			}
 		}
-		dt.types.put(key, mystats);
-		
 		return mystats;
 	}
 
@@ -111,6 +121,13 @@ public abstract class DefaultFileTest implements FileTest {
 		return true;
 	}
 
+	/**
+	 * Test a file whose attributes were read during the traversal.  By default the attributes are ignored.
+	 */
+	public Object fileTest(File f, BasicFileAttributes attrs) {
+		return fileTest(f);
+	}
+
     public Stats createStats(String key){
     	return new CountStats(key);
     }
@@ -133,7 +150,20 @@ public abstract class DefaultFileTest implements FileTest {
     public Pattern getDirectoryPattern() {
     	return null;
     }
+    /* Files are tested one at a time unless a test declares that its results do not depend on the order in which files are visited.*/
+    public boolean isParallelSafe() {
+    	return false;
+    }
+    /* A test may stream its results when each result is keyed to a single file and is not changed after the file is tested.*/
+    public boolean isStreamable() {
+    	return false;
+    }
+    /* A test whose init() replaces its static StatsItemConfig shares its columns with every other instance of the test, so two instances cannot run at once.*/
+    public boolean hasSharedDetails() {
+    	return false;
+    }
     public InitializationStatus init() { 
+        closeFixityCache();
         InitializationStatus iStat = new InitializationStatus();
         for(FTProp prop: ftprops) {
             iStat.addMessage(prop.initValidation(getRoot()));
@@ -141,6 +171,7 @@ public abstract class DefaultFileTest implements FileTest {
         return iStat;
     }
     public void refineResults() {
+        closeFixityCache();
     }
 
     public void progress(int count) {
@@ -178,6 +209,53 @@ public abstract class DefaultFileTest implements FileTest {
 		}
 		return def;
 	}
+
+	/**
+	 * Add the properties controlling the use of the checksum cache kept in the output directory.
+	 */
+	public void addFixityCacheProperties() {
+		ftprops.add(new FTPropEnum(dt, this.getClass().getName(), FIXITY_CACHE, FIXITY_CACHE,
+				"Checksum cache in the output directory: OFF, TRUST unchanged files, SAMPLE unchanged files, VERIFY all files", FixityCache.Policy.values(), FixityCache.Policy.OFF));
+		ftprops.add(new FTPropInt(dt, this.getClass().getName(), FIXITY_SAMPLE, FIXITY_SAMPLE,
+				"Percentage of unchanged files to checksum again when the cache policy is SAMPLE", 10));
+	}
+
+	/**
+	 * Open the checksum cache in the output directory using the policy selected by the fixity cache properties.
+	 * The cache stays open for the rest of the run; later calls return the same cache until {@link #closeFixityCache()} is called.
+	 * @return null if the cache is not in use
+	 */
+	public synchronized FixityCache openFixityCache() throws IOException {
+		if (fixityCache != null) return fixityCache;
+		FixityCache.Policy policy = (FixityCache.Policy)getProperty(FIXITY_CACHE, FixityCache.Policy.OFF);
+		if (policy == FixityCache.Policy.OFF) return null;
+		int samplePercent = 10;
+		try {
+			samplePercent = Integer.parseInt(getProperty(FIXITY_SAMPLE, "10").toString().trim());
+		} catch (NumberFormatException e) {
+		}
+		fixityCache = FixityCache.open(dt.getSaveDir(), policy, samplePercent);
+		return fixityCache;
+	}
+
+	/**
+	 * Close the checksum cache opened for this run, reporting the files whose checksum no longer matches the cached value.
+	 */
+	public synchronized void closeFixityCache() {
+		if (fixityCache == null) return;
+		List<String> mismatches = fixityCache.getMismatches();
+		System.out.println("Checksum cache: " + fixityCache.getHits() + " unchanged, " + fixityCache.getMisses() + " computed, " + mismatches.size() + " mismatched");
+		for(String mismatch: mismatches) {
+			System.out.println("  Fixity mismatch " + mismatch);
+		}
+		try {
+			fixityCache.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		fixityCache = null;
+	}
+
 	public void setProperty(String name, String s) {
 		for(FTProp ftprop: ftprops) {
 			if (ftprop.getName().equals(name)) {
@@ -94,6 +94,10 @@ class DigitalDerivatives extends DefaultFileTest {
 	Vector<String>extensions;
 	Vector<String>extensionsReq;
 	
+	@Override public boolean hasSharedDetails() {
+		return true;
+	}
+
 	@Override public InitializationStatus init() {
 		match = getProperty(REGX_MATCH, DEF_MATCH).toString();
 		try {
@@ -34,6 +34,9 @@ class DirMatch extends DefaultFileTest {
 	}
 	
     public String getShortName(){return "Path";}
+    public boolean isParallelSafe() {
+    	return true;
+    }
 
 	public Object fileTest(File f) {
 		return null;
@@ -1,6 +1,7 @@
 package gov.nara.nwts.ftapp.filetest;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -24,6 +25,7 @@ public interface FileTest {
         public String getKey(File f, Object o);
         public boolean isTestable(File f);
         public Object fileTest(File f);
+        public Object fileTest(File f, BasicFileAttributes attrs);
         public Stats getStats(File f);
         public Stats getStats(String key);
 
@@ -45,6 +47,9 @@ public interface FileTest {
         public boolean isTestDirectory(File f);
         public boolean processRoot();
         public Pattern getDirectoryPattern();
+        public boolean isParallelSafe();
+        public boolean isStreamable();
+        public boolean hasSharedDetails();
     
         public void refineResults();
         public InitializationStatus init();
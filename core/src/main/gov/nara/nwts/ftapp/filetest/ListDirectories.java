@@ -68,6 +68,14 @@ class ListDirectories extends DefaultFileTest {
 		return "DIR";
 	}
 
+	public boolean isParallelSafe() {
+		return true;
+	}
+
+	public boolean isStreamable() {
+		return true;
+	}
+
 
 	public String getDescription() {
 		return "This rule will generate a listing of the unique directory names found within a specific directory.\n" +
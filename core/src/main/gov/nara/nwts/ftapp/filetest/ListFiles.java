@@ -67,6 +67,14 @@ class ListFiles extends DefaultFileTest {
 		return "Files";
 	}
 
+	public boolean isParallelSafe() {
+		return true;
+	}
+
+	public boolean isStreamable() {
+		return true;
+	}
+
 
 	public String getDescription() {
 		return "This rule will generate a listing of the full path to every file it finds.\n" +
@@ -8,14 +8,16 @@ import gov.nara.nwts.ftapp.stats.ChecksumStats;
 import gov.nara.nwts.ftapp.stats.ChecksumStats.ChecksumStatsItems;
 import gov.nara.nwts.ftapp.stats.Stats;
 import gov.nara.nwts.ftapp.stats.StatsItemConfig;
+import edu.georgetown.library.fileAnalyzer.util.ChecksumEngine;
+import edu.georgetown.library.fileAnalyzer.util.FixityCache;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
@@ -51,6 +53,7 @@ public class NameChecksum extends DefaultFileTest {
 				"Checksum Algorithm", Algorithm.values(), Algorithm.MD5));
 		this.ftprops.add(new FTPropEnum(dt, this.getClass().getName(), KEY, KEY,
 				"Result Key", KEYTYPE.values(), KEYTYPE.PATH));
+		addFixityCacheProperties();
 	}
 
 	public String toString() {
@@ -63,10 +66,16 @@ public class NameChecksum extends DefaultFileTest {
 	
 	@Override public InitializationStatus init() {
 		keymap.clear();
-		return super.init();
+		InitializationStatus istat = super.init();
+		try {
+			openFixityCache();
+		} catch (IOException e) {
+			istat.addFailMessage("Checksum cache cannot be opened: " + e.getMessage());
+		}
+		return istat;
 	}
 	
-	public void setChecksumKey(String s, ChecksumStats stat) {
+	public synchronized void setChecksumKey(String s, ChecksumStats stat) {
 		List<ChecksumStats> matches = keymap.get(s);
 		if (matches == null) {
 			matches = new ArrayList<ChecksumStats>();
@@ -76,8 +85,15 @@ public class NameChecksum extends DefaultFileTest {
 	}
 	
 	@Override public void refineResults() {
+		closeFixityCache();
 		for(List<ChecksumStats> matches: keymap.values()) {
 			if (matches.size() == 1) continue;
+			//order matches by result key so that the first match does not depend on the order in which files were visited
+			Collections.sort(matches, new Comparator<ChecksumStats>(){
+				public int compare(ChecksumStats o1, ChecksumStats o2) {
+					return o1.key.compareTo(o2.key);
+				}
+			});
 			int count = 0;
 			for(ChecksumStats match: matches) {
 				match.setVal(ChecksumStatsItems.IsDuplicate, YN.Y);
@@ -94,36 +110,23 @@ public class NameChecksum extends DefaultFileTest {
 	
     public String getShortName(){return "Checksum";}
 
+    /* When keyed by name, files sharing a name update the same result and the last file visited wins.*/
+    public boolean isParallelSafe() {
+    	return ((KEYTYPE)getProperty(KEY)) == KEYTYPE.PATH;
+    }
+
     public String getChecksum(File f) {
     	Algorithm algorithm = (Algorithm)getProperty(ALGORITHM);
-    	FileInputStream fis = null;
 		try {
-			MessageDigest md = algorithm.getInstance();
-			fis = new FileInputStream(f);
-			byte[] dataBytes = new byte[1204];
-			int nread = 0;
-			while((nread = fis.read(dataBytes)) != -1){
-				md.update(dataBytes, 0, nread);
-			}
-			byte[] mdbytes = md.digest();
-			StringBuffer sb = new StringBuffer();
-			for(int i=0; i<mdbytes.length; i++){
-				sb.append(Integer.toString((mdbytes[i] & 0xFF) + 0x100, 16).substring(1));
+			FixityCache fc = fixityCache;
+			if (fc == null) {
+				return ChecksumEngine.digest(f, algorithm.algorithm);
 			}
-			return sb.toString();
+			return fc.digest(f, algorithm.algorithm);
 		} catch (NoSuchAlgorithmException e) {
 			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			if (fis!=null)
-				try {
-					fis.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
 		}
 		return null;    	
     }
@@ -148,9 +151,7 @@ public class NameChecksum extends DefaultFileTest {
 				"You may select from a number of standard checksum algorithms.";
 	}
     public void progress(int count) {
-    	if (count % 5000 == 0) {
-    		cleanup(count);
-    	} else if (count % 100 == 0){
+    	if (count % 100 == 0){
     		showCount(count);
     	}
     }
@@ -1,6 +1,7 @@
 package gov.nara.nwts.ftapp.gui;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 import java.util.Vector;
 
@@ -53,6 +54,10 @@ class GuiFileTraversal extends FileTraversal {
 
 	
 	public void checkFile(File thefile, FileTest fileTest) {
+		checkFile(thefile, null, fileTest);
+	}
+
+	public void checkFile(File thefile, BasicFileAttributes attrs, FileTest fileTest) {
 		Vector<Object> v = new Vector<Object>();
 		String s = thefile.getParent();
 		int len = gftSW.dt.root.getPath().length();
@@ -63,13 +68,13 @@ class GuiFileTraversal extends FileTraversal {
 		v.add(fileTest.getExt(thefile));
 		if (fileTest.isTestable(thefile)){
 			Stats mystats = fileTest.getStats(thefile);
-			long size = thefile.length(); 
+			long size = (attrs == null) ? thefile.length() : attrs.size(); 
 			v.add(new Long(size));
-			v.add(new Date(thefile.lastModified()));
+			v.add(new Date((attrs == null) ? thefile.lastModified() : attrs.lastModifiedTime().toMillis()));
 			Object o = null;
 			if (mystats!=null){
 				try {
-					o = mystats.compute(thefile, fileTest);
+					o = (attrs == null) ? mystats.compute(thefile, fileTest) : mystats.compute(thefile, attrs, fileTest);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
@@ -66,9 +66,9 @@ class StatsTable {
 			String s = i.next();
 			Vector<Object> v = new Vector<Object>();
 			v.add(s);
-			for (Iterator<Object> j = mystats.get(s).getVals().iterator(); j
-					.hasNext();) {
-				v.add(j.next());
+			Stats stats = mystats.get(s);
+			for (int j = 0; j < stats.getValCount(); j++) {
+				v.add(stats.getValAt(j));
 			}
 			tm.addRow(v);
 		}
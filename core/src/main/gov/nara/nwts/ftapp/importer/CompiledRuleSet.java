@@ -0,0 +1,279 @@
+package gov.nara.nwts.ftapp.importer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ordered list of regular expressions matched against whole lines, the first matching expression winning.
+ * <p>
+ * A literal that every match must contain is extracted from each expression where one can be found with certainty.
+ * All of the literals are found in a line with a single Aho-Corasick scan, and an expression is only run when its literal is present,
+ * so a line is tested against the few expressions that could match it rather than all of them.
+ * Expressions without a usable literal are always run.
+ * <p>
+ * The rule set is not modified once built and may be shared by several threads.
+ * @author TBrady
+ *
+ */
+public class CompiledRuleSet {
+	Pattern[] patterns;
+	//index of the literal required by each pattern, -1 if the pattern is always run
+	int[] required;
+	boolean ignoreCase;
+
+	//Aho-Corasick automaton: transitions, failure links and the literals ending at each state
+	List<HashMap<Character,Integer>> next = new ArrayList<HashMap<Character,Integer>>();
+	int[] fail;
+	int[][] out;
+
+	public CompiledRuleSet(List<Pattern> list) {
+		patterns = list.toArray(new Pattern[list.size()]);
+		required = new int[patterns.length];
+		ignoreCase = false;
+		for(Pattern p: patterns) {
+			if ((p.flags() & Pattern.CASE_INSENSITIVE) != 0) ignoreCase = true;
+		}
+		List<String> literals = new ArrayList<String>();
+		HashMap<String,Integer> litIndex = new HashMap<String,Integer>();
+		for(int i=0; i<patterns.length; i++) {
+			String lit = requiredLiteral(patterns[i]);
+			if (lit == null) {
+				required[i] = -1;
+				continue;
+			}
+			if (ignoreCase) lit = foldCase(lit);
+			Integer li = litIndex.get(lit);
+			if (li == null) {
+				li = literals.size();
+				litIndex.put(lit, li);
+				literals.add(lit);
+			}
+			required[i] = li;
+		}
+		build(literals);
+	}
+
+	public int size() {
+		return patterns.length;
+	}
+
+	public Pattern getPattern(int i) {
+		return patterns[i];
+	}
+
+	/**
+	 * @return true if the pattern is only run on lines containing a literal extracted from it
+	 */
+	public boolean isFiltered(int i) {
+		return required[i] >= 0;
+	}
+
+	/**
+	 * Find the first pattern matching the whole of a line.
+	 * @return the matcher of the first matching pattern, or null if no pattern matches
+	 */
+	public Matcher match(String line) {
+		BitSet found = scan(line);
+		for(int i=0; i<patterns.length; i++) {
+			if (required[i] >= 0 && !found.get(required[i])) continue;
+			Matcher m = patterns[i].matcher(line);
+			if (m.matches()) return m;
+		}
+		return null;
+	}
+
+	/**
+	 * Patterns compiled as case insensitive without unicode case only fold US-ASCII letters.
+	 */
+	static char foldCase(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+	}
+
+	static String foldCase(String s) {
+		char[] c = s.toCharArray();
+		for(int i=0; i<c.length; i++) {
+			c[i] = foldCase(c[i]);
+		}
+		return new String(c);
+	}
+
+	void build(List<String> literals) {
+		next.add(new HashMap<Character,Integer>());
+		List<List<Integer>> ends = new ArrayList<List<Integer>>();
+		ends.add(new ArrayList<Integer>());
+		for(int li=0; li<literals.size(); li++) {
+			int state = 0;
+			for(char c: literals.get(li).toCharArray()) {
+				Integer ns = next.get(state).get(c);
+				if (ns == null) {
+					ns = next.size();
+					next.add(new HashMap<Character,Integer>());
+					ends.add(new ArrayList<Integer>());
+					next.get(state).put(c, ns);
+				}
+				state = ns;
+			}
+			ends.get(state).add(li);
+		}
+		fail = new int[next.size()];
+		//breadth first so that the failure link of a state is complete before its children are visited
+		ArrayList<Integer> queue = new ArrayList<Integer>(next.get(0).values());
+		for(int qi=0; qi<queue.size(); qi++) {
+			int state = queue.get(qi);
+			for(Character c: next.get(state).keySet()) {
+				int child = next.get(state).get(c);
+				int f = fail[state];
+				while(f != 0 && !next.get(f).containsKey(c)) f = fail[f];
+				Integer fs = next.get(f).get(c);
+				fail[child] = (fs == null || fs == child) ? 0 : fs;
+				ends.get(child).addAll(ends.get(fail[child]));
+				queue.add(child);
+			}
+		}
+		out = new int[next.size()][];
+		for(int s=0; s<out.length; s++) {
+			List<Integer> e = ends.get(s);
+			out[s] = new int[e.size()];
+			for(int i=0; i<e.size(); i++) {
+				out[s][i] = e.get(i);
+			}
+		}
+	}
+
+	/**
+	 * @return the literals found in a line
+	 */
+	BitSet scan(String line) {
+		BitSet found = new BitSet();
+		if (out.length == 1) return found;
+		int state = 0;
+		for(int i=0; i<line.length(); i++) {
+			char c = line.charAt(i);
+			if (ignoreCase) c = foldCase(c);
+			Integer ns = next.get(state).get(c);
+			while(ns == null && state != 0) {
+				state = fail[state];
+				ns = next.get(state).get(c);
+			}
+			state = (ns == null) ? 0 : ns;
+			for(int li: out[state]) {
+				found.set(li);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the longest run of literal characters that any match of a pattern must contain.
+	 * Only characters outside of groups and character classes are considered; a pattern with an alternative
+	 * at the top level, embedded flags or a quoted section has no required literal.
+	 * @return the literal or null if none was found
+	 */
+	static String requiredLiteral(Pattern p) {
+		if ((p.flags() & (Pattern.LITERAL | Pattern.COMMENTS | Pattern.UNICODE_CASE | Pattern.CANON_EQ)) != 0) return null;
+		String s = p.pattern();
+		if (s.contains("\\Q")) return null;
+		String best = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		int i = 0;
+		while(i < s.length()) {
+			char c = s.charAt(i);
+			//a literal character that may be repeated or omitted by a following quantifier
+			int lit = -1;
+			int len = 1;
+			if (c == '\\') {
+				if (i + 1 >= s.length()) return null;
+				char e = s.charAt(i + 1);
+				len = 2;
+				if (e == 't') lit = '\t';
+				else if (e == 'n') lit = '\n';
+				else if (e == 'r') lit = '\r';
+				else if (e == 'f') lit = '\f';
+				else if (e == 'e') lit = '\u001B';
+				else if (e == 'a') lit = '\u0007';
+				else if (!Character.isLetterOrDigit(e)) lit = e;
+				else if (e == 'x' || e == 'u' || e == '0' || e == 'c' || e == 'p' || e == 'P' || e == 'k' || e == 'N') {
+					//escapes with arguments are not interpreted
+					return null;
+				}
+			} else if (c == '[') {
+				i = skipClass(s, i);
+				if (i < 0) return null;
+				len = 0;
+			} else if (c == '(') {
+				if (s.startsWith("(?", i) && i + 2 < s.length() && "<=!>:".indexOf(s.charAt(i + 2)) < 0) {
+					//embedded flags
+					return null;
+				}
+				//the question mark of a special group is not a quantifier
+				if (s.startsWith("(?", i)) len = 2;
+				depth++;
+			} else if (c == ')') {
+				depth--;
+				if (depth < 0) return null;
+			} else if (c == '|') {
+				if (depth == 0) return null;
+			} else if ("^$.?*+{}".indexOf(c) < 0) {
+				lit = c;
+			}
+			i += len;
+			//a quantifier makes the preceding character optional or repeatable
+			boolean optional = false;
+			boolean quantified = false;
+			if (i < s.length()) {
+				char q = s.charAt(i);
+				if (q == '?' || q == '*') {
+					optional = quantified = true;
+					i++;
+				} else if (q == '+') {
+					quantified = true;
+					i++;
+				} else if (q == '{') {
+					int close = s.indexOf('}', i);
+					if (close < 0) return null;
+					optional = !s.substring(i + 1, close).matches("[1-9][0-9]*(,[0-9]*)?");
+					quantified = true;
+					i = close + 1;
+				}
+				if (quantified && i < s.length() && (s.charAt(i) == '?' || s.charAt(i) == '+')) i++;
+			}
+			if (lit >= 0 && depth == 0 && !optional) {
+				run.append((char)lit);
+			}
+			if (lit < 0 || depth > 0 || quantified) {
+				if (run.length() > best.length()) best = run.toString();
+				run.setLength(0);
+			}
+		}
+		if (run.length() > best.length()) best = run.toString();
+		return best.isEmpty() ? null : best;
+	}
+
+	/**
+	 * @return the position following a character class starting at a position, or -1 if the class is not closed
+	 */
+	static int skipClass(String s, int start) {
+		int i = start + 1;
+		if (i < s.length() && s.charAt(i) == '^') i++;
+		//a closing bracket at the start of a class is a literal
+		if (i < s.length() && s.charAt(i) == ']') i++;
+		for(; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(s, i);
+				if (i < 0) return -1;
+				i--;
+			} else if (c == ']') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+}
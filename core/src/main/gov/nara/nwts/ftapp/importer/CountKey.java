@@ -15,9 +15,9 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
-import java.util.Vector;
 
 public class CountKey extends DefaultImporter {
 	public static enum MULT {ONE, MANY;}
@@ -79,87 +79,139 @@ public class CountKey extends DefaultImporter {
 		Separator fileSeparator = (Separator)getProperty(DELIM);
 		Timer timer = new Timer();
 
-		TreeMap<String,Stats> types = new TreeMap<String,Stats>();
+		final TreeMap<String,Stats> types = new TreeMap<String,Stats>();
 		
-		DelimitedFileReader dfr = new DelimitedFileReader(selectedFile, fileSeparator.separator);
 		boolean firstRow = (YN)getProperty(HEADROW) == YN.Y;
         boolean dedup = (YN)getProperty(DEDUP) == YN.Y;
+        if (!dedup && MappedDelimitedFile.isLarge(selectedFile)) {
+            countMapped(selectedFile, fileSeparator.separator, firstRow, col, altcol, types);
+            return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
+        }
         DelimitedFileWriter bwDedup = null;
         DelimitedFileWriter bwDup = null;
-        if (dedup) {
-            bwDedup = new DelimitedFileWriter(getNewFile(selectedFile, "dedup"), fileSeparator.separator);
-            bwDup = new DelimitedFileWriter(getNewFile(selectedFile, "dup-drop"), fileSeparator.separator);
-        }
+        DelimitedFileWriter bwNoDup = null;
+        DelimitedFileWriter bwAllDup = null;
+        //key of each data row in file order, used to split the rows by final key count on a second read of the input
+        ArrayList<String> rowKeys = null;
+        boolean headRow = firstRow;
+        try {
+            if (dedup) {
+                bwDedup = new DelimitedFileWriter(getNewFile(selectedFile, "dedup"), fileSeparator.separator);
+                bwDup = new DelimitedFileWriter(getNewFile(selectedFile, "dup-drop"), fileSeparator.separator);
+                bwNoDup = new DelimitedFileWriter(getNewFile(selectedFile, "no-dup"), fileSeparator.separator);
+                bwAllDup = new DelimitedFileWriter(getNewFile(selectedFile, "all-dup"), fileSeparator.separator);
+                rowKeys = new ArrayList<String>();
+            }
 		
-		firstRow = (YN)getProperty(HEADROW) == YN.Y;
-		dfr = new DelimitedFileReader(selectedFile, fileSeparator.separator);
-		for(Vector<String> cols = dfr.getRow(); cols != null; cols = dfr.getRow()){
-			if (firstRow) {
-				firstRow = false;
-				if (dedup) {
-				    bwDedup.writeRow(cols);
-                    bwDup.writeRow(cols);
-				}
-				continue;
-			}
-			String key = cols.get(col < cols.size() ? col : 0);
-            String altkey = (altcol < 0 || altcol >= cols.size()) ? "" : cols.get(altcol);
-			Stats stats = types.get(key);
-            if (stats == null) {
-				stats = Generator.INSTANCE.create(key);
-				stats.setVal(CountStatsItems.Count, 1);
-				stats.setVal(CountStatsItems.Stat, MULT.ONE);
-				stats.setVal(CountStatsItems.AltKeysAll, altkey);
-                stats.setVal(CountStatsItems.AltKeysFirst, altkey);
-				types.put(key, stats);
-                if (dedup) {
-                    bwDedup.writeRow(cols);
-                }
-			} else {
-				stats.sumVal(CountStatsItems.Count, 1);
-				stats.setVal(CountStatsItems.Stat, MULT.MANY);
-                stats.appendVal(CountStatsItems.AltKeysAll, altkey, ", ");
-                stats.appendVal(CountStatsItems.AltKeysSubseq, altkey, ", ");
-                if (dedup) {
-                    bwDup.writeRow(cols);
-                }
-			}
-		}
-
-        if (dedup) {
-            bwDedup.close();
-            bwDup.close();
-
-            DelimitedFileWriter bwNoDup = new DelimitedFileWriter(getNewFile(selectedFile, "no-dup"), fileSeparator.separator);
-            DelimitedFileWriter bwAllDup = new DelimitedFileWriter(getNewFile(selectedFile, "all-dup"), fileSeparator.separator);
-            dfr = new DelimitedFileReader(selectedFile, fileSeparator.separator);
-            firstRow = (YN)getProperty(HEADROW) == YN.Y;
-            for(Vector<String> cols = dfr.getRow(); cols != null; cols = dfr.getRow()){
-                if (firstRow) {
-                    firstRow = false;
+            DelimitedFileReader dfr = new DelimitedFileReader(selectedFile, fileSeparator.separator);
+            DelimitedRow cols = new DelimitedRow();
+            try {
+                while(dfr.readRow(cols)){
+                    if (firstRow) {
+                        firstRow = false;
+                        if (dedup) {
+                            bwDedup.writeRow(cols);
+                            bwDup.writeRow(cols);
+                            bwNoDup.writeRow(cols);
+                            bwAllDup.writeRow(cols);
+                        }
+                        continue;
+                    }
+                    String key = cols.get(col < cols.size() ? col : 0);
+                    String altkey = (altcol < 0 || altcol >= cols.size()) ? "" : cols.get(altcol);
+                    Stats stats = count(types, key, altkey);
                     if (dedup) {
-                        bwNoDup.writeRow(cols);
-                        bwAllDup.writeRow(cols);
+                        if (stats.getIntVal(CountStatsItems.Count) == 1) {
+                            bwDedup.writeRow(cols);
+                        } else {
+                            bwDup.writeRow(cols);
+                        }
+                        rowKeys.add(stats.key);
                     }
-                    continue;
                 }
-                String key = cols.get(col < cols.size() ? col : 0);
-                Stats stats = types.get(key);
-                if (stats == null) {
-                } else if (stats.getVal(CountStatsItems.Stat) == MULT.ONE) {
-                    bwNoDup.writeRow(cols);
-                } else {
-                    bwAllDup.writeRow(cols);
+            } finally {
+                dfr.close();
+            }
+
+            if (dedup) {
+                dfr = new DelimitedFileReader(selectedFile, fileSeparator.separator);
+                try {
+                    int row = headRow ? -1 : 0;
+                    while(dfr.readRow(cols)){
+                        if (row >= 0) {
+                            if (types.get(rowKeys.get(row)).getVal(CountStatsItems.Stat) == MULT.ONE) {
+                                bwNoDup.writeRow(cols);
+                            } else {
+                                bwAllDup.writeRow(cols);
+                            }
+                        }
+                        row++;
+                    }
+                } finally {
+                    dfr.close();
                 }
             }
-            bwNoDup.close();
-            bwAllDup.close();
+        } finally {
+            if (bwDedup != null) bwDedup.close();
+            if (bwDup != null) bwDup.close();
+            if (bwNoDup != null) bwNoDup.close();
+            if (bwAllDup != null) bwAllDup.close();
         }
 
-
 		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
 	}
 	
+	/**
+	 * Count one occurrence of a key.
+	 * @return the stats for the key
+	 */
+	Stats count(TreeMap<String,Stats> types, String key, String altkey) {
+		Stats stats = types.get(key);
+		if (stats == null) {
+			stats = Generator.INSTANCE.create(key);
+			stats.setVal(CountStatsItems.Count, 1);
+			stats.setVal(CountStatsItems.Stat, MULT.ONE);
+			stats.setVal(CountStatsItems.AltKeysAll, altkey);
+			stats.setVal(CountStatsItems.AltKeysFirst, altkey);
+			types.put(key, stats);
+		} else {
+			stats.sumVal(CountStatsItems.Count, 1);
+			stats.setVal(CountStatsItems.Stat, MULT.MANY);
+			stats.appendVal(CountStatsItems.AltKeysAll, altkey, ", ");
+			stats.appendVal(CountStatsItems.AltKeysSubseq, altkey, ", ");
+		}
+		return stats;
+	}
+
+	/**
+	 * Count the keys of a large file.  Chunks of the file are parsed in parallel into key and alt key pairs that are counted in file order.
+	 */
+	void countMapped(File selectedFile, String sep, final boolean headRow, final int col, final int altcol, final TreeMap<String,Stats> types) throws IOException {
+		try(MappedDelimitedFile mdf = new MappedDelimitedFile(selectedFile, sep)) {
+			mdf.parse(new MappedDelimitedFile.ChunkParser<ArrayList<String>>(){
+				public ArrayList<String> parse(int chunk, DelimitedFileReader dfr) throws IOException {
+					ArrayList<String> keys = new ArrayList<String>();
+					DelimitedRow cols = new DelimitedRow();
+					boolean firstRow = headRow && chunk == 0;
+					while(dfr.readRow(cols)) {
+						if (firstRow) {
+							firstRow = false;
+							continue;
+						}
+						keys.add(cols.get(col < cols.size() ? col : 0));
+						keys.add((altcol < 0 || altcol >= cols.size()) ? "" : cols.get(altcol));
+					}
+					return keys;
+				}
+				public void merge(int chunk, ArrayList<String> keys) {
+					for(int i=0; i<keys.size(); i+=2) {
+						count(types, keys.get(i), keys.get(i+1));
+					}
+				}
+			});
+		}
+	}
+
 	public String toString() {
 		return "Count Key";
 	}
@@ -12,8 +12,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.TreeMap;
-import java.util.Vector;
 
 import gov.nara.nwts.ftapp.YN;
 
@@ -50,41 +50,47 @@ public class DelimitedFileImporter extends DefaultImporter {
 	        return new DelimitedFileReader(selectedFile, sep);
 	}
 
-	public ActionResult importFile(File selectedFile) throws IOException {
-		Separator fileSeparator = (Separator)getProperty(DELIM);
-		Timer timer = new Timer();
-		forceKey = dt.getImporterForceKey();
+	/**
+	 * Large files are parsed in parallel chunks unless a subclass supplies its own reader.
+	 */
+	public boolean useMappedFile(File selectedFile) {
+		if (!MappedDelimitedFile.isLarge(selectedFile)) return false;
+		try {
+			return getClass().getMethod("getDelimitedFileReader", File.class, String.class).getDeclaringClass() == DelimitedFileImporter.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
 
+	/**
+	 * Builds the imported result one row at a time, in file order.
+	 */
+	class Loader {
+		boolean headRow;
+		boolean firstRow = true;
 		int colcount = 0;
 		TreeMap<String,Stats> types = new TreeMap<String,Stats>();
 		StatsItemConfig details = new StatsItemConfig();
-		if (forceKey) {
-			details.addStatsItem(KEY, StatsItem.makeStringStatsItem("Auto Num").setExport(false));
-		}
-		
-		int colset = 0;
 
-		DelimitedFileReader dfr = getDelimitedFileReader(selectedFile, fileSeparator.separator);
-		boolean firstRow = (YN)getProperty(HEADROW) == YN.Y;
-		
-		for(Vector<String> cols = dfr.getRow(); cols != null; cols = dfr.getRow()){
-			colcount = Math.max(colcount,cols.size());
-			for(int i=colset; i<colcount; i++) {
-				String colkey = "Col"+(i+1);
-				details.addStatsItem(colkey, StatsItem.makeStringStatsItem(firstRow ?  cols.get(i) : colkey));
-				colset++;
-			}			
-			firstRow = false;
+		Loader(boolean headRow) {
+			this.headRow = headRow;
+			if (forceKey) {
+				details.addStatsItem(KEY, StatsItem.makeStringStatsItem("Auto Num").setExport(false));
+			}
 		}
 
-		firstRow = (YN)getProperty(HEADROW) == YN.Y;
-		dfr = getDelimitedFileReader(selectedFile, fileSeparator.separator);
-		for(Vector<String> cols = dfr.getRow(); cols != null; cols = dfr.getRow()){
+		void add(String[] cols) {
+			//columns are added as wider rows are found, rows created before a column was added are extended at the end
+			for(int i=colcount; i<cols.length; i++) {
+				String colkey = "Col"+(i+1);
+				details.addStatsItem(colkey, StatsItem.makeStringStatsItem((headRow && firstRow) ?  cols[i] : colkey));
+			}
+			colcount = Math.max(colcount,cols.length);
 			if (firstRow) {
 				firstRow = false;
-				continue;
+				if (headRow) return;
 			}
-			String key = cols.get(0);
+			String key = cols[0];
 			if (forceKey) {
 				key = "" + (rowKey++);
 			} 
@@ -92,17 +98,59 @@ public class DelimitedFileImporter extends DefaultImporter {
 			stats.init(details);
 			int start = 1;
 			if (forceKey) {
-				stats.setKeyVal(details.getByKey(KEY), cols.get(0));
+				stats.setKeyVal(details.getByKey(KEY), cols[0]);
 				start = 0;
 			}
-			for(int i=start; i<cols.size(); i++){
+			for(int i=start; i<cols.length; i++){
 				String colkey = "Col"+(i+1);
-				stats.setKeyVal(details.getByKey(colkey), cols.get(i));
+				stats.setKeyVal(details.getByKey(colkey), cols[i]);
 			}
 			types.put(key, stats);
 		}
+
+		void finish() {
+			for(Stats stats: types.values()) {
+				stats.extend(details);
+			}
+		}
+	}
+
+	public ActionResult importFile(File selectedFile) throws IOException {
+		Separator fileSeparator = (Separator)getProperty(DELIM);
+		Timer timer = new Timer();
+		forceKey = dt.getImporterForceKey();
+
+		final Loader loader = new Loader((YN)getProperty(HEADROW) == YN.Y);
+		
+		if (useMappedFile(selectedFile)) {
+			//rows are parsed in parallel but keys and columns are assigned in file order
+			try(MappedDelimitedFile mdf = new MappedDelimitedFile(selectedFile, fileSeparator.separator)) {
+				mdf.parse(new MappedDelimitedFile.ChunkParser<ArrayList<String[]>>(){
+					public ArrayList<String[]> parse(int chunk, DelimitedFileReader dfr) throws IOException {
+						ArrayList<String[]> rows = new ArrayList<String[]>();
+						DelimitedRow cols = new DelimitedRow();
+						while(dfr.readRow(cols)) {
+							rows.add(cols.toArray());
+						}
+						return rows;
+					}
+					public void merge(int chunk, ArrayList<String[]> rows) {
+						for(String[] cols: rows) {
+							loader.add(cols);
+						}
+					}
+				});
+			}
+		} else {
+			DelimitedFileReader dfr = getDelimitedFileReader(selectedFile, fileSeparator.separator);
+			DelimitedRow cols = new DelimitedRow();
+			while(dfr.readRow(cols)){
+				loader.add(cols.toArray());
+			}
+		}
+		loader.finish();
 		
-		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
+		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), loader.details, loader.types, true, timer.getDuration());
 	}
 	
 	public boolean allowForceKey() {
@@ -1,86 +1,244 @@
 package gov.nara.nwts.ftapp.importer;
 
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
  * Abstract class handling the import of a character-delimited text file allowing for individual values to be wrapped by quotation marks.
+ * <p>
+ * Each line is read into a reusable character buffer and split into fields with a single scan; field values are only created when requested.
+ * A quoted value that is not closed on its line continues onto the following line.
+ * Callers that do not retain rows may read into a single {@link DelimitedRow} with {@link #readRow(DelimitedRow)}.
  * @author TBrady
  *
  */
-public class DelimitedFileReader {
-	BufferedReader br;
+public class DelimitedFileReader implements Closeable {
+	Reader in;
 	String sep;
-	String pline;
+	char[] sepchars;
+	boolean trim;
+	boolean prepare;
+	char[] cbuf = new char[64 * 1024];
+	int cpos = 0;
+	int clen = 0;
+	boolean skipLF = false;
+	boolean closed = false;
+	DelimitedRow row = new DelimitedRow();
+	//length of the current line within the row buffer
+	int llen;
+
 	public DelimitedFileReader(File f, String sep) throws FileNotFoundException, UnsupportedEncodingException {
-		br = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
-		this.sep = sep;
+		this(new FileInputStream(f), sep);
 	}
 
 	public DelimitedFileReader(InputStream is, String sep) throws FileNotFoundException, UnsupportedEncodingException {
-		br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		in = new InputStreamReader(is, "UTF-8");
 		this.sep = sep;
+		sepchars = sep.toCharArray();
+		trim = !sep.trim().equals("");
+		try {
+			prepare = getClass().getMethod("prepareRow", String.class).getDeclaringClass() != DelimitedFileReader.class;
+		} catch (NoSuchMethodException e) {
+			prepare = false;
+		}
 	}
 
 	public String prepareRow(String s) {
 	        return s;
 	}
-	
+
+	/**
+	 * Read the next row as a new vector of values.
+	 * @return null at the end of the file
+	 */
 	public Vector<String> getRow() throws IOException {
-		pline = br.readLine();
-		if (pline == null) {
-			br.close();
-			return null;
+		if (!readRow(row)) return null;
+		return row.toVector();
+	}
+
+	/**
+	 * Read the next row into a row object, replacing its previous contents.
+	 * @return false at the end of the file
+	 */
+	public boolean readRow(DelimitedRow dr) throws IOException {
+		dr.clear();
+		llen = 0;
+		if (!appendLine(dr)) {
+			close();
+			return false;
+		}
+		if (prepare) {
+			String s = prepareRow(new String(dr.chars, 0, llen));
+			llen = 0;
+			append(dr, s.toCharArray(), 0, s.length());
+		}
+		split(dr);
+		return true;
+	}
+
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		in.close();
+	}
+
+	void append(DelimitedRow dr, char[] src, int start, int len) {
+		if (llen + len > dr.chars.length) {
+			dr.chars = Arrays.copyOf(dr.chars, Math.max(dr.chars.length * 2, llen + len));
+		}
+		System.arraycopy(src, start, dr.chars, llen, len);
+		llen += len;
+	}
+
+	/**
+	 * Append the next line of the file (without its line terminator) to the row buffer.
+	 * Lines end with a line feed, a carriage return or a carriage return followed by a line feed.
+	 * @return false if the end of the file has been reached
+	 */
+	boolean appendLine(DelimitedRow dr) throws IOException {
+		if (closed) return false;
+		boolean found = false;
+		for(;;) {
+			if (cpos >= clen) {
+				clen = in.read(cbuf);
+				cpos = 0;
+				if (clen <= 0) {
+					clen = 0;
+					return found;
+				}
+			}
+			if (skipLF) {
+				skipLF = false;
+				if (cbuf[cpos] == '\n') {
+					cpos++;
+					continue;
+				}
+			}
+			found = true;
+			int start = cpos;
+			char c = 0;
+			for(; cpos < clen; cpos++) {
+				c = cbuf[cpos];
+				if (c == '\n' || c == '\r') break;
+			}
+			append(dr, cbuf, start, cpos - start);
+			if (cpos < clen) {
+				cpos++;
+				skipLF = (c == '\r');
+				return true;
+			}
 		}
-		pline = prepareRow(pline);
-		if (!sep.trim().equals("")) pline = pline.trim();
-		Vector<String> cols = new Vector<String>();
-		while(pline!=null){
-			if (!sep.trim().equals("")) pline = pline.trim();
-			String tpline = getNextString(pline);
-			cols.add(normalize(tpline));
-			if (pline.length() == tpline.length()) break;
-			pline = pline.substring(tpline.length()+sep.length());
+	}
+
+	int trimEnd(char[] chars) {
+		int end = llen;
+		if (trim) {
+			while(end > 0 && chars[end - 1] <= ' ') end--;
+		}
+		return end;
+	}
+
+	int indexOfSep(char[] chars, int from, int end) {
+		int last = end - sepchars.length;
+		char first = sepchars[0];
+		for(int i=from; i<=last; i++) {
+			if (chars[i] != first) continue;
+			int j = 1;
+			while(j < sepchars.length && chars[i + j] == sepchars[j]) j++;
+			if (j == sepchars.length) return i;
 		}
-		return cols;
-	}
-	
-	protected String getNextString(String in) throws IOException {
-		return getNextString(in,0);
-	}
-	protected String getNextString(String in, int start) throws IOException {
-		int pos = -1;
-		if (in.startsWith("\"")) {
-			int qpos = in.indexOf("\"", (start==0) ? 1 : start);
-			int qqpos = in.indexOf("\"\"", (start==0) ? 1 : start);
-			if ((qpos==qqpos)&&(qqpos >= 0)) {
-				return getNextString(in,qqpos+2);
+		return -1;
+	}
+
+	/**
+	 * Split the line held in the row buffer into fields.
+	 * When the separator is not white space, white space is ignored at the start and end of each field.
+	 * A field starting with a quotation mark extends to the next unescaped quotation mark (reading further lines if needed), then to the next separator.
+	 */
+	void split(DelimitedRow dr) throws IOException {
+		if (sepchars.length == 0) {
+			addField(dr, 0, trimEnd(dr.chars));
+			return;
+		}
+		int p = 0;
+		for(;;) {
+			char[] chars = dr.chars;
+			int end = trimEnd(chars);
+			if (trim) {
+				while(p < end && chars[p] <= ' ') p++;
+				//the rest of a continued line may be white space
+				if (p > end) p = end;
 			}
-			if (qpos == in.length()) {
-				return in;
+			int start = p;
+			int from = start;
+			if (p < end && chars[p] == '"') {
+				int close;
+				boolean continued = false;
+				from = p + 1;
+				for(;;) {
+					close = -1;
+					for(int i=from; i<end; i++) {
+						if (chars[i] == '"') {
+							close = i;
+							break;
+						}
+					}
+					if (close >= 0 && close + 1 < end && chars[close + 1] == '"') {
+						from = close + 2;
+						continue;
+					}
+					if (close >= 0) break;
+					//the quoted value continues on the next line; trailing white space is only dropped from the first line of the value
+					if (!continued) llen = end;
+					continued = true;
+					if (!appendLine(dr)) {
+						addField(dr, start, end);
+						return;
+					}
+					chars = dr.chars;
+					end = llen;
+				}
+				from = close + 1;
 			}
-			if (qpos == -1) {
-				String s = br.readLine();
-				if (s == null) return pline;
-				pline += s;
-				return getNextString(pline, start);
+			int pos = indexOfSep(chars, from, end);
+			if (pos < 0) {
+				addField(dr, start, end);
+				return;
 			}
-			pos = in.indexOf(sep,qpos+1);
-		} else {
-			pos = in.indexOf(sep, 0);
+			addField(dr, start, pos);
+			p = pos + sepchars.length;
 		}
-		if (pos == -1) return in;
-		return in.substring(0,pos);
 	}
-	
+
+	/**
+	 * Record a field, applying the same rules as {@link #normalize(String)}.
+	 */
+	void addField(DelimitedRow dr, int start, int end) {
+		char[] chars = dr.chars;
+		while(start < end && chars[start] <= ' ') start++;
+		while(end > start && chars[end - 1] <= ' ') end--;
+		if (start < end && (chars[start] == '"' || chars[start] == '\'')) start++;
+		if (start < end && (chars[end - 1] == '"' || chars[end - 1] == '\'')) end--;
+		boolean escaped = false;
+		for(int i=start; i<end - 1; i++) {
+			if (chars[i] == '"' && chars[i + 1] == '"') {
+				escaped = true;
+				break;
+			}
+		}
+		dr.add(start, end, escaped);
+	}
+
 	public static Vector<Vector<String>> parseFile(File f, String sep) throws IOException{
 		return parseFile(f,sep,false);
 	}
@@ -92,11 +250,11 @@ public class DelimitedFileReader {
 		if (hrow != null) {
 			for(Vector<String> row = dfr.getRow(); row!=null; row = dfr.getRow()){
 				rows.add(row);
-			}			
+			}
 		}
 		return rows;
 	}
-	
+
 	public static Vector<Vector<String>> parseStream(InputStream is, String sep, boolean skipFirstLine) throws IOException{
 		DelimitedFileReader dfr = new DelimitedFileReader(is, sep);
 		Vector<Vector<String>> rows = new Vector<Vector<String>>();
@@ -105,26 +263,28 @@ public class DelimitedFileReader {
 		if (hrow != null) {
 			for(Vector<String> row = dfr.getRow(); row!=null; row = dfr.getRow()){
 				rows.add(row);
-			}			
+			}
 		}
 		return rows;
 	}
-	
+
+	/**
+	 * Trim a value, remove one enclosing quotation mark or apostrophe from each end and collapse escaped quotation marks.
+	 */
 	protected static String normalize(String val) {
 		val = val.trim();
-		if (val.startsWith("\"")) {
-			val = val.substring(1);
-		} else if (val.startsWith("'")) {
-			val = val.substring(1);
+		int start = 0;
+		int end = val.length();
+		if (start < end && (val.charAt(start) == '"' || val.charAt(start) == '\'')) start++;
+		if (start < end && (val.charAt(end - 1) == '"' || val.charAt(end - 1) == '\'')) end--;
+		if (val.indexOf("\"\"", start) < 0) return val.substring(start, end);
+		StringBuilder sb = new StringBuilder(end - start);
+		for(int p=start; p<end; p++) {
+			char c = val.charAt(p);
+			sb.append(c);
+			if (c == '"' && p + 1 < end && val.charAt(p + 1) == '"') p++;
 		}
-		if (val.endsWith("\"")) {
-			val = val.substring(0,val.length()-1);
-		} else if (val.endsWith("'")) {
-			val = val.substring(0,val.length()-1);
-		}
-		
-		val = val.replaceAll("\"\"", "\"");
-		return val;
+		return sb.toString();
 	}
-	
+
 }
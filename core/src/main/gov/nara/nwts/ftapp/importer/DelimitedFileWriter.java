@@ -66,6 +66,11 @@ public class DelimitedFileWriter {
 			writeField(s, i == row.size());
 		}
 	}
+	public void writeRow(DelimitedRow row) throws IOException {
+		for(int i=0; i<row.size(); i++) {
+			writeField(row.get(i), i == row.size() - 1);
+		}
+	}
 	public void writeData(Vector<Vector<String>> data) throws IOException {
 		for(Vector<String> row: data) writeRow(row);
 		bw.close();
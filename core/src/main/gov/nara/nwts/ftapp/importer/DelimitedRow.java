@@ -0,0 +1,98 @@
+package gov.nara.nwts.ftapp.importer;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * A row read by a {@link DelimitedFileReader} that may be reused from one row to the next.
+ * <p>
+ * Field boundaries are recorded as offsets into the characters of the row; a String is only created for a field when it is requested.
+ * The contents of a row are replaced by the next call to {@link DelimitedFileReader#readRow(DelimitedRow)}, so callers that retain rows should use {@link #toVector()} or {@link DelimitedFileReader#getRow()}.
+ * @author TBrady
+ *
+ */
+public class DelimitedRow {
+	char[] chars = new char[256];
+	int[] starts = new int[16];
+	int[] ends = new int[16];
+	//set when a field contains an escaped quotation mark ("") that is collapsed when the value is created
+	boolean[] escaped = new boolean[16];
+	String[] vals = new String[16];
+	int count;
+
+	void clear() {
+		for(int i=0; i<count; i++) {
+			vals[i] = null;
+		}
+		count = 0;
+	}
+
+	void add(int start, int end, boolean esc) {
+		if (count == starts.length) {
+			int len = count * 2;
+			starts = Arrays.copyOf(starts, len);
+			ends = Arrays.copyOf(ends, len);
+			escaped = Arrays.copyOf(escaped, len);
+			vals = Arrays.copyOf(vals, len);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		escaped[count] = esc;
+		count++;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the length of a field without creating its value
+	 */
+	public int length(int i) {
+		if (i < 0 || i >= count) throw new ArrayIndexOutOfBoundsException(i);
+		if (vals[i] != null) return vals[i].length();
+		if (!escaped[i]) return ends[i] - starts[i];
+		return get(i).length();
+	}
+
+	public String get(int i) {
+		if (i < 0 || i >= count) throw new ArrayIndexOutOfBoundsException(i);
+		String val = vals[i];
+		if (val != null) return val;
+		int start = starts[i];
+		int end = ends[i];
+		if (!escaped[i]) {
+			val = new String(chars, start, end - start);
+		} else {
+			StringBuilder sb = new StringBuilder(end - start);
+			for(int p=start; p<end; p++) {
+				char c = chars[p];
+				sb.append(c);
+				if (c == '"' && p + 1 < end && chars[p+1] == '"') p++;
+			}
+			val = sb.toString();
+		}
+		vals[i] = val;
+		return val;
+	}
+
+	public Vector<String> toVector() {
+		Vector<String> cols = new Vector<String>(Math.max(count, 1));
+		for(int i=0; i<count; i++) {
+			cols.add(get(i));
+		}
+		return cols;
+	}
+
+	public String[] toArray() {
+		String[] cols = new String[count];
+		for(int i=0; i<count; i++) {
+			cols[i] = get(i);
+		}
+		return cols;
+	}
+
+	public String toString() {
+		return toVector().toString();
+	}
+}
@@ -0,0 +1,322 @@
+package gov.nara.nwts.ftapp.importer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A delimited file mapped into memory so that it can be split into chunks of whole records and parsed in parallel.
+ * <p>
+ * Record boundaries are found with a scan of the raw bytes that follows the quoting rules of {@link DelimitedFileReader}:
+ * a line break inside a quoted value does not end a record.
+ * The file is divided into chunks at fixed offsets without reading it first.  Each chunk task starts at the first line break following its offset
+ * and reads whole records until it passes the offset of the next chunk.  Only a line break inside a quoted value can make a chunk start in the
+ * wrong place; the start of each chunk is checked against the end of the previous one when it is merged and a misplaced chunk is parsed again.
+ * Each chunk is parsed by its own {@link DelimitedFileReader}, so rows are identical to those of a sequential read.
+ * Chunks are parsed on the common fork-join pool and their results are merged on the calling thread in file order.
+ * <p>
+ * Java 8 has no public method to unmap a file; {@link #close()} drops the mapped buffers so that the mapping is released when they are garbage collected.
+ * <p>
+ * The separator and quotation marks are ASCII, so the scan is safe for UTF-8 content.
+ * @author TBrady
+ *
+ */
+public class MappedDelimitedFile implements Closeable {
+	/** files smaller than this are read sequentially by callers */
+	public static final long PARALLEL_THRESHOLD = 32L * 1024 * 1024;
+	public static final long CHUNK_SIZE = 8L * 1024 * 1024;
+	static final int SEGMENT_BITS = 30;
+	static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	static final int SEGMENT_MASK = (int)(SEGMENT_SIZE - 1);
+
+	/**
+	 * Parses the rows of one chunk on a pool thread and merges the result of each chunk, in file order, on the calling thread.
+	 */
+	public static abstract class ChunkParser<T> {
+		/**
+		 * @param chunk the number of the chunk, starting at 0 for the chunk holding the first row of the file
+		 */
+		public abstract T parse(int chunk, DelimitedFileReader dfr) throws IOException;
+		public abstract void merge(int chunk, T result) throws IOException;
+	}
+
+	File file;
+	String sep;
+	byte[] sepbytes;
+	boolean trim;
+	long length;
+	MappedByteBuffer[] segments;
+
+	public MappedDelimitedFile(File file, String sep) throws IOException {
+		this.file = file;
+		this.sep = sep;
+		sepbytes = sep.getBytes(StandardCharsets.UTF_8);
+		trim = !sep.trim().equals("");
+		try(FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			length = ch.size();
+			segments = new MappedByteBuffer[(int)((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+			for(int i=0; i<segments.length; i++) {
+				long start = (long)i << SEGMENT_BITS;
+				segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+			}
+		}
+	}
+
+	/**
+	 * @return true if a file is large enough to benefit from parallel parsing
+	 */
+	public static boolean isLarge(File f) {
+		return f.length() >= PARALLEL_THRESHOLD;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Drop the mapped buffers.  The file may not be read once it is closed.
+	 */
+	@Override public void close() {
+		segments = null;
+	}
+
+	int get(long pos) {
+		return segments[(int)(pos >>> SEGMENT_BITS)].get((int)pos & SEGMENT_MASK) & 0xFF;
+	}
+
+	boolean isSep(long pos) {
+		if (pos + sepbytes.length > length) return false;
+		for(int i=0; i<sepbytes.length; i++) {
+			if (get(pos + i) != (sepbytes[i] & 0xFF)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Find the end of the record starting at a position.
+	 * @return the position following the line break that ends the record, or the length of the file
+	 */
+	public long nextRecord(long pos) {
+		boolean fieldStart = true;
+		while(pos < length) {
+			if (fieldStart) {
+				fieldStart = false;
+				if (trim) {
+					while(pos < length) {
+						int b = get(pos);
+						if (b > ' ' || b == '\n' || b == '\r') break;
+						pos++;
+					}
+					if (pos >= length) return length;
+				}
+				if (get(pos) == '"') {
+					//a quoted value ends at a quotation mark that is not followed by another
+					for(pos++; ; pos++) {
+						if (pos >= length) return length;
+						if (get(pos) != '"') continue;
+						if (pos + 1 < length && get(pos + 1) == '"') {
+							pos++;
+							continue;
+						}
+						pos++;
+						break;
+					}
+					continue;
+				}
+			}
+			if (sepbytes.length > 0 && isSep(pos)) {
+				pos += sepbytes.length;
+				fieldStart = true;
+				continue;
+			}
+			int b = get(pos);
+			if (b == '\n') return pos + 1;
+			if (b == '\r') return (pos + 1 < length && get(pos + 1) == '\n') ? pos + 2 : pos + 1;
+			pos++;
+		}
+		return length;
+	}
+
+	/**
+	 * Find the first line break ending at or after a position, assuming that the position is not inside a quoted value.
+	 * When that holds, the result is the first record boundary at or after the position.
+	 * @return the position following the line break, or the length of the file
+	 */
+	public long resync(long pos) {
+		for(long p = Math.max(0, pos - 1); p < length; p++) {
+			int b = get(p);
+			if (b == '\n') return p + 1;
+			if (b == '\r') return (p + 1 < length && get(p + 1) == '\n') ? p + 2 : p + 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Split part of the file into ranges holding a fixed number of records.
+	 * @return start position, end position and record count of each range
+	 */
+	public List<long[]> splitRecords(long start, int records) {
+		ArrayList<long[]> batches = new ArrayList<long[]>();
+		while(start < length) {
+			long end = start;
+			int count = 0;
+			for(; count < records && end < length; count++) {
+				end = nextRecord(end);
+			}
+			batches.add(new long[]{start, end, count});
+			start = end;
+		}
+		return batches;
+	}
+
+	/**
+	 * @return a stream of the bytes of part of the file
+	 */
+	public InputStream open(final long start, final long end) {
+		return new InputStream() {
+			long pos = start;
+			public int read() {
+				if (pos >= end) return -1;
+				return get(pos++);
+			}
+			public int read(byte[] b, int off, int len) {
+				if (len == 0) return 0;
+				if (pos >= end) return -1;
+				ByteBuffer seg = segments[(int)(pos >>> SEGMENT_BITS)].duplicate();
+				int segpos = (int)pos & SEGMENT_MASK;
+				int n = (int)Math.min(Math.min(len, end - pos), seg.limit() - segpos);
+				((Buffer)seg).position(segpos);
+				seg.get(b, off, n);
+				pos += n;
+				return n;
+			}
+		};
+	}
+
+	public DelimitedFileReader getReader(long start, long end) throws IOException {
+		return new DelimitedFileReader(open(start, end), sep);
+	}
+
+	/**
+	 * Copy part of the file, ending every line with a line feed.
+	 */
+	public void copyLines(long start, long end, OutputStream os) throws IOException {
+		byte[] buf = new byte[64 * 1024];
+		int n = 0;
+		int last = '\n';
+		for(long pos = start; pos < end; pos++) {
+			int b = get(pos);
+			if (b == '\r') {
+				if (pos + 1 < end && get(pos + 1) == '\n') pos++;
+				b = '\n';
+			}
+			buf[n++] = (byte)b;
+			last = b;
+			if (n == buf.length) {
+				os.write(buf, 0, n);
+				n = 0;
+			}
+		}
+		if (last != '\n') buf[n++] = '\n';
+		os.write(buf, 0, n);
+	}
+
+	static void await(ForkJoinTask<?> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Parsing interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Parses the whole records from a start position up to the first record boundary at or after a limit.
+	 */
+	class ChunkTask<T> implements Callable<T> {
+		ChunkParser<T> parser;
+		int chunk;
+		long start;
+		long limit;
+		long end;
+		ForkJoinTask<T> future;
+
+		ChunkTask(ChunkParser<T> parser, int chunk, long start, long limit) {
+			this.parser = parser;
+			this.chunk = chunk;
+			this.start = start;
+			this.limit = limit;
+		}
+
+		public T call() throws IOException {
+			end = start;
+			while(end < limit) {
+				end = nextRecord(end);
+			}
+			return parser.parse(chunk, getReader(start, end));
+		}
+	}
+
+	/**
+	 * Parse the file in chunks.  A limited number of chunks are parsed ahead of the chunk being merged so that memory use is bounded.
+	 */
+	public <T> void parse(final ChunkParser<T> parser) throws IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int ahead = Math.max(2, pool.getParallelism() * 2);
+		int chunks = (int)((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		ArrayDeque<ChunkTask<T>> pending = new ArrayDeque<ChunkTask<T>>();
+		int submitted = 0;
+		long expected = 0;
+		for(int merged = 0; merged < chunks; merged++) {
+			while(submitted < chunks && pending.size() < ahead) {
+				int chunk = submitted++;
+				long offset = chunk * CHUNK_SIZE;
+				ChunkTask<T> task = new ChunkTask<T>(parser, chunk, (chunk == 0) ? 0 : resync(offset), Math.min(length, offset + CHUNK_SIZE));
+				task.future = pool.submit(task);
+				pending.add(task);
+			}
+			ChunkTask<T> task = pending.poll();
+			try {
+				T result;
+				if (task.start == expected) {
+					await(task.future);
+					result = task.future.join();
+				} else {
+					//a line break inside a quoted value misled the resync, parse the chunk again from the end of the previous chunk
+					task.future.cancel(true);
+					task = new ChunkTask<T>(parser, task.chunk, expected, task.limit);
+					result = task.call();
+				}
+				expected = task.end;
+				parser.merge(merged, result);
+			} catch (IOException e) {
+				for(ChunkTask<T> t: pending) {
+					t.future.cancel(true);
+				}
+				throw e;
+			}
+		}
+	}
+}
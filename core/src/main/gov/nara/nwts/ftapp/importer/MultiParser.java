@@ -17,14 +17,24 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 /**
  * Base class parser to ananlyze and ingest individual rows from a file using a regular expression pattern.
+ * <p>
+ * The patterns of the rule file are compiled into a {@link CompiledRuleSet} so that each line is only tested against the patterns that could match it.
+ * Lines are matched in parallel batches; results are added in file order.
   * @author TBrady
  *
  */
@@ -48,6 +58,9 @@ public class MultiParser extends DefaultImporter {
 
 	public static final String F_PARSE = "Parser Rule File";
 	public static final String F_CASE = "Case Insensitive";
+	public static final int BATCH_SIZE = 1000;
+	//value recorded for a column that is not a group of the matching pattern
+	static final String NOGROUP = new String();
 	private ParserFile pParseRule;
 	
 	public MultiParser(FTDriver dt) {
@@ -80,6 +93,8 @@ public class MultiParser extends DefaultImporter {
 		String[] groups = new String[0];
 		String[] fgroups = new String[0];
 		Vector<ParserPattern> patterns = new Vector<ParserPattern>();
+		CompiledRuleSet rules;
+		IdentityHashMap<Pattern,ParserPattern> byPattern = new IdentityHashMap<Pattern,ParserPattern>();
 		Pattern pCat;
 		
 		ParserFile(FTDriver dt) {
@@ -139,8 +154,19 @@ public class MultiParser extends DefaultImporter {
 			} catch (PatternSyntaxException|IOException e) {
                 iStat.addMessage(e);
 			} 
+			compile();
 	        return iStat;
 		}
+
+		void compile() {
+			ArrayList<Pattern> list = new ArrayList<Pattern>();
+			byPattern.clear();
+			for(ParserPattern patt: patterns) {
+				list.add(patt.p);
+				byPattern.put(patt.p, patt);
+			}
+			rules = new CompiledRuleSet(list);
+		}
 	}
 	
 	
@@ -158,30 +184,64 @@ public class MultiParser extends DefaultImporter {
 
 		Timer timer = new Timer();
 		TreeMap<String,Stats> types = new TreeMap<String,Stats>();
+		if (pParseRule.rules == null) pParseRule.compile();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int ahead = Math.max(2, pool.getParallelism() * 2);
+		ArrayDeque<ForkJoinTask<LineBatch>> pending = new ArrayDeque<ForkJoinTask<LineBatch>>();
 		try {
 			BufferedReader br = new BufferedReader(new FileReader(selectedFile));
 			int i=1000000;
-			for(String line=br.readLine(); line!=null; line=br.readLine()){
-				String key = ""+ (i++);
-				Stats stats = Stats.Generator.INSTANCE.create(details, key);
-				stats.setVal(ParserStatsItems.PassFail, status.FAIL);
-				types.put(key, stats);
-				for(ParserPattern patt: pParseRule.patterns) {
-					Matcher m = patt.p.matcher(line);
-					if (m.matches()) {
+			boolean eof = false;
+			while(!eof || !pending.isEmpty()) {
+				//read ahead a limited number of batches while the oldest batch is matched
+				while(!eof && pending.size() < ahead) {
+					final LineBatch batch = new LineBatch();
+					for(String line=br.readLine(); line!=null; line=br.readLine()){
+						batch.lines.add(line);
+						if (batch.lines.size() == BATCH_SIZE) break;
+					}
+					if (batch.lines.size() < BATCH_SIZE) eof = true;
+					if (batch.lines.isEmpty()) break;
+					pending.add(pool.submit(new Callable<LineBatch>(){
+						public LineBatch call() {
+							batch.match(pParseRule);
+							return batch;
+						}
+					}));
+				}
+				ForkJoinTask<LineBatch> task = pending.poll();
+				if (task == null) break;
+				LineBatch batch;
+				try {
+					batch = task.get();
+				} catch (InterruptedException|ExecutionException e) {
+					for(ForkJoinTask<LineBatch> t: pending) {
+						t.cancel(true);
+					}
+					br.close();
+					throw new IOException(e);
+				}
+				for(int li=0; li<batch.lines.size(); li++) {
+					String key = ""+ (i++);
+					Stats stats = Stats.Generator.INSTANCE.create(details, key);
+					stats.setVal(ParserStatsItems.PassFail, status.FAIL);
+					types.put(key, stats);
+					ParserPattern patt = batch.matched[li];
+					if (patt != null) {
 						stats.setVal(ParserStatsItems.PassFail, patt.stat);
 						stats.setVal(ParserStatsItems.Label, patt.label);
-						for(String s: pParseRule.groups) {
+						String[] vals = batch.vals[li];
+						for(int gi=0; gi<vals.length; gi++) {
+							if (vals[gi] == NOGROUP) continue;
 							try {
-								StatsItem si = details.getByKey(s);
-								stats.setKeyVal(si, m.group(s));
+								StatsItem si = details.getByKey(pParseRule.groups[gi]);
+								stats.setKeyVal(si, vals[gi]);
 							} catch (Exception e) {
 							}
 						}
-						break;
 					}
+					stats.setVal(ParserStatsItems.Data, batch.lines.get(li));
 				}
-				stats.setVal(ParserStatsItems.Data, line);
 			}
 			br.close();
 			details.createFilters(types);
@@ -194,6 +254,34 @@ public class MultiParser extends DefaultImporter {
 		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, false, timer.getDuration());
 	}
 
+	/**
+	 * A batch of lines matched on a pool thread: the first matching pattern of each line and the values of its named groups.
+	 */
+	static class LineBatch {
+		ArrayList<String> lines = new ArrayList<String>(BATCH_SIZE);
+		ParserPattern[] matched;
+		String[][] vals;
+
+		void match(ParserFile rule) {
+			matched = new ParserPattern[lines.size()];
+			vals = new String[lines.size()][];
+			for(int li=0; li<lines.size(); li++) {
+				Matcher m = rule.rules.match(lines.get(li));
+				if (m == null) continue;
+				matched[li] = rule.byPattern.get(m.pattern());
+				String[] v = new String[rule.groups.length];
+				for(int gi=0; gi<v.length; gi++) {
+					try {
+						v[gi] = m.group(rule.groups[gi]);
+					} catch (Exception e) {
+						v[gi] = NOGROUP;
+					}
+				}
+				vals[li] = v;
+			}
+		}
+	}
+
 	public String toString() {
 		return "Multi Parser";
 	}
@@ -0,0 +1,79 @@
+package gov.nara.nwts.ftapp.stats;
+
+/**
+ * Storage plan for the value columns of a {@link StatsItemConfig}.
+ * Long, Integer, Float and enum columns are stored in a primitive long array within each {@link Stats} object;
+ * all other columns are stored in an object array.
+ * The key column (the first column of the config) is not part of the layout.
+ * @author TBrady
+ *
+ */
+class ColumnLayout {
+	static enum Kind {OBJECT, LONG, INT, FLOAT, ENUM;}
+
+	final int size;
+	final Kind[] kinds;
+	final int[] slots;
+	final Class<?>[] classes;
+	final Object[][] constants;
+	int numCount;
+	int objCount;
+
+	ColumnLayout(StatsItemConfig config) {
+		size = Math.max(config.size() - 1, 0);
+		kinds = new Kind[size];
+		slots = new int[size];
+		classes = new Class<?>[size];
+		constants = new Object[size][];
+		for(int i=0; i<size; i++) {
+			Class<?> c = config.get(i+1).myclass;
+			classes[i] = c;
+			if (c == Long.class) {
+				kinds[i] = Kind.LONG;
+			} else if (c == Integer.class) {
+				kinds[i] = Kind.INT;
+			} else if (c == Float.class) {
+				kinds[i] = Kind.FLOAT;
+			} else if ((c != null) && c.isEnum()) {
+				kinds[i] = Kind.ENUM;
+				constants[i] = c.getEnumConstants();
+			} else {
+				kinds[i] = Kind.OBJECT;
+			}
+			slots[i] = (kinds[i] == Kind.OBJECT) ? objCount++ : numCount++;
+		}
+	}
+
+	/**
+	 * Determine if a value can be held in the primitive slot of a column.
+	 */
+	boolean isNative(int index, Object val) {
+		switch(kinds[index]) {
+		case LONG: return val instanceof Long;
+		case INT: return val instanceof Integer;
+		case FLOAT: return val instanceof Float;
+		case ENUM: return classes[index].isInstance(val);
+		default: return false;
+		}
+	}
+
+	long encode(int index, Object val) {
+		switch(kinds[index]) {
+		case LONG: return (Long)val;
+		case INT: return (Integer)val;
+		case FLOAT: return Float.floatToRawIntBits((Float)val);
+		case ENUM: return ((Enum<?>)val).ordinal();
+		default: return 0;
+		}
+	}
+
+	Object decode(int index, long val) {
+		switch(kinds[index]) {
+		case LONG: return val;
+		case INT: return (int)val;
+		case FLOAT: return Float.intBitsToFloat((int)val);
+		case ENUM: return constants[index][(int)val];
+		default: return null;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package gov.nara.nwts.ftapp.stats;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import gov.nara.nwts.ftapp.filetest.FileTest;
 
@@ -34,4 +35,9 @@ public class CountStats extends Stats {
 		sumVal(CountStatsItems.Count, 1);
 		return fileTest.fileTest(f);
 	}
+
+	public Object compute(File f, BasicFileAttributes attrs, FileTest fileTest) {
+		sumVal(CountStatsItems.Count, 1);
+		return fileTest.fileTest(f, attrs);
+	}
 }
@@ -3,6 +3,7 @@ package gov.nara.nwts.ftapp.stats;
 import gov.nara.nwts.ftapp.filetest.FileTest;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Stats object showing file counts and file sizes.
@@ -37,5 +38,12 @@ public class FileCountStats extends Stats {
 		return ret;
 	}
 
+	public Object compute(File f, BasicFileAttributes attrs, FileTest fileTest) {
+		Object ret = fileTest.fileTest(f, attrs);
+		sumVal(FileCountStatsItems.Count, 1);
+		sumVal(FileCountStatsItems.Size, attrs.size());
+		return ret;
+	}
+
 
 }
@@ -3,6 +3,7 @@ package gov.nara.nwts.ftapp.stats;
 import gov.nara.nwts.ftapp.filetest.FileTest;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Stats object showing file name and file size.
@@ -34,4 +35,10 @@ public class NameStats extends Stats {
 		sumVal(NameStatsItems.Size, f.length());
 		return fileTest.fileTest(f);
 	}
+
+	public Object compute(File f, BasicFileAttributes attrs, FileTest fileTest) {
+		sumVal(NameStatsItems.Count, 1);
+		sumVal(NameStatsItems.Size, attrs.size());
+		return fileTest.fileTest(f, attrs);
+	}
 }
@@ -1,19 +1,23 @@
 package gov.nara.nwts.ftapp.stats;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Vector;
 
 import gov.nara.nwts.ftapp.filetest.FileTest;
 
 /**
  * Base class for Stats objects containing a key and a variable lenght list of values.
+ * Values are stored by column type as described by the {@link StatsItemConfig}:
+ * Long, Integer, Float and enum values are held as primitives, other values are held as objects.
+ * A value that does not match the type of its column (including null) is retained as an object so that it is returned unchanged.
  * @author TBrady
  *
  */
 public class Stats {
 	public static enum StatsItems implements StatsItemEnum {
 		Type(StatsItem.makeStringStatsItem("Type"));
-		
+
 		StatsItem si;
 		StatsItems(StatsItem si) {this.si=si;}
 		public StatsItem si() {return si;}
@@ -24,107 +28,208 @@ public class Stats {
 		public Stats create(StatsItemConfig config, String key) {return new Stats(config, key);}
 		public Stats create(String key) {return create(Stats.details, key);}
 	}
-	
+
 	//private to prevent use by subclass inner classes
 	private static StatsItemConfig details = StatsItemConfig.create(StatsItems.class);
-	
+
 	public static StatsItemConfig getDefaultStatsConfig() {
 		return details;
 	}
-	
+
+	//marks a primitive column holding a null value
+	private static final Object NULLVAL = new Object();
+
 	public StatsItem header;
-	private Vector<Object> vals;
+	private ColumnLayout layout;
+	private long[] nums;
+	private Object[] objs;
+	//lazily created overrides for primitive columns holding null or a value of another type
+	private Object[] boxed;
 	public String key;
-	
+
 	public Stats(StatsItemConfig config, String key) {
 		this.key = key;
-		vals = new Vector<Object>();
 		init(config);
 	}
 
-	public void setKeyVal(StatsItem si, Object val) {
+	private boolean hasIndex(int index) {
+		return (index >= 0) && (layout.size > index);
+	}
+
+	private Object get(int index) {
+		int slot = layout.slots[index];
+		if (layout.kinds[index] == ColumnLayout.Kind.OBJECT) {
+			Object obj = objs[slot];
+			if (obj instanceof StringBuilder) {
+				obj = obj.toString();
+				objs[slot] = obj;
+			}
+			return obj;
+		}
+		if ((boxed != null) && (boxed[slot] != null)) {
+			return (boxed[slot] == NULLVAL) ? null : boxed[slot];
+		}
+		return layout.decode(index, nums[slot]);
+	}
+
+	private void set(int index, Object val) {
+		int slot = layout.slots[index];
+		if (layout.kinds[index] == ColumnLayout.Kind.OBJECT) {
+			objs[slot] = val;
+		} else if (layout.isNative(index, val)) {
+			nums[slot] = layout.encode(index, val);
+			if (boxed != null) boxed[slot] = null;
+		} else {
+			if (boxed == null) boxed = new Object[nums.length];
+			boxed[slot] = (val == null) ? NULLVAL : val;
+		}
+	}
+
+	//true if the column holds a primitive value of its own type
+	private boolean isNative(int index, ColumnLayout.Kind kind) {
+		if (layout.kinds[index] != kind) return false;
+		return (boxed == null) || (boxed[layout.slots[index]] == null);
+	}
+
+	private boolean isNull(int index) {
+		if (layout.kinds[index] == ColumnLayout.Kind.OBJECT) {
+			return objs[layout.slots[index]] == null;
+		}
+		return get(index) == null;
+	}
+
+	private boolean isString(int index) {
+		if (layout.kinds[index] != ColumnLayout.Kind.OBJECT) {
+			return get(index) instanceof String;
+		}
+		Object obj = objs[layout.slots[index]];
+		return (obj instanceof String) || (obj instanceof StringBuilder);
+	}
+
+	private void append(int index, String s) {
+		if (layout.kinds[index] != ColumnLayout.Kind.OBJECT) {
+			set(index, get(index).toString() + s);
+			return;
+		}
+		int slot = layout.slots[index];
+		Object obj = objs[slot];
+		StringBuilder sb;
+		if (obj instanceof StringBuilder) {
+			sb = (StringBuilder)obj;
+		} else {
+			sb = new StringBuilder(obj.toString());
+			objs[slot] = sb;
+		}
+		sb.append(s);
+	}
+
+	public synchronized void setKeyVal(StatsItem si, Object val) {
 		if (si == null) return;
 		int index = si.getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			vals.set(index,val);
-		}		
+		if (hasIndex(index)) {
+			set(index,val);
+		}
 	}
-	
-	public Object getKeyVal(StatsItem si, Object val) {
+
+	public synchronized Object getKeyVal(StatsItem si, Object val) {
 		if (si == null) return val;
 		int index = si.getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			return vals.get(index);
-		}		
+		if (hasIndex(index)) {
+			return get(index);
+		}
 		return val;
 	}
-	public void setVal(StatsItemEnum eitem, Object val) {
+	public synchronized void setVal(StatsItemEnum eitem, Object val) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			vals.set(index,val);
+		if (hasIndex(index)) {
+			set(index,val);
 		}
 	}
-	 
-	public void sumVal(StatsItemEnum eitem, int val) {
+
+	public synchronized void sumVal(StatsItemEnum eitem, int val) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			Object obj = vals.get(index);
+		if (hasIndex(index)) {
+			int slot = layout.slots[index];
+			if (isNative(index, ColumnLayout.Kind.INT)) {
+				nums[slot] = (int)nums[slot] + val;
+				return;
+			} else if (isNative(index, ColumnLayout.Kind.LONG)) {
+				nums[slot] += val;
+				return;
+			} else if (isNative(index, ColumnLayout.Kind.FLOAT)) {
+				float n = Float.intBitsToFloat((int)nums[slot]);
+				n += val;
+				nums[slot] = Float.floatToRawIntBits(n);
+				return;
+			}
+			Object obj = get(index);
 			if (obj == null) {
-				vals.set(index,val);				
+				set(index,val);
 			} else if (obj instanceof Integer) {
 				int n = (Integer)obj;
 				n += val;
-				vals.set(index, n);
+				set(index, n);
 			} else if (obj instanceof Float) {
 				float n = (Float)obj;
 				n += val;
-				vals.set(index, n);
+				set(index, n);
 			} else if (obj instanceof Long) {
 				long n = (Long)obj;
 				n += val;
-				vals.set(index, n);
+				set(index, n);
             } else if (obj instanceof Money) {
-                vals.set(index, ((Money)obj).moneySum(val));
+                set(index, ((Money)obj).moneySum(val));
 			}
 		}
 	}
-	 
-	public void sumVal(StatsItemEnum eitem, float val) {
+
+	public synchronized void sumVal(StatsItemEnum eitem, float val) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			Object obj = vals.get(index);
+		if (hasIndex(index)) {
+			int slot = layout.slots[index];
+			if (isNative(index, ColumnLayout.Kind.FLOAT)) {
+				float n = Float.intBitsToFloat((int)nums[slot]);
+				n += val;
+				nums[slot] = Float.floatToRawIntBits(n);
+				return;
+			}
+			Object obj = get(index);
 			if (obj == null) {
-				vals.set(index,val);				
+				set(index,val);
 			} else if (obj instanceof Float) {
 				float n = (Float)obj;
 				n += val;
-				vals.set(index, n);
+				set(index, n);
 			}
 		}
 	}
-	 
-	public void sumVal(StatsItemEnum eitem, long val) {
+
+	public synchronized void sumVal(StatsItemEnum eitem, long val) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			Object obj = vals.get(index);
+		if (hasIndex(index)) {
+			if (isNative(index, ColumnLayout.Kind.LONG)) {
+				nums[layout.slots[index]] += val;
+				return;
+			}
+			Object obj = get(index);
 			if (obj == null) {
-				vals.set(index,val);				
+				set(index,val);
 			} else if (obj instanceof Long) {
 				long n = (Long)obj;
 				n += val;
-				vals.set(index, n);
+				set(index, n);
 			}
 		}
 	}
-	 
-    public void sumVal(StatsItemEnum eitem, Money m) {
+
+    public synchronized void sumVal(StatsItemEnum eitem, Money m) {
         int index = eitem.si().getIndex();
-        if ((index >= 0) && (vals.size() > index)) {
-            Object obj = vals.get(index);
+        if (hasIndex(index)) {
+            Object obj = get(index);
             if (obj == null) {
-                vals.set(index,m);                
+                set(index,m);
             } else if (obj instanceof Money) {
-                vals.set(index, ((Money)obj).moneySum(m));
+                set(index, ((Money)obj).moneySum(m));
             }
         }
     }
@@ -132,46 +237,69 @@ public class Stats {
     public void appendVal(StatsItemEnum eitem, String val) {
 		appendVal(eitem, val, "");
 	}
-	
-	public void appendVal(StatsItemEnum eitem, String val, String sep) {
+
+	public synchronized void appendVal(StatsItemEnum eitem, String val, String sep) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			Object obj = vals.get(index);
-			if (obj == null) {
-				vals.set(index,val);				
-			} else if (obj instanceof String) {
-				String s = (String)obj;
-				if (!s.isEmpty() && !val.isEmpty()) s += sep;
-				s += val;
-				vals.set(index, s);
+		if (hasIndex(index)) {
+			if (isNull(index)) {
+				set(index,val);
+			} else if (isString(index)) {
+				if (!isEmpty(index) && !val.isEmpty()) append(index, sep);
+				append(index, val);
 			}
 		}
 	}
 
-	public void appendKeyVal(StatsItem si, Object val) {
+	public synchronized void appendKeyVal(StatsItem si, Object val) {
 		if (si == null) return;
 		int index = si.getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			Object obj = vals.get(index);
-			if (obj == null) {
-				vals.set(index,val);				
-			} else if (obj instanceof String) {
-				String s = (String)obj;
-				s += val;
-				vals.set(index, s);
+		if (hasIndex(index)) {
+			if (isNull(index)) {
+				set(index,val);
+			} else if (isString(index)) {
+				append(index, String.valueOf(val));
 			}
 		}
 	}
 
-	
-	public Vector<Object> getVals() {
+	private boolean isEmpty(int index) {
+		if (layout.kinds[index] == ColumnLayout.Kind.OBJECT) {
+			Object obj = objs[layout.slots[index]];
+			if (obj instanceof StringBuilder) return ((StringBuilder)obj).length() == 0;
+		}
+		return get(index).toString().isEmpty();
+	}
+
+	/**
+	 * @return the number of values held by this object (the key is not counted)
+	 */
+	public int getValCount() {
+		return layout.size;
+	}
+
+	/**
+	 * Return a single value without copying the values held by this object.
+	 * @param index position of the value, 0 being the first column after the key
+	 */
+	public synchronized Object getValAt(int index) {
+		return hasIndex(index) ? get(index) : null;
+	}
+
+	/**
+	 * Return a copy of the values held by this object.
+	 */
+	public synchronized Vector<Object> getVals() {
+		Vector<Object> vals = new Vector<Object>(layout.size);
+		for(int i=0; i<layout.size; i++) {
+			vals.add(get(i));
+		}
 		return vals;
 	}
-	
+
 	public Object getVal(StatsItemEnum eitem) {
 		return getVal(eitem, null);
 	}
-	
+
 	public Long getLongVal(StatsItemEnum eitem) {
 		return (Long)getVal(eitem, null);
 	}
@@ -187,37 +315,64 @@ public class Stats {
 	public String getStringVal(StatsItemEnum eitem) {
 		return getStringVal(eitem, "");
 	}
-	public String getStringVal(StatsItemEnum eitem, String def) {
+	public synchronized String getStringVal(StatsItemEnum eitem, String def) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			if (vals.get(index) == null) return def;
-			return vals.get(index).toString();
+		if (hasIndex(index)) {
+			Object obj = get(index);
+			if (obj == null) return def;
+			return obj.toString();
 		}
 		return def;
 	}
 
-	public Object getVal(StatsItemEnum eitem, Object def) {
+	public synchronized Object getVal(StatsItemEnum eitem, Object def) {
 		int index = eitem.si().getIndex();
-		if ((index >= 0) && (vals.size() > index)) {
-			return vals.get(index);
+		if (hasIndex(index)) {
+			return get(index);
 		}
 		return def;
 	}
-	 
-	public void init(StatsItemConfig config) {
-		boolean first = true;
-		vals.clear();
-		for(StatsItem item: config) {
-			if (first) {
-				first = false;
-			} else {
-				vals.add(item.initVal);
-			}
+
+	public synchronized void init(StatsItemConfig config) {
+		layout = config.getLayout();
+		nums = new long[layout.numCount];
+		objs = new Object[layout.objCount];
+		boxed = null;
+		for(int i=0; i<layout.size; i++) {
+			set(i, config.get(i+1).initVal);
 		}
 	}
-	
+
+	/**
+	 * Adopt columns added to the config after this object was initialized.
+	 * Existing values are retained and the new columns receive their initial values.
+	 */
+	public synchronized void extend(StatsItemConfig config) {
+		ColumnLayout newLayout = config.getLayout();
+		if (newLayout == layout) return;
+		Object[] vals = new Object[layout.size];
+		for(int i=0; i<vals.length; i++) {
+			vals[i] = get(i);
+		}
+		layout = newLayout;
+		nums = new long[layout.numCount];
+		objs = new Object[layout.objCount];
+		boxed = null;
+		for(int i=0; i<layout.size; i++) {
+			set(i, (i < vals.length) ? vals[i] : config.get(i+1).initVal);
+		}
+	}
+
 	public Object compute(File f, FileTest fileTest) {
 		Object o = fileTest.fileTest(f);
 		return o;
 	}
+
+	/**
+	 * Compute statistics for a file whose attributes were read during the traversal.
+	 * Override to make use of the attributes; by default the attributes are ignored.
+	 */
+	public Object compute(File f, BasicFileAttributes attrs, FileTest fileTest) {
+		return compute(f, fileTest);
+	}
 }
@@ -3,12 +3,13 @@ package gov.nara.nwts.ftapp.stats;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.Map;
 import java.util.TreeSet;
 
 public class StatsItemConfig implements Iterable<StatsItem>  {
 	ArrayList<StatsItem> columns;
 	HashMap<Object, StatsItem> columnMap;
+	private ColumnLayout layout;
 	
 	public static <T extends Enum<T> & StatsItemEnum> StatsItemConfig create(Class<T> eclass){
 		return new StatsItemConfig(eclass);
@@ -26,10 +27,22 @@ public class StatsItemConfig implements Iterable<StatsItem>  {
 		columnMap = new HashMap<Object, StatsItem>();
 	}
 	
-	public void addStatsItem(Object key, StatsItem si) {
+	public synchronized void addStatsItem(Object key, StatsItem si) {
 		si.setIndex(columns.size()-1);
 		columns.add(si);
 		columnMap.put(key, si);
+		layout = null;
+	}
+	
+	/**
+	 * Storage plan shared by all Stats objects created from this config.
+	 * A new plan is created if columns are added after Stats objects have been created.
+	 */
+	synchronized ColumnLayout getLayout() {
+		if (layout == null || layout.size != Math.max(size() - 1, 0)) {
+			layout = new ColumnLayout(this);
+		}
+		return layout;
 	}
 	
 	public int size() {return columns.size();}
@@ -55,7 +68,7 @@ public class StatsItemConfig implements Iterable<StatsItem>  {
 		return columns.iterator();
 	}
 
-	public void createFilters(TreeMap<String,Stats> data) {
+	public void createFilters(Map<String,Stats> data) {
 		for(StatsItem si: columns) {
 			if (si.getFilter()) {
 				TreeSet<Object> vals = new TreeSet<Object>();
@@ -6,8 +6,6 @@ import gov.nara.nwts.ftapp.filter.ZipFilter;
 import java.io.File;
 import java.io.IOException;
 
-import org.apache.commons.io.FileUtils;
-
 import edu.georgetown.library.fileAnalyzer.util.AIPToAPTHelper;
 import edu.georgetown.library.fileAnalyzer.util.AIPZipToAPTHelper;
 
@@ -53,22 +51,9 @@ class AIPZipToAPT extends AIPToAPT {
 		filters.add(new ZipFilter());
 	}
 
-	private File outdir;
-
-	@Override public void cleanup(int count) {
-		if (outdir != null) {
-			try {
-                FileUtils.deleteDirectory(outdir);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-		}
-	}
-	
     @Override
     public AIPToAPTHelper getAIPToAPTHelper() throws IOException {
-        outdir = AIPZipToAPTHelper.createTempDir();
-        return new AIPZipToAPTHelper(outdir);
+        return new AIPZipToAPTHelper();
     }
 	
 }
@@ -1,6 +1,7 @@
 package edu.georgetown.library.fileAnalyzer.filetest;
 
 import edu.georgetown.library.fileAnalyzer.importer.ExcelReader;
+import gov.nara.nwts.ftapp.counter.CounterData;
 import gov.nara.nwts.ftapp.counter.CounterStat;
 import gov.nara.nwts.ftapp.FTDriver;
 import gov.nara.nwts.ftapp.filetest.CounterValidation;
@@ -8,12 +9,10 @@ import gov.nara.nwts.ftapp.filter.CSVFilter;
 import gov.nara.nwts.ftapp.filter.CounterFilterXls;
 import gov.nara.nwts.ftapp.filter.ExcelFilter;
 import gov.nara.nwts.ftapp.filter.TxtFilter;
-import gov.nara.nwts.ftapp.importer.DelimitedFileReader;
 import gov.nara.nwts.ftapp.stats.Stats;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Vector;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
@@ -26,17 +25,14 @@ public class CounterValidationXls extends CounterValidation {
 	public CounterValidationXls(FTDriver dt) {
 		super(dt);
 	}
-    @Override public Vector<Vector<String>> getDataFromFile(File f, Stats s) {
+    @Override public CounterData getDataFromFile(File f, Stats s) {
 		String ext = getExt(f);
 		String sep = getSeparator(f, ext);
 		try {
-			Vector<Vector<String>> data = new Vector<Vector<String>>();
 			if (ext.equals("CSV") || ext.endsWith("TXT")) {
-				data = DelimitedFileReader.parseFile(f, sep);
-			} else {
-				data = ExcelReader.readExcel(f);
+				return new CounterData(f, sep);
 			}
-			return data;
+			return new CounterData(ExcelReader.readExcel(f));
 		} catch (InvalidFormatException e) {
 			s.setVal(CounterStatsItems.Stat, CounterStat.UNSUPPORTED_FILE);
 			s.setVal(CounterStatsItems.Message, e.toString());
@@ -141,8 +141,7 @@ class CreateAPTrustBag extends DefaultFileTest {
     		}
     		
     		aptHelper.createBagFile();  
-    		aptHelper.generateBagInfoFiles();
-    		aptHelper.writeBagFile();
+    		aptHelper.writeStreamingBagFile();
     		
 			s.setVal(BagStatsItems.Bag, aptHelper.getFinalBagName());
 			s.setVal(BagStatsItems.Stat, FABagHelper.STAT.VALID);
@@ -57,6 +57,7 @@ class CreateBag extends DefaultFileTest {
         ftprops.add(pBagType);
         ftprops.add(pTopFolder);
         ftprops.add(pBagCount);
+        addFixityCacheProperties();
 	}
 
 	public String toString() {
@@ -110,6 +111,7 @@ class CreateBag extends DefaultFileTest {
 		}
 		
 		try {
+			bagHelp.setFixityCache(openFixityCache());
 			bagHelp.createBagFile();
 			bagHelp.generateBagInfoFiles();
 	        String countstr = this.getProperty(FABagHelper.P_BAGCOUNTSTR).toString();
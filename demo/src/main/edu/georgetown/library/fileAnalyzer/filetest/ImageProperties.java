@@ -88,6 +88,12 @@ class ImageProperties extends DefaultFileTest {
 	}
 	
     public String getShortName(){return "Image";}
+    public boolean isParallelSafe() {
+    	return true;
+    }
+    public boolean isStreamable() {
+    	return true;
+    }
 
     
 	public Object fileTest(File f) {
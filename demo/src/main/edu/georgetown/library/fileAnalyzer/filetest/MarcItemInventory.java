@@ -17,19 +17,23 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.marc4j.MarcPermissiveStreamReader;
-import org.marc4j.MarcReader;
+import edu.georgetown.library.fileAnalyzer.importer.RawMarcReader;
+
 import org.marc4j.marc.DataField;
 import org.marc4j.marc.Record;
 import org.marc4j.marc.Subfield;
 import org.marc4j.marc.VariableField;
 
+/**
+ * Reports the item id and bib id of each record of a MARC file.
+ * Records are decoded in parallel batches and added to the results in record order.
+ */
 public class MarcItemInventory extends DefaultFileTest implements Importer
 {
     // name and description of the Marc Inventory Importer
@@ -86,6 +90,7 @@ public class MarcItemInventory extends DefaultFileTest implements Importer
     public static StatsItemConfig details = StatsItemConfig.create(InventoryStatsItem.class);
     
     public static final String P_VTAGS = "subfields";
+    public static final String INVALID = "Invalid Record";
         
     public MarcItemInventory(FTDriver dt)
     {
@@ -95,17 +100,46 @@ public class MarcItemInventory extends DefaultFileTest implements Importer
     }
 
     int ftni = 0;
-    Vector<String> auxTags;
+    Vector<AuxTag> auxTags;
     static Pattern pTag = Pattern.compile("^(\\d+)([a-z])$");
     
+    /**
+     * A subfield to extract, parsed once from the subfields property.
+     */
+    static class AuxTag {
+        String subfield;
+        String tag;
+        char code;
+        AuxTag(String subfield, Matcher m) {
+            this.subfield = subfield;
+            tag = m.group(1);
+            code = m.group(2).charAt(0);
+        }
+    }
+    
+    /**
+     * Values read from a record on a pool thread.
+     */
+    static class ItemRecord {
+        boolean has945;
+        String item_id;
+        String bib_id = "";
+        String[] aux;
+    }
+    
+    @Override public boolean hasSharedDetails() {
+        return true;
+    }
+
     @Override public InitializationStatus init() {
-        auxTags = new Vector<String>();
+        auxTags = new Vector<AuxTag>();
         ftni = 0;
         details = StatsItemConfig.create(InventoryStatsItem.class);
         String subfields = (String)this.getProperty(P_VTAGS);
         for(String subfield: subfields.split(",")) {
-            if (!pTag.matcher(subfield).matches()) continue;
-            auxTags.add(subfield);
+            Matcher m = pTag.matcher(subfield);
+            if (!m.matches()) continue;
+            auxTags.add(new AuxTag(subfield, m));
             details.addStatsItem(subfield, StatsItem.makeStringStatsItem(subfield));
         }
         return super.init();
@@ -123,71 +157,98 @@ public class MarcItemInventory extends DefaultFileTest implements Importer
         
     }
 
-    public void processFile(File selectedFile, TreeMap<String, Stats> types) throws IOException
+    public void processFile(final File selectedFile, final Map<String, Stats> types) throws IOException
     {
-        InputStream in = new FileInputStream(selectedFile);
-        MarcReader reader = new MarcPermissiveStreamReader(in, true, true);
-        
-        int frec = 0;
-        
-        while( reader.hasNext() )
+        final AuxTag[] tags = auxTags.toArray(new AuxTag[auxTags.size()]);
+        try (RawMarcReader reader = new RawMarcReader(new FileInputStream(selectedFile)))
         {
-            Record record = reader.next();
-            
-            String bib_id = "";
-            String item_id = "ni"+(ftni++);
-            String short_item_id = "";
-            DataField df945 = (DataField) record.getVariableField("945");
-            
-            if (df945 != null) {
-                Subfield df945y = df945.getSubfield('y');
-                if (df945y != null) {
-                    item_id = df945y.getData();
+            reader.process(new RawMarcReader.RecordProcessor<ItemRecord>()
+            {
+                int frec = 0;
+                public ItemRecord process(int num, byte[] rec, RawMarcReader.Decoder decoder)
+                {
+                    return readItem(decoder.decode(rec), tags);
                 }
-                if (item_id.startsWith(".i")) {short_item_id=item_id.substring(2, 9);}
-            }
-            
-            DataField df907 = (DataField) record.getVariableField("907");
-            
-            if (df907 != null) {
-                Subfield df907a = df907.getSubfield('a');
-                if (df907a != null) {
-                    bib_id = df907a.getData();
+                public void merge(ItemRecord item)
+                {
+                    // generated item ids are numbered in record order
+                    String item_id = "ni"+(ftni++);
+                    String short_item_id = "";
+                    if (item.has945) {
+                        if (item.item_id != null) {
+                            item_id = item.item_id;
+                        }
+                        if (item_id.startsWith(".i")) {short_item_id=item_id.substring(2, 9);}
+                    }
+                    
+                    String key = item_id;
+                    Stats stat = Generator.INSTANCE.create(key);
+                    types.put(stat.key, stat);
+                    
+                    stat.setVal(InventoryStatsItem.ShortItem_ID, short_item_id);
+                    stat.setVal(InventoryStatsItem.File, selectedFile.getName());
+                    stat.setVal(InventoryStatsItem.RecNum, ++frec);
+                    stat.setVal(InventoryStatsItem.Bib_ID, item.bib_id);
+                    
+                    for(int i=0; i<tags.length; i++) {
+                        StatsItem si = details.getByKey(tags[i].subfield);
+                        if (si == null) continue;
+                        stat.setKeyVal(si, item.aux[i]);
+                    }
                 }
+            });
+        }
+    }
+
+    ItemRecord readItem(Record record, AuxTag[] tags)
+    {
+        ItemRecord item = new ItemRecord();
+        if (record == null) {
+            // the record could not be decoded, report it without ids
+            item.bib_id = INVALID;
+            item.aux = new String[tags.length];
+            for(int i=0; i<tags.length; i++) {
+                item.aux[i] = "";
             }
-            if (bib_id.startsWith(".b")) {bib_id=bib_id.substring(2, 9);}
-            
-                
-            String key = item_id;
-            Stats stat = Generator.INSTANCE.create(key);
-            types.put(stat.key, stat);
-            
-            stat.setVal(InventoryStatsItem.ShortItem_ID, short_item_id);
-            stat.setVal(InventoryStatsItem.File, selectedFile.getName());
-            stat.setVal(InventoryStatsItem.RecNum, ++frec);
-            stat.setVal(InventoryStatsItem.Bib_ID, bib_id);
-            
-            for(String subfield: auxTags) {
-                Matcher m = pTag.matcher(subfield);
-                StatsItem si = details.getByKey(subfield);
-                if (si == null) continue;
-                stat.setKeyVal(si, "");
-                if (!m.matches()) continue;
-                StringBuilder sb = new StringBuilder();
-                for(VariableField vf: record.getVariableFields(m.group(1))) {
-                    DataField df = (DataField)vf;
-                    for(Subfield sf: df.getSubfields(m.group(2).charAt(0))){
-                        String dd = sf.getData();
-                        if (dd == null) continue;
-                        if (sb.length() > 0 && !dd.isEmpty()) {
-                            sb.append(";");
-                        }
-                        sb.append(dd);                        
+            return item;
+        }
+        DataField df945 = (DataField) record.getVariableField("945");
+        
+        if (df945 != null) {
+            item.has945 = true;
+            Subfield df945y = df945.getSubfield('y');
+            if (df945y != null) {
+                item.item_id = df945y.getData();
+            }
+        }
+        
+        DataField df907 = (DataField) record.getVariableField("907");
+        
+        if (df907 != null) {
+            Subfield df907a = df907.getSubfield('a');
+            if (df907a != null) {
+                item.bib_id = df907a.getData();
+            }
+        }
+        if (item.bib_id.startsWith(".b")) {item.bib_id=item.bib_id.substring(2, 9);}
+        
+        item.aux = new String[tags.length];
+        for(int i=0; i<tags.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for(VariableField vf: record.getVariableFields(tags[i].tag)) {
+                DataField df = (DataField)vf;
+                for(Subfield sf: df.getSubfields(tags[i].code)){
+                    String dd = sf.getData();
+                    if (dd == null) continue;
+                    if (sb.length() > 0 && !dd.isEmpty()) {
+                        sb.append(";");
                     }
+                    sb.append(dd);                        
                 }
-                stat.setKeyVal(si, sb.toString());
             }
-        } // end while loop.
+            item.aux[i] = sb.toString();
+        }
+        return item;
     }
 
     @Override
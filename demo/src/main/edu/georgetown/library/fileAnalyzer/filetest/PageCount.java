@@ -91,6 +91,11 @@ class PageCount extends DefaultFileTest {
 	
     public String getShortName(){return "Pg";}
 
+    /* A key pattern may map several files to the same result.*/
+    public boolean isStreamable() {
+    	return getProperty(KEYPATT, "").toString().isEmpty();
+    }
+
     
 	public Object fileTest(File f) {
 		Stats s = getStats(f);
@@ -16,7 +16,9 @@ import java.io.IOException;
 import java.util.regex.Matcher;
 
 import edu.georgetown.library.fileAnalyzer.stats.DetailedBagStatsItems;
+import edu.georgetown.library.fileAnalyzer.util.ArchiveBagVerifier;
 import edu.georgetown.library.fileAnalyzer.util.FABagHelper;
+import edu.georgetown.library.fileAnalyzer.util.FixityCache;
 
 /**
  * Extract all metadata fields from a TIF or JPG using categorized tag defintions.
@@ -47,6 +49,7 @@ class VerifyBag extends DefaultFileTest {
     long counter = 1000000;
     public VerifyBag(FTDriver dt) {
         super(dt);
+        addFixityCacheProperties();
     }
 
     public String toString() {
@@ -58,6 +61,10 @@ class VerifyBag extends DefaultFileTest {
     
     public String getShortName(){return "Ver Bag";}
 
+    @Override public boolean hasSharedDetails() {
+    	return true;
+    }
+
     public InitializationStatus init() {
     	details = StatsItemConfig.create(DetailedBagStatsItems.class);
     	return new InitializationStatus();
@@ -71,43 +78,13 @@ class VerifyBag extends DefaultFileTest {
     	String fname = f.getName();
         Stats s = getStats(f);
         try {
+			File source = f;
 			f = prepareFile(f);
 			BagFactory bf = new BagFactory();
 			try (Bag bag = bf.createBag(f);) {
 				s.setVal(DetailedBagStatsItems.Count, bag.getPayload().size());
-				SimpleResult result = bag.verifyValid();
-				if (result.isSuccess()) {
-					BagInfoTxt bit = bag.getBagInfoTxt();
-					
-					if (bit == null) {
-                        s.setVal(DetailedBagStatsItems.Stat, STAT.INVALID);
-                        s.setVal(DetailedBagStatsItems.Message, "Bag Info Not Found. ");					    
-					} else {
-	                    s.setVal(DetailedBagStatsItems.Stat, STAT.VALID);
-	                    s.setVal(DetailedBagStatsItems.Message, "");
-	                    s.setVal(DetailedBagStatsItems.BagSourceOrg, bit.getSourceOrganization());
-	                    s.setVal(DetailedBagStatsItems.BagSenderDesc, bit.getInternalSenderDescription());
-	                    s.setVal(DetailedBagStatsItems.BagSenderId, bit.getInternalSenderIdentifier());
-	                    
-	                    String countstr = bit.getBagCount() == null ? "" : bit.getBagCount().trim();
-	                    
-	                    Matcher m = FABagHelper.pBagCountStr.matcher(countstr); 
-	                    if (m.matches()) {
-	                        s.setVal(DetailedBagStatsItems.BagCount, m.group(1));
-	                        s.setVal(DetailedBagStatsItems.BagTotal, m.group(2));
-	                    } else {                        
-	                        s.setVal(DetailedBagStatsItems.BagCount, countstr);
-	                        s.setVal(DetailedBagStatsItems.BagTotal, "");
-	                    }
-	                    validateBagMetadata(bag, fname, s);					    
-					}
-				    
-				} else {
-				    s.setVal(DetailedBagStatsItems.Stat, STAT.ERROR);
-				    for(String m: result.getMessages()) {
-				        s.appendVal(DetailedBagStatsItems.Message, m +" ");             
-				    }
-				}
+				SimpleResult result = verifyBag(bag, f.equals(source));
+				setBagStats(bag, result, fname, s);
 				bag.close();
 			} 
 		} catch (Exception e) {
@@ -124,6 +101,63 @@ class VerifyBag extends DefaultFileTest {
         return s.getVal(DetailedBagStatsItems.Count);
     }
     
+    /**
+     * Record the result of verifying a bag along with the values of its bag info file.
+     */
+    public void setBagStats(Bag bag, SimpleResult result, String fname, Stats s) {
+		if (result.isSuccess()) {
+			BagInfoTxt bit = bag.getBagInfoTxt();
+			
+			if (bit == null) {
+                s.setVal(DetailedBagStatsItems.Stat, STAT.INVALID);
+                s.setVal(DetailedBagStatsItems.Message, "Bag Info Not Found. ");					    
+			} else {
+                s.setVal(DetailedBagStatsItems.Stat, STAT.VALID);
+                s.setVal(DetailedBagStatsItems.Message, "");
+                s.setVal(DetailedBagStatsItems.BagSourceOrg, bit.getSourceOrganization());
+                s.setVal(DetailedBagStatsItems.BagSenderDesc, bit.getInternalSenderDescription());
+                s.setVal(DetailedBagStatsItems.BagSenderId, bit.getInternalSenderIdentifier());
+                
+                String countstr = bit.getBagCount() == null ? "" : bit.getBagCount().trim();
+                
+                Matcher m = FABagHelper.pBagCountStr.matcher(countstr); 
+                if (m.matches()) {
+                    s.setVal(DetailedBagStatsItems.BagCount, m.group(1));
+                    s.setVal(DetailedBagStatsItems.BagTotal, m.group(2));
+                } else {                        
+                    s.setVal(DetailedBagStatsItems.BagCount, countstr);
+                    s.setVal(DetailedBagStatsItems.BagTotal, "");
+                }
+                validateBagMetadata(bag, fname, s);					    
+			}
+		    
+		} else {
+		    s.setVal(DetailedBagStatsItems.Stat, STAT.ERROR);
+		    for(String m: result.getMessages()) {
+		        s.appendVal(DetailedBagStatsItems.Message, m +" ");             
+		    }
+		}
+    }
+    
+    /**
+     * Verify a bag within an archive file rather than after extracting it.
+     */
+    public Object verifyArchive(File f, ArchiveBagVerifier verifier) {
+        Stats s = getStats(f);
+        try {
+            SimpleResult result = verifier.verify();
+            s.setVal(DetailedBagStatsItems.Count, verifier.getPayloadCount());
+            try (Bag bag = verifier.getTagBag();) {
+                setBagStats(bag, result, f.getName(), s);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            s.setVal(DetailedBagStatsItems.Message, "Bag Error: " + e.getClass().getName() +" " + e.getMessage());
+            s.setVal(DetailedBagStatsItems.Stat, STAT.NA);
+        }
+        return s.getVal(DetailedBagStatsItems.Count);
+    }
+    
     public Stats createStats(String key){ 
         return Generator.INSTANCE.create(key);
     }
@@ -154,6 +188,15 @@ class VerifyBag extends DefaultFileTest {
         return hasBagFile(f);
     }
     
+    /* Zip and tar bags are extracted to a new location on each run, so the checksum cache is only consulted for bags verified in place.*/
+    public SimpleResult verifyBag(Bag bag, boolean inPlace) throws IOException {
+        FixityCache cache = inPlace ? openFixityCache() : null;
+        if (cache == null) {
+            return bag.verifyValid();
+        }
+        return FABagHelper.verifyValid(bag, cache);
+    }
+
     public void validateBagMetadata(Bag bag, String fname, Stats stats) {
     }
     public void cleanupPreparedFile(File f) throws IOException {
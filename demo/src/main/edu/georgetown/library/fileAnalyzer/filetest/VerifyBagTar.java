@@ -5,13 +5,9 @@ import gov.nara.nwts.ftapp.filter.TarFilter;
 import gov.nara.nwts.ftapp.stats.StatsItemConfig;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-
-import org.apache.commons.io.FileUtils;
 
 import edu.georgetown.library.fileAnalyzer.stats.BagStatsItems;
-import edu.georgetown.library.fileAnalyzer.util.TarUtil;
+import edu.georgetown.library.fileAnalyzer.util.TarBagVerifier;
 
 /**
  * Extract all metadata fields from a TIF or JPG using categorized tag defintions.
@@ -53,19 +49,11 @@ class VerifyBagTar extends VerifyBag {
 		filters.add(new TarFilter());
 	}
     
-	@Override public File prepareFile(File f) throws IOException {
-		File untarred = TarUtil.untar(f);
-		if (untarred.listFiles().length == 1) {
-			return untarred.listFiles()[0];
-		}
-		return untarred;
-    }
-
-    @Override public void cleanupPreparedFile(File f) throws IOException {
-        if (f == null) return;
-        if (!f.isDirectory()) return;
-        FileUtils.deleteDirectory(f);
-        Files.deleteIfExists(f.toPath());
+    /**
+     * The bag is verified within the tar file rather than after extracting it.
+     */
+    @Override public Object fileTest(File f) {
+        return verifyArchive(f, new TarBagVerifier(f));
     }
 
 }
@@ -7,6 +7,7 @@ import gov.nara.nwts.ftapp.stats.StatsItemConfig;
 import java.io.File;
 
 import edu.georgetown.library.fileAnalyzer.stats.BagStatsItems;
+import edu.georgetown.library.fileAnalyzer.util.ZipBagVerifier;
 
 /**
  * Extract all metadata fields from a TIF or JPG using categorized tag defintions.
@@ -48,4 +49,11 @@ class VerifyBagZip extends VerifyBag {
 		filters.add(new ZipFilter());
 	}
     
+    /**
+     * The bag is verified within the zip file, hashing its payload files in parallel.
+     */
+    @Override public Object fileTest(File f) {
+        return verifyArchive(f, new ZipBagVerifier(f));
+    }
+
 }
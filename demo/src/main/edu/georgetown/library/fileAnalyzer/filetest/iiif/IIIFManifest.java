@@ -58,7 +58,7 @@ public class IIIFManifest extends IIIFJSONWrapper {
                 file = compFile;
                 checkManifestFile(file);
                 this.inputMetadata = inputMetadata;
-                xp = XMLUtil.xf.newXPath();
+                xp = XMLUtil.newXPath();
                 this.isCollectionManifest = isCollectionManifest;
                 if (!isCollectionManifest) {
                         seq = addSequence();
@@ -5,8 +5,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -24,27 +22,26 @@ import edu.georgetown.library.fileAnalyzer.util.XMLUtil;
 import edu.georgetown.library.fileAnalyzer.util.XMLUtil.SimpleNamespaceContext;
 
 class XMLInputFile extends DefaultInputFile {
+        static SimpleNamespaceContext nsContext = new XMLUtil().new SimpleNamespaceContext();
+        static {
+                //For mets.xml
+                nsContext.add("dim", "http://www.dspace.org/xmlns/dspace/dim");
+                nsContext.add("mets", "http://www.loc.gov/METS/");
+                nsContext.add("mods", "http://www.loc.gov/mods/v3");
+                
+                //For EAD files
+                nsContext.add("ead", "urn:isbn:1-931666-22-9");
+                nsContext.add("ns2", "http://www.w3.org/1999/xlink");
+        }
+
         Document d;
-        XPath xp = XMLUtil.xf.newXPath();
         XMLInputFile(File file) throws InputFileException {
                 super(file);
                 try {
-                        d = XMLUtil.dbf_ns.newDocumentBuilder().parse(file);
+                        d = XMLUtil.getNamespaceDocumentBuilder().parse(file);
                         if (d == null) {
                                 throw new InputFileException(String.format("File [%s] cannot be parsed", file.getName()));
                         }
-                        SimpleNamespaceContext nsContext = new XMLUtil().new SimpleNamespaceContext();
-                        
-                        //For mets.xml
-                        nsContext.add("dim", "http://www.dspace.org/xmlns/dspace/dim");
-                        nsContext.add("mets", "http://www.loc.gov/METS/");
-                        nsContext.add("mods", "http://www.loc.gov/mods/v3");
-                        
-                        //For EAD files
-                        nsContext.add("ead", "urn:isbn:1-931666-22-9");
-                        nsContext.add("ns2", "http://www.w3.org/1999/xlink");
-
-                        xp.setNamespaceContext(nsContext);
                         
                         String ns = d.getDocumentElement().getNamespaceURI();
                         String tag = d.getDocumentElement().getTagName();
@@ -60,7 +57,7 @@ class XMLInputFile extends DefaultInputFile {
                         } else {                                        
                                 throw new InputFileException(String.format("Cannot identify XML file [%s]", file.getName()));
                         }
-                } catch (SAXException | IOException | ParserConfigurationException e) {
+                } catch (SAXException | IOException e) {
                         throw new InputFileException(e.getMessage());
                 }
         }
@@ -73,8 +70,15 @@ class XMLInputFile extends DefaultInputFile {
                 }
                 return def;
         }
+        /**
+         * @return the expressions of the calling thread, compiled with the namespaces of the supported file types
+         */
+        XMLUtil.CompiledXPath getCompiledXPath() {
+                return XMLUtil.getCompiledXPath(nsContext);
+        }
+
         public String getXPathValue(Node d, String xq, String def) {
-                return XMLUtil.getXPathValue(xp, d, xq, def);
+                return getCompiledXPath().getValue(d, xq, def);
         }
 
         @Override
@@ -86,7 +90,7 @@ class XMLInputFile extends DefaultInputFile {
                 parent.addChildRange(rp);
                 if (fileType == InputFileType.EAD) {
                         try {
-                                NodeList nl = (NodeList)xp.evaluate("//ead:c01", d, XPathConstants.NODESET);
+                                NodeList nl = (NodeList)getCompiledXPath().compile("//ead:c01").evaluate(d, XPathConstants.NODESET);
                                 for(int i=0; i<nl.getLength(); i++) {
                                        addRange(manifest, manifestTranslate, rangePaths, nl.item(i), rp);
                                 }
@@ -115,10 +119,10 @@ class XMLInputFile extends DefaultInputFile {
                 rp.setParent(parent);
                 parent.addChildRange(rp);
                 rangePaths.add(rp);
-                manifestTranslate.registerEADRange(xp, n, rp);
+                manifestTranslate.registerEADRange(getCompiledXPath().getXPath(), n, rp);
                 rp.setProperty(IIIFType.typeRange, IIIFMetadataProp.dateCreated, tDate);
                 try {
-                        NodeList nl = (NodeList)xp.evaluate("ead:did/ead:container", n, XPathConstants.NODESET);
+                        NodeList nl = (NodeList)getCompiledXPath().compile("ead:did/ead:container").evaluate(n, XPathConstants.NODESET);
                         for(int i=0; i<nl.getLength(); i++) {
                                 Element elem = (Element)nl.item(i);
                                 String type = elem.getAttribute("type");
@@ -132,11 +136,11 @@ class XMLInputFile extends DefaultInputFile {
                         e.printStackTrace();
                 }
 
-                NodeList nl = (NodeList)xp.evaluate("ead:c02|ead:c03|ead:c04", n, XPathConstants.NODESET);
+                NodeList nl = (NodeList)getCompiledXPath().compile("ead:c02|ead:c03|ead:c04").evaluate(n, XPathConstants.NODESET);
                 for(int i=0; i<nl.getLength(); i++) {
                         addRange(manifest, manifestTranslate, rangePaths, nl.item(i), rp);
                 }
-                nl = (NodeList)xp.evaluate("ead:dao", n, XPathConstants.NODESET);
+                nl = (NodeList)getCompiledXPath().compile("ead:dao").evaluate(n, XPathConstants.NODESET);
                 for(int i=0; i<nl.getLength(); i++) {
                         String url = this.getXPathValue(nl.item(i), "@ns2:href", "");
                         if (url.endsWith(".jpg")) {
@@ -148,10 +152,10 @@ class XMLInputFile extends DefaultInputFile {
         
         public String getPath(Node n) throws XPathExpressionException {
                 StringBuilder sb = new StringBuilder();
-                NodeList nl = (NodeList)xp.evaluate("ancestor-or-self::ead:c01|ancestor-or-self::ead:c02|ancestor-or-self::ead:c03|ancestor-or-self::ead:c04", n, XPathConstants.NODESET);
+                NodeList nl = (NodeList)getCompiledXPath().compile("ancestor-or-self::ead:c01|ancestor-or-self::ead:c02|ancestor-or-self::ead:c03|ancestor-or-self::ead:c04").evaluate(n, XPathConstants.NODESET);
                 for(int i=0; i<nl.getLength(); i++) {
                         Node cn = nl.item(i);
-                        NodeList cnl = (NodeList)xp.evaluate("preceding-sibling::ead:c01|preceding-sibling::ead:c02|preceding-sibling::ead:c03|preceding-sibling::ead:c04", cn, XPathConstants.NODESET);
+                        NodeList cnl = (NodeList)getCompiledXPath().compile("preceding-sibling::ead:c01|preceding-sibling::ead:c02|preceding-sibling::ead:c03|preceding-sibling::ead:c04").evaluate(cn, XPathConstants.NODESET);
                         if (i > 0) {
                                 sb.append("-");
                         }
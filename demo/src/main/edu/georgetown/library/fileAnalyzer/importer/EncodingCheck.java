@@ -10,27 +10,29 @@ import gov.nara.nwts.ftapp.stats.StatsItem;
 import gov.nara.nwts.ftapp.stats.StatsItemConfig;
 import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.TreeMap;
 
-import org.marc4j.MarcPermissiveStreamReader;
-import org.marc4j.MarcReader;
-import org.marc4j.MarcStreamWriter;
-import org.marc4j.MarcWriter;
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
-import org.marc4j.marc.Leader;
 import org.marc4j.marc.Record;
 
 
+/**
+ * Reports the character encoding of each record of a MARC file and splits a file holding both MARC-8 and Unicode records into one file of each.
+ * <p>
+ * Records are reported as they are read and are not retained, so memory use does not grow with the number of records.
+ * The encoding is taken from the undecoded leader and each record is copied unchanged to a temporary file for its encoding as it is read.
+ * The temporary files are renamed when both encodings are found and are otherwise removed.
+ */
 public class EncodingCheck extends DefaultImporter
 {
 	// name and description of the encoding validator
@@ -106,120 +108,98 @@ public class EncodingCheck extends DefaultImporter
 		Timer timer = new Timer();
 		TreeMap<String, Stats> types = new TreeMap<String, Stats>();
 		
-		InputStream in = new FileInputStream(selectedFile);
-		MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
-		
-		InputStream in_utf = new FileInputStream(selectedFile);
-		MarcReader reader_utf = new MarcPermissiveStreamReader(in_utf, true, true);
+		File file_marc8 = new File(selectedFile.getParentFile(), "MARC8-" + selectedFile.getName());
+		File file_utf = new File(selectedFile.getParentFile(), "UNICODE-" + selectedFile.getName());
+		File part_marc8 = new File(file_marc8.getPath() + ".part");
+		File part_utf = new File(file_utf.getPath() + ".part");
 		
 		int i = 0;
 		int count_marc8 = 0;
 		int count_utf = 0;
+		RawMarcReader.Decoder decoder = new RawMarcReader.Decoder(true, true);
 		
-		List<Record> rec_marc8 = new ArrayList<Record>();
-		List<Record> rec_utf = new ArrayList<Record>();
-		
-				
-		while(reader.hasNext() && reader_utf.hasNext())
+		try
 		{
-			String key = nf.format(++i);
-			Stats stat = Generator.INSTANCE.create(key);
-			stat.setVal(EncodingStatsItem.Status, STATUS.Valid);
-			types.put(stat.key, stat);
-			
-			Record record = reader.next();
-			Record record_utf = reader_utf.next();
-			
-			// marc leader comes from the original reader
-			Leader leader = record.getLeader();
-			char code = leader.getCharCodingScheme();
-			if (leader.toString().equals(""))
+			try (RawMarcReader reader = new RawMarcReader(new FileInputStream(selectedFile));
+				OutputStream out_marc8 = new BufferedOutputStream(new FileOutputStream(part_marc8));
+				OutputStream out_utf = new BufferedOutputStream(new FileOutputStream(part_utf)))
 			{
-				stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
-				stat.setVal(EncodingStatsItem.Leader, "MARC Leader Missing");
-			} else
-			{
-				stat.setVal(EncodingStatsItem.Leader, leader.toString());
-				if (code == ' ')
-				{
-					stat.setVal(EncodingStatsItem.Encoding, CODE.MARC8);
-					rec_marc8.add(record);
-					count_marc8 ++;
-				} else if (code == 'a')
+				for(byte[] raw = reader.next(); raw != null; raw = reader.next())
 				{
-					stat.setVal(EncodingStatsItem.Encoding, CODE.Unicode);
-					rec_utf.add(record_utf);
-					count_utf ++;
-				}
+					String key = nf.format(++i);
+					Stats stat = Generator.INSTANCE.create(key);
+					stat.setVal(EncodingStatsItem.Status, STATUS.Valid);
+					types.put(stat.key, stat);
+					
+					// marc leader is checked before the record is decoded
+					String leader = RawMarcReader.getLeader(raw);
+					char code = RawMarcReader.getCharCodingScheme(raw);
+					if (leader.equals(""))
+					{
+						stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
+						stat.setVal(EncodingStatsItem.Leader, "MARC Leader Missing");
+					} else
+					{
+						stat.setVal(EncodingStatsItem.Leader, leader);
+						if (code == ' ')
+						{
+							stat.setVal(EncodingStatsItem.Encoding, CODE.MARC8);
+							out_marc8.write(raw);
+							count_marc8 ++;
+						} else if (code == 'a')
+						{
+							stat.setVal(EncodingStatsItem.Encoding, CODE.Unicode);
+							out_utf.write(raw);
+							count_utf ++;
+						}
+					}
+					
+					// OCLC number and title are decoded as unicode
+					Record record_utf = decoder.decode(raw);
+					ControlField cf001 = record_utf == null ? null : (ControlField) record_utf.getVariableField("001");
+					String oclc;
+					if (cf001 == null)
+					{
+						stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
+						stat.setVal(EncodingStatsItem.OCLC, "OCLC Missing");
+					} else
+					{
+						oclc = cf001.getData();
+						stat.setVal(EncodingStatsItem.OCLC, oclc);				
+					}
+					
+					DataField df245 = record_utf == null ? null : (DataField) record_utf.getVariableField("245");
+					String title;
+					if (df245 == null)
+					{
+						stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
+						stat.setVal(EncodingStatsItem.Title, "Title Missing");
+					} else
+					{
+						title = df245.getSubfield('a').getData();
+						stat.setVal(EncodingStatsItem.Title, title);
+					}
+				} // end for loop
 			}
 			
-			// OCLC number and title come from utf reader
-			ControlField cf001 = (ControlField) record_utf.getVariableField("001");
-			String oclc;
-			if (cf001 == null)
-			{
-				stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
-				stat.setVal(EncodingStatsItem.OCLC, "OCLC Missing");
-			} else
+			// if mixed records, keep the separated marc files
+			if (count_marc8 != 0 && count_utf != 0)
 			{
-				oclc = cf001.getData();
-				stat.setVal(EncodingStatsItem.OCLC, oclc);				
-			}
-			
-			DataField df245 = (DataField) record_utf.getVariableField("245");
-			String title;
-			if (df245 == null)
-			{
-				stat.setVal(EncodingStatsItem.Status, STATUS.Invalid);
-				stat.setVal(EncodingStatsItem.Title, "Title Missing");
-			} else
-			{
-				title = df245.getSubfield('a').getData();
-				stat.setVal(EncodingStatsItem.Title, title);
-			}
-						
-			
-		} // end while loop
-		
-		// System.out.println("count_marc8 = " + count_marc8);
-		// System.out.println("count_utf = " + count_utf);
-		
-		
-		// if mixed records, separate records and create two marc files
-		if (count_marc8 != 0 && count_utf != 0)
-		{
-			String absPath = selectedFile.getAbsolutePath();
-			String basePath = absPath.substring(0, absPath.lastIndexOf(File.separator));
-			String file_marc8 = basePath + "\\MARC8-" + selectedFile.getName();
-			String file_utf = basePath + "\\UNICODE-" + selectedFile.getName();
-			
-			try (OutputStream out_marc8 = new FileOutputStream(file_marc8))
-			{
-				for(Record rec : rec_marc8)
+				try
 				{
-					MarcWriter writer = new MarcStreamWriter(out_marc8);
-					writer.write(rec);
-				}
-			} catch (IOException e)
-			{
-				e.printStackTrace();
-			}
-			
-			try (OutputStream out_utf = new FileOutputStream(file_utf))
-			{
-				for (Record rec : rec_utf)
+					Files.move(part_marc8.toPath(), file_marc8.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					Files.move(part_utf.toPath(), file_utf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e)
 				{
-					MarcWriter writer = new MarcStreamWriter(out_utf);
-					writer.write(rec);
+					e.printStackTrace();
 				}
-			} catch (IOException e)
-			{
-				e.printStackTrace();
 			}
-			
+		} finally
+		{
+			part_marc8.delete();
+			part_utf.delete();
 		}
 		
-		
 		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
 	}
 			
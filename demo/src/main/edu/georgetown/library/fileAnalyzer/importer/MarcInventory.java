@@ -13,17 +13,18 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.TreeMap;
 
-import org.marc4j.MarcPermissiveStreamReader;
-import org.marc4j.MarcReader;
 import org.marc4j.marc.DataField;
 import org.marc4j.marc.Record;
 import org.marc4j.marc.Subfield;
 
+/**
+ * Reports the bib id and checksum of each record of a MARC file.
+ * Records are decoded and hashed in parallel batches and added to the results in record order.
+ */
 public class MarcInventory extends DefaultImporter
 {
 	// name and description of the Marc Inventory Importer
@@ -112,38 +113,59 @@ public class MarcInventory extends DefaultImporter
 	public ActionResult importFile(File selectedFile) throws IOException
 	{
 		Timer timer = new Timer();
-		TreeMap<String, Stats> types = new TreeMap<String, Stats>();
+		final TreeMap<String, Stats> types = new TreeMap<String, Stats>();
 		
-		InputStream in = new FileInputStream(selectedFile);
-		MarcReader reader = new MarcPermissiveStreamReader(in, true, true);
-		
-		while( reader.hasNext() )
+		try (RawMarcReader reader = new RawMarcReader(new FileInputStream(selectedFile)))
 		{
-			Record record = reader.next();
-			
-			String bib_id = "";
-			DataField df907 = (DataField) record.getVariableField("907");
-			
-			if (df907 != null) {
-			    Subfield df907a = df907.getSubfield('a');
-			    if (df907a != null) {
-			        bib_id = df907a.getData();
-			    }
-			}
-			if (bib_id.startsWith(".b")) {bib_id=bib_id.substring(2, 9);}
-				
-			String key = bib_id;
-			Stats stat = Generator.INSTANCE.create(key);
-			types.put(stat.key, stat);
-			
-			String checksum = getChecksum(record.toString());
-			stat.setVal(InventoryStatsItem.Hash_Code, checksum);
-			
-		} // end while loop
+			reader.process(new RawMarcReader.RecordProcessor<Stats>()
+			{
+				public Stats process(int num, byte[] rec, RawMarcReader.Decoder decoder)
+				{
+					Record record = decoder.decode(rec);
+					return record == null ? invalid(num) : inventory(record);
+				}
+				public void merge(Stats stat)
+				{
+					// a later record with the same bib id replaces an earlier one
+					types.put(stat.key, stat);
+				}
+			});
+		}
 		
 		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
 		
 	}
 	
+	/**
+	 * Report a record that could not be decoded.  Its record number is used as the key since no bib id can be read.
+	 */
+	public Stats invalid(int num)
+	{
+		Stats stat = Generator.INSTANCE.create("Invalid Record " + num);
+		stat.setVal(InventoryStatsItem.Hash_Code, "Record could not be decoded");
+		return stat;
+	}
+	
+	public Stats inventory(Record record)
+	{
+		String bib_id = "";
+		DataField df907 = (DataField) record.getVariableField("907");
+		
+		if (df907 != null) {
+		    Subfield df907a = df907.getSubfield('a');
+		    if (df907a != null) {
+		        bib_id = df907a.getData();
+		    }
+		}
+		if (bib_id.startsWith(".b")) {bib_id=bib_id.substring(2, 9);}
+			
+		String key = bib_id;
+		Stats stat = Generator.INSTANCE.create(key);
+		
+		String checksum = getChecksum(record.toString());
+		stat.setVal(InventoryStatsItem.Hash_Code, checksum);
+		return stat;
+	}
+	
 
 }
@@ -3,12 +3,9 @@ package edu.georgetown.library.fileAnalyzer.importer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.NumberFormat;
 import java.util.TreeMap;
 
-import org.marc4j.MarcReader;
-import org.marc4j.MarcStreamReader;
 import org.marc4j.marc.DataField;
 import org.marc4j.marc.Record;
 import org.marc4j.marc.Subfield;
@@ -25,6 +22,8 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 
 /**
  * Importer for tab delimited files
+ * <p>
+ * Records are validated in parallel batches and added to the results in record order.
  * 
  * @author TBrady
  * 
@@ -157,60 +156,79 @@ public class MarcRecValidator extends DefaultImporter {
 
 	public ActionResult importFile(File selectedFile) throws IOException {
 		Timer timer = new Timer();
-		TreeMap<String, Stats> types = new TreeMap<String, Stats>();
-	    InputStream in = new FileInputStream(selectedFile);
-        MarcReader reader = new MarcStreamReader(in);
-        
-        int i=0;
-        while (reader.hasNext()) {
-			String key = nf.format(i++);
-			Stats stat = Generator.INSTANCE.create(key);
-			stat.setVal(MarcStatsItems.Stat, STAT.VALID);
-			types.put(stat.key, stat);
-            Record record = reader.next();
-            
-            int count_949 = 0;
-            int count_960 = 0;
-            int count_980 = 0;
-            int count_935 = 0;
-            
-            for(DataField df: record.getDataFields()) {
-            	String tag = df.getTag();
-            	if (tag.equals("245")) {
-            		statSubfield(stat, MarcStatsItems.Title, df, 'a');
-            	} else if (tag.equals("100")) {
-            		statSubfield(stat, MarcStatsItems.Author, df, 'a');
-            	} else if (tag.equals("949")) {
-            		statSubfield(stat, MarcStatsItems.f949i, df, 'i');
-            		statSubfield(stat, MarcStatsItems.f949l, df, 'l');
-            		statSubfield(stat, MarcStatsItems.f949s, df, 's');
-            		statSubfield(stat, MarcStatsItems.f949t, df, 't');
-            		statSubfield(stat, MarcStatsItems.f949z, df, 'z');
-            		statSubfield(stat, MarcStatsItems.f949a, df, 'a');
-            		statSubfield(stat, MarcStatsItems.f949b, df, 'b');
-            		count_949++;
-            	} else if (tag.equals("960")) {
-            		statSubfield(stat, MarcStatsItems.f960u, df, 'u');
-            		statSubfield(stat, MarcStatsItems.f960v, df, 'v');
-            		count_960++;
-            	} else if (tag.equals("980")) {
-            		statSubfield(stat, MarcStatsItems.f980f, df, 'f');
-            		count_980++;
-            	} else if (tag.equals("935")) {
-            		statSubfield(stat, MarcStatsItems.f935a, df, 'a');
-            		count_935++;
-            	}
-             }
-            
-            setFieldCount(stat, count_949, MarcStatsItems.f949, true);
-            setFieldCount(stat, count_960, MarcStatsItems.f960, true);
-            setFieldCount(stat, count_980, MarcStatsItems.f980, true);
-            setFieldCount(stat, count_935, MarcStatsItems.f935, true);
-             
-        }    
+		final TreeMap<String, Stats> types = new TreeMap<String, Stats>();
+		
+		try (RawMarcReader reader = new RawMarcReader(new FileInputStream(selectedFile))) {
+			reader.process(new RawMarcReader.RecordProcessor<Stats>() {
+				public RawMarcReader.Decoder createDecoder() {
+					return new RawMarcReader.Decoder(false, false);
+				}
+				public Stats process(int num, byte[] rec, RawMarcReader.Decoder decoder) {
+					String key;
+					//number formats are not thread safe
+					synchronized(nf) {
+						key = nf.format(num);
+					}
+					return validate(key, decoder.decode(rec));
+				}
+				public void merge(Stats stat) {
+					types.put(stat.key, stat);
+				}
+			});
+		}
 
 		return new ActionResult(selectedFile, selectedFile.getName(),
 				this.toString(), details, types, true, timer.getDuration());
 	}
+
+	public Stats validate(String key, Record record) {
+		Stats stat = Generator.INSTANCE.create(key);
+		stat.setVal(MarcStatsItems.Stat, STAT.VALID);
+            
+        int count_949 = 0;
+        int count_960 = 0;
+        int count_980 = 0;
+        int count_935 = 0;
+        
+        if (record == null) {
+        	// every required field is reported missing
+        	stat.setVal(MarcStatsItems.Stat, STAT.INVALID);
+        	stat.setVal(MarcStatsItems.Title, "Record could not be decoded");
+        } else {
+        	for(DataField df: record.getDataFields()) {
+        		String tag = df.getTag();
+        		if (tag.equals("245")) {
+        			statSubfield(stat, MarcStatsItems.Title, df, 'a');
+        		} else if (tag.equals("100")) {
+        			statSubfield(stat, MarcStatsItems.Author, df, 'a');
+        		} else if (tag.equals("949")) {
+        			statSubfield(stat, MarcStatsItems.f949i, df, 'i');
+        			statSubfield(stat, MarcStatsItems.f949l, df, 'l');
+        			statSubfield(stat, MarcStatsItems.f949s, df, 's');
+        			statSubfield(stat, MarcStatsItems.f949t, df, 't');
+        			statSubfield(stat, MarcStatsItems.f949z, df, 'z');
+        			statSubfield(stat, MarcStatsItems.f949a, df, 'a');
+        			statSubfield(stat, MarcStatsItems.f949b, df, 'b');
+        			count_949++;
+        		} else if (tag.equals("960")) {
+        			statSubfield(stat, MarcStatsItems.f960u, df, 'u');
+        			statSubfield(stat, MarcStatsItems.f960v, df, 'v');
+        			count_960++;
+        		} else if (tag.equals("980")) {
+        			statSubfield(stat, MarcStatsItems.f980f, df, 'f');
+        			count_980++;
+        		} else if (tag.equals("935")) {
+        			statSubfield(stat, MarcStatsItems.f935a, df, 'a');
+        			count_935++;
+        		}
+        	}
+        }
+        
+        setFieldCount(stat, count_949, MarcStatsItems.f949, true);
+        setFieldCount(stat, count_960, MarcStatsItems.f960, true);
+        setFieldCount(stat, count_980, MarcStatsItems.f980, true);
+        setFieldCount(stat, count_935, MarcStatsItems.f935, true);
+        return stat;
+	}
 		
 }
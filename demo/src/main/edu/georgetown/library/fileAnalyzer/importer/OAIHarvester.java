@@ -0,0 +1,419 @@
+package edu.georgetown.library.fileAnalyzer.importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.client.utils.URIBuilder;
+
+/**
+ * Harvests the pages of an OAI-PMH list request, following resumption tokens.
+ * <p>
+ * Each response is parsed with StAX as it is received, keeping only the values of interest.
+ * As soon as a page has been read, the request for the next page is made on the common fork-join pool
+ * while the entries of the page are handed over on the calling thread.
+ * <p>
+ * Entries may be recorded in a harvest log, a tab delimited text file holding the entries of each page followed by the resumption token that ends it.
+ * When a harvest is repeated with the same log, the logged pages are replayed without a request.
+ * An interrupted harvest then continues from the last logged resumption token;
+ * a complete harvest of records or identifiers is extended with the records changed since the last harvest began.
+ * @author TBrady
+ *
+ */
+public class OAIHarvester {
+    public static final String NS_DC = "http://purl.org/dc/elements/1.1/";
+    public static final String LIST_RECORDS = "ListRecords";
+    public static final String LIST_IDENTIFIERS = "ListIdentifiers";
+    public static final int TIMEOUT = 120_000;
+
+    static final String LOG_HEADER = "OAI";
+    static final String LOG_SEGMENT = "S";
+    static final String LOG_ENTRY = "E";
+    static final String LOG_TOKEN = "T";
+
+    /**
+     * Receives the entries of each page on the calling thread.
+     * An entry of a ListRecords request holds the header identifier, the dc title and the dc identifier of a record;
+     * the entry of other requests holds a single value.
+     */
+    public static abstract class EntryHandler {
+        public abstract void entry(String[] vals);
+    }
+
+    /**
+     * The values read from one response.
+     */
+    static class Page {
+        String responseDate = "";
+        List<String[]> entries = new ArrayList<String[]>();
+        //null when the list is complete
+        String token;
+        String errorCode;
+        String error = "";
+    }
+
+    /**
+     * State left by a harvest log.
+     */
+    static class LogState {
+        //length of the log up to the end of the last complete page
+        long length;
+        boolean pages;
+        String token;
+        String segmentDate = "";
+    }
+
+    String url;
+    String verb;
+    String set;
+    String format;
+    //name of the element holding the value of an entry for requests other than ListRecords
+    String valueElement;
+
+    public OAIHarvester(String url, String verb, String set, String format) {
+        this.url = url;
+        this.verb = verb;
+        this.set = set;
+        this.format = format;
+        if (verb.equals("ListSets")) {
+            valueElement = "setSpec";
+        } else if (verb.equals("ListMetadataFormats")) {
+            valueElement = "metadataPrefix";
+        } else if (verb.equals(LIST_IDENTIFIERS)) {
+            valueElement = "identifier";
+        } else {
+            valueElement = null;
+        }
+    }
+
+    /**
+     * @return true if the verb accepts a from date, so that a complete harvest can be extended with changed records
+     */
+    public boolean isSelective() {
+        return verb.equals(LIST_RECORDS) || verb.equals(LIST_IDENTIFIERS);
+    }
+
+    public URI getURI(String resumptionToken, String from) throws URISyntaxException {
+        URIBuilder urib = new URIBuilder(url).addParameter("verb", verb);
+        if (!resumptionToken.isEmpty()) {
+            urib.addParameter("resumptionToken", resumptionToken);
+        } else {
+            if (!format.isEmpty()) urib.addParameter("metadataPrefix", format);
+            if (!set.isEmpty()) urib.addParameter("set", set);
+            if (from != null && !from.isEmpty()) urib.addParameter("from", from);
+        }
+        return urib.build();
+    }
+
+    /**
+     * Harvest every page, replaying the pages recorded in a harvest log before making any request.
+     * @param log the harvest log, or null to harvest without one
+     */
+    public void harvest(File log, EntryHandler handler) throws IOException {
+        String token = "";
+        String from = null;
+        if (log != null) {
+            LogState state = replay(log, handler);
+            if (state.pages && state.token.isEmpty()) {
+                if (!isSelective()) return;
+                //the date of a response is in UTC; every repository supports day granularity
+                from = state.segmentDate.length() >= 10 ? state.segmentDate.substring(0, 10) : "";
+            } else if (state.pages) {
+                token = state.token;
+            }
+            try(FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+                ch.truncate(state.length);
+            }
+        }
+        try(Writer w = log == null ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(log, true), StandardCharsets.UTF_8))) {
+            if (w != null && log.length() == 0) {
+                writeLine(w, LOG_HEADER, url, verb, set, format);
+            }
+            boolean segment = token.isEmpty();
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            ForkJoinTask<Page> task = pool.submit(fetcher(token, from));
+            try {
+                while(task != null) {
+                    Page page = await(task);
+                    task = null;
+                    if (page.token != null) {
+                        task = pool.submit(fetcher(page.token, null));
+                    }
+                    if (w != null) {
+                        if (segment) writeLine(w, LOG_SEGMENT, page.responseDate);
+                        for(String[] vals: page.entries) {
+                            writeEntry(w, vals);
+                        }
+                        writeLine(w, LOG_TOKEN, page.token == null ? "" : page.token);
+                        w.flush();
+                    }
+                    segment = false;
+                    for(String[] vals: page.entries) {
+                        handler.entry(vals);
+                    }
+                }
+            } finally {
+                if (task != null) task.cancel(true);
+            }
+        }
+    }
+
+    Callable<Page> fetcher(final String token, final String from) {
+        return new Callable<Page>() {
+            public Page call() throws IOException, XMLStreamException, URISyntaxException {
+                return fetch(token, from);
+            }
+        };
+    }
+
+    static Page await(ForkJoinTask<Page> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Harvest interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Request and read one page.
+     */
+    Page fetch(String token, String from) throws IOException, XMLStreamException, URISyntaxException {
+        URI uri = getURI(token, from);
+        HttpURLConnection con = (HttpURLConnection) uri.toURL().openConnection();
+        con.setConnectTimeout(TIMEOUT);
+        con.setReadTimeout(TIMEOUT);
+        con.setRequestProperty("Accept-Encoding", "gzip");
+        try(InputStream is = con.getInputStream()) {
+            InputStream in = new BufferedInputStream(is, 64 * 1024);
+            if ("gzip".equalsIgnoreCase(con.getContentEncoding())) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            Page page = parse(in);
+            if (page.errorCode != null && !page.errorCode.equals("noRecordsMatch")) {
+                throw new IOException("OAI error " + page.errorCode + ": " + page.error + " " + uri);
+            }
+            return page;
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    static boolean isElement(XMLStreamReader xr, String name) {
+        String prefix = xr.getPrefix();
+        return (prefix == null || prefix.isEmpty()) && name.equals(xr.getLocalName());
+    }
+
+    /**
+     * Read a response.  Elements are matched by name as the DOM getElementsByTagName method would match them.
+     */
+    Page parse(InputStream in) throws XMLStreamException {
+        Page page = new Page();
+        XMLInputFactory xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        xif.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XMLStreamReader xr = xif.createXMLStreamReader(in);
+        String token = null;
+        String[] rec = null;
+        try {
+            while(xr.hasNext()) {
+                if (xr.next() != XMLStreamConstants.START_ELEMENT) continue;
+                if (isElement(xr, "responseDate")) {
+                    page.responseDate = xr.getElementText().trim();
+                } else if (isElement(xr, "error")) {
+                    page.errorCode = xr.getAttributeValue(null, "code");
+                    if (page.errorCode == null) page.errorCode = "";
+                    page.error = readText(xr);
+                } else if (isElement(xr, "resumptionToken")) {
+                    if (token == null) token = readText(xr);
+                } else if (valueElement == null) {
+                    if (isElement(xr, "record")) {
+                        rec = new String[]{"", "", ""};
+                        page.entries.add(rec);
+                        readRecord(xr, rec);
+                    }
+                } else if (isElement(xr, valueElement)) {
+                    page.entries.add(new String[]{readText(xr)});
+                }
+            }
+        } finally {
+            xr.close();
+        }
+        page.token = token == null || token.isEmpty() || token.endsWith("==") ? null : token;
+        return page;
+    }
+
+    /**
+     * Read the identifier, dc title and dc identifier of a record, leaving the reader at the end of the record.
+     */
+    static void readRecord(XMLStreamReader xr, String[] rec) throws XMLStreamException {
+        boolean id = false;
+        boolean title = false;
+        boolean dcid = false;
+        for(int depth = 1; depth > 0; ) {
+            int event = xr.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                if (!id && isElement(xr, "identifier")) {
+                    id = true;
+                    rec[0] = readText(xr);
+                } else if (!title && NS_DC.equals(xr.getNamespaceURI()) && xr.getLocalName().equals("title")) {
+                    title = true;
+                    rec[1] = readText(xr);
+                } else if (!dcid && NS_DC.equals(xr.getNamespaceURI()) && xr.getLocalName().equals("identifier")) {
+                    dcid = true;
+                    rec[2] = readText(xr);
+                } else {
+                    depth++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the text content of the current element, leaving the reader at its end
+     */
+    static String readText(XMLStreamReader xr) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        for(int depth = 1; depth > 0; ) {
+            int event = xr.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                sb.append(xr.getTextCharacters(), xr.getTextStart(), xr.getTextLength());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hand over the entries of each complete page of a harvest log.  A log written for a different request is discarded.
+     */
+    LogState replay(File log, EntryHandler handler) throws IOException {
+        LogState state = new LogState();
+        state.token = "";
+        if (!log.exists()) return state;
+        List<String[]> entries = new ArrayList<String[]>();
+        String segmentDate = "";
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8))) {
+            long pos = 0;
+            boolean header = false;
+            for(String line = br.readLine(); line != null; line = br.readLine()) {
+                //the log is written with line feeds only
+                pos += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                //a line cut short by an interrupted harvest
+                if (pos > log.length()) break;
+                String[] vals = line.split("\t", -1);
+                for(int i=0; i<vals.length; i++) {
+                    vals[i] = unescape(vals[i]);
+                }
+                if (!header) {
+                    if (vals.length != 5 || !vals[0].equals(LOG_HEADER) || !vals[1].equals(url) || !vals[2].equals(verb)
+                            || !vals[3].equals(set) || !vals[4].equals(format)) {
+                        break;
+                    }
+                    header = true;
+                    state.length = pos;
+                } else if (vals[0].equals(LOG_SEGMENT)) {
+                    segmentDate = vals.length > 1 ? vals[1] : "";
+                } else if (vals[0].equals(LOG_ENTRY)) {
+                    String[] entry = new String[vals.length - 1];
+                    System.arraycopy(vals, 1, entry, 0, entry.length);
+                    entries.add(entry);
+                } else if (vals[0].equals(LOG_TOKEN)) {
+                    for(String[] entry: entries) {
+                        handler.entry(entry);
+                    }
+                    entries.clear();
+                    state.pages = true;
+                    state.token = vals.length > 1 ? vals[1] : "";
+                    state.segmentDate = segmentDate;
+                    state.length = pos;
+                } else {
+                    break;
+                }
+            }
+        }
+        return state;
+    }
+
+    void writeEntry(Writer w, String[] vals) throws IOException {
+        w.write(LOG_ENTRY);
+        for(String val: vals) {
+            w.write('\t');
+            w.write(escape(val));
+        }
+        w.write('\n');
+    }
+
+    void writeLine(Writer w, String... vals) throws IOException {
+        for(int i=0; i<vals.length; i++) {
+            if (i > 0) w.write('\t');
+            w.write(escape(vals[i]));
+        }
+        w.write('\n');
+    }
+
+    static String escape(String s) {
+        if (s.indexOf('\\') < 0 && s.indexOf('\t') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') sb.append("\\\\");
+            else if (c == '\t') sb.append("\\t");
+            else if (c == '\n') sb.append("\\n");
+            else if (c == '\r') sb.append("\\r");
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i);
+                if (c == 't') c = '\t';
+                else if (c == 'n') c = '\n';
+                else if (c == 'r') c = '\r';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package edu.georgetown.library.fileAnalyzer.importer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the OAIHarvester against a local stub repository serving three pages of identifiers.
+ * <p>
+ * The stub compresses its responses when gzip is accepted and can fail a page once, so that the check covers
+ * paging with resumption tokens, compressed responses, continuing an interrupted harvest from its log
+ * and extending a complete harvest with changed records.
+ * Run with no arguments; the exit status is 1 if a check fails.
+ * @author TBrady
+ *
+ */
+public class OAIHarvesterCheck {
+    static final String[] TOKENS = {"", "t1", "t2"};
+
+    static class StubRepository implements HttpHandler {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger gzipped = new AtomicInteger();
+        volatile int failPage = -1;
+
+        public void handle(HttpExchange ex) throws IOException {
+            requests.incrementAndGet();
+            String query = ex.getRequestURI().getQuery();
+            StringBuilder sb = new StringBuilder();
+            sb.append("<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><responseDate>2026-10-01T12:00:00Z</responseDate>");
+            if (query.contains("from=")) {
+                sb.append("<error code=\"noRecordsMatch\">No changes</error>");
+            } else {
+                int page = 0;
+                for(int i=1; i<TOKENS.length; i++) {
+                    if (query.contains("resumptionToken=" + TOKENS[i])) page = i;
+                }
+                if (page == failPage) {
+                    failPage = -1;
+                    ex.sendResponseHeaders(500, -1);
+                    ex.close();
+                    return;
+                }
+                sb.append("<ListIdentifiers>");
+                for(int i=0; i<2; i++) {
+                    sb.append("<header><identifier>oai:stub:").append(page * 2 + i).append("</identifier></header>");
+                }
+                String next = page + 1 < TOKENS.length ? TOKENS[page + 1] : "";
+                sb.append("<resumptionToken>").append(next).append("</resumptionToken></ListIdentifiers>");
+            }
+            sb.append("</OAI-PMH>");
+            byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+            String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+            if (accept != null && accept.contains("gzip")) {
+                gzipped.incrementAndGet();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try(GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                    gz.write(body);
+                }
+                body = bos.toByteArray();
+                ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+            ex.sendResponseHeaders(200, body.length);
+            try(OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    static int failures = 0;
+
+    static void check(boolean ok, String desc) {
+        System.out.println((ok ? "ok     " : "FAILED ") + desc);
+        if (!ok) failures++;
+    }
+
+    static List<String> harvest(OAIHarvester harvester, File log) throws IOException {
+        final List<String> ids = new ArrayList<String>();
+        harvester.harvest(log, new OAIHarvester.EntryHandler() {
+            public void entry(String[] vals) {
+                ids.add(vals[0]);
+            }
+        });
+        return ids;
+    }
+
+    public static void main(String[] args) throws IOException {
+        StubRepository stub = new StubRepository();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oai", stub);
+        server.start();
+        File log = File.createTempFile("oai-harvest", ".txt");
+        log.delete();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/oai";
+            OAIHarvester harvester = new OAIHarvester(url, OAIHarvester.LIST_IDENTIFIERS, "", "oai_dc");
+
+            List<String> ids = harvest(harvester, null);
+            check(ids.size() == 6 && ids.get(5).equals("oai:stub:5"), "every page is harvested by following resumption tokens");
+            check(stub.gzipped.get() == 3, "compressed responses are read");
+
+            stub.failPage = 2;
+            stub.requests.set(0);
+            try {
+                harvest(harvester, log);
+                check(false, "a failed request stops the harvest");
+            } catch (IOException e) {
+                check(stub.requests.get() == 3, "a failed request stops the harvest");
+            }
+
+            stub.requests.set(0);
+            ids = harvest(harvester, log);
+            check(ids.size() == 6 && stub.requests.get() == 1, "an interrupted harvest replays its log and requests only the remaining page");
+
+            stub.requests.set(0);
+            ids = harvest(harvester, log);
+            check(ids.size() == 6 && stub.requests.get() == 1, "a complete harvest replays its log and requests only changed records");
+        } finally {
+            server.stop(0);
+            log.delete();
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+}
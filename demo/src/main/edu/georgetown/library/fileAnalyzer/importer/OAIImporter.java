@@ -4,6 +4,7 @@ import gov.nara.nwts.ftapp.ActionResult;
 import gov.nara.nwts.ftapp.FTDriver;
 import gov.nara.nwts.ftapp.Timer;
 import gov.nara.nwts.ftapp.ftprop.FTPropEnum;
+import gov.nara.nwts.ftapp.ftprop.FTPropFile;
 import gov.nara.nwts.ftapp.ftprop.FTPropString;
 import gov.nara.nwts.ftapp.importer.DefaultImporter;
 import gov.nara.nwts.ftapp.stats.Stats;
@@ -14,23 +15,10 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.http.client.utils.URIBuilder;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-
-import edu.georgetown.library.fileAnalyzer.util.XMLUtil;
-
 public class OAIImporter extends DefaultImporter {
     private enum Verbs {ListMetadataFormats,ListSets,ListRecords,ListIdentifiers;}
     private static enum DemoStatsItems implements StatsItemEnum {
@@ -66,6 +54,8 @@ public class OAIImporter extends DefaultImporter {
     public static final String VERB = "oai-verb";
     public static final String SET = "oai-set";
     public static final String FORMAT = "oai-format";
+    public static final String HARVEST_LOG = "oai-harvest-log";
+    private FTPropFile harvestLog;
 	public OAIImporter(FTDriver dt) {
 		super(dt);
         ftprops.add(new FTPropString(dt, this.getClass().getSimpleName(),  OAI_URL, OAI_URL,
@@ -75,6 +65,9 @@ public class OAIImporter extends DefaultImporter {
                 "OAI Set", ""));
         ftprops.add(new FTPropString(dt, this.getClass().getSimpleName(),  FORMAT, FORMAT,
                 "OAI Format", "oai_dc"));
+        harvestLog = new FTPropFile(dt, this.getClass().getSimpleName(),  HARVEST_LOG, HARVEST_LOG,
+                "Harvest log replayed and extended by later harvests, Optional", "");
+        ftprops.add(harvestLog);
 	}
 
 	public ActionResult importFile(File selectedFile) throws IOException {
@@ -85,26 +78,33 @@ public class OAIImporter extends DefaultImporter {
         Verbs verb = (Verbs)this.getProperty(VERB);
         
         if (!url.isEmpty()) {
-            for(String resumptionToken = ""; resumptionToken != null; resumptionToken = processRequest(types, url, resumptionToken));
+            harvest(types, url, verb);
         }
         
         details.createFilters(types);
 		return new ActionResult(selectedFile, verb.toString(), this.toString(), details, types, true, timer.getDuration());
 	}
 	
-    public String getText(Node n) {
-        return getText(n, "");
-    }
-	public String getText(Node n, String def) {
-	    return n instanceof Element ? ((Element)n).getTextContent() : def;
-	}
-	
-    public String getText(NodeList nl, String def) {
-        return nl.getLength() > 0 ? getText(nl.item(0), def) : def;
-    }
-
-    public String getText(NodeList nl) {
-        return getText(nl, "");
+    /**
+     * Harvest every page of the request, replaying and extending the harvest log if one is set.
+     */
+    public void harvest(final TreeMap<String,Stats> types, String url, final Verbs verb) {
+        String set = this.getProperty(SET).toString();
+        String format = this.getProperty(FORMAT).toString();
+        OAIHarvester harvester = new OAIHarvester(url, verb.toString(), set, format);
+        try {
+            harvester.harvest(harvestLog.getFile(), new OAIHarvester.EntryHandler() {
+                public void entry(String[] vals) {
+                    Stats s = addStats(types, vals[0]);
+                    if (verb == Verbs.ListRecords) {
+                        s.setVal(DemoStatsItems.Title, vals[1]);
+                        s.setVal(DemoStatsItems.Identifier, vals[2]);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
     
     public Stats addStats(TreeMap<String,Stats> types, String val) {
@@ -113,69 +113,6 @@ public class OAIImporter extends DefaultImporter {
         return stat;
     }
     
-    public NodeList getNodes(Document d, Verbs verb) {
-        if (verb == Verbs.ListSets) {
-            return d.getElementsByTagName("setSpec");
-        } else if (verb == Verbs.ListMetadataFormats) {
-            return d.getElementsByTagName("metadataPrefix");
-        } else if (verb == Verbs.ListRecords) {
-            return d.getElementsByTagName("record");
-        } else if (verb == Verbs.ListIdentifiers) {
-            return d.getElementsByTagName("identifier");
-        } else {
-            return d.getElementsByTagName("xxxemptyxxx");            
-        }
-        
-    }
-
-	public String processRequest(TreeMap<String,Stats> types, String url, String resumptionToken) {
-        Verbs verb = (Verbs)this.getProperty(VERB);
-        String set = this.getProperty(SET).toString();
-        String format = this.getProperty(FORMAT).toString();
-        String DC = "http://purl.org/dc/elements/1.1/";
-	    
-        try {
-            URIBuilder urib = new URIBuilder(url).addParameter("verb", verb.toString());
-            if (!resumptionToken.isEmpty()) {
-                urib.addParameter("resumptionToken", resumptionToken);
-            } else {
-                if (!format.isEmpty()) urib.addParameter("metadataPrefix", format);
-                if (!set.isEmpty()) urib.addParameter("set", set);
-            }
-            URI uri = urib.build();
-            System.out.println(uri);
-            HttpURLConnection con= (HttpURLConnection) uri.toURL().openConnection();
-            
-            Document d = XMLUtil.db_ns.parse(con.getInputStream());
-            NodeList nl = getNodes(d, verb);
-            
-            if (verb == Verbs.ListRecords) {
-                for(int i=0; i< nl.getLength(); i++) {
-                    Element rec = (Element)nl.item(i);
-                    String t = getText(rec.getElementsByTagNameNS(DC, "title"));
-                    String id = getText(rec.getElementsByTagName("identifier"));
-                    String dcid = getText(rec.getElementsByTagNameNS(DC, "identifier"));
-                    Stats s = this.addStats(types, id);
-                    s.setVal(DemoStatsItems.Title, t);
-                    s.setVal(DemoStatsItems.Identifier, dcid);
-                    System.out.println(types.size() + "\t"+id+"\t"+t);
-                }                
-            } else {
-                for(int i=0; i< nl.getLength(); i++) {
-                    Stats s = addStats(types, getText(nl.item(i)));
-                    if (verb == Verbs.ListIdentifiers) {
-                    }
-                }                
-            }
-            String rt = getText(d.getElementsByTagName("resumptionToken"));
-            return rt.isEmpty() || rt.endsWith("==") ? null : rt;
-        } catch (URISyntaxException|IOException | SAXException e) {
-            e.printStackTrace();
-        }
-        return null;
-	}
-	
-	
 	public String toString() {
 		return "OAI Importer";
 	}
@@ -0,0 +1,314 @@
+package edu.georgetown.library.fileAnalyzer.importer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.marc4j.MarcException;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.Record;
+
+/**
+ * Reads the undecoded bytes of one ISO 2709 (MARC) record at a time.
+ * <p>
+ * A record normally ends where the length held in the first 5 bytes of its leader says it ends.
+ * When that length is not a number or does not end on a record terminator, the record is taken to end at the next record terminator.
+ * Records are only decoded on request, so a file may be read once while records are copied, inspected or handed to other threads.
+ * <p>
+ * {@link #process(RecordProcessor)} decodes and examines batches of records on the common fork-join pool and merges the results on the calling thread in record order.
+ * @author TBrady
+ *
+ */
+public class RawMarcReader implements Closeable
+{
+	public static final int RECORD_TERMINATOR = 0x1D;
+	public static final int LEADER_LENGTH = 24;
+	public static final int MAX_RECORD_LENGTH = 99999;
+	public static final int BATCH_SIZE = 500;
+
+	/**
+	 * Examines records on pool threads and merges the result for each record on the calling thread, in record order.
+	 */
+	public static abstract class RecordProcessor<T>
+	{
+		/**
+		 * Examine a record.  Records are examined concurrently and in no particular order.
+		 * @param num the number of the record within the input, starting at 0
+		 */
+		public abstract T process(int num, byte[] rec, Decoder decoder);
+
+		/**
+		 * Add the result for a record.  Results are merged one at a time in record order.
+		 */
+		public abstract void merge(T result) throws IOException;
+
+		/**
+		 * @return the decoder used by each pool thread, by default a permissive reader converting to Unicode
+		 */
+		public Decoder createDecoder()
+		{
+			return new Decoder(true, true);
+		}
+	}
+
+	/**
+	 * Decodes records one at a time with a single marc4j reader so that its character converter and code tables are only loaded once.
+	 * A decoder may only be used by one thread at a time.
+	 */
+	public static class Decoder
+	{
+		boolean permissive;
+		boolean toUtf8;
+		RecordStream feed;
+		MarcReader reader;
+
+		public Decoder(boolean permissive, boolean toUtf8)
+		{
+			this.permissive = permissive;
+			this.toUtf8 = toUtf8;
+			reset();
+		}
+
+		void reset()
+		{
+			feed = new RecordStream();
+			reader = permissive ? new MarcPermissiveStreamReader(feed, true, toUtf8) : new MarcStreamReader(feed);
+		}
+
+		/**
+		 * @return the record or null if no record could be decoded, including a malformed record rejected by a strict reader
+		 */
+		public Record decode(byte[] rec)
+		{
+			feed.set(rec);
+			Record record = null;
+			try
+			{
+				record = reader.hasNext() ? reader.next() : null;
+			} catch (MarcException e)
+			{
+				record = null;
+			} finally
+			{
+				// bytes of a malformed record left unread must not be taken as the start of the next record
+				if (record == null || reader.hasNext()) reset();
+			}
+			return record;
+		}
+	}
+
+	/**
+	 * Stream supplying the bytes of the record being decoded.
+	 */
+	static class RecordStream extends InputStream
+	{
+		byte[] buf = new byte[0];
+		int pos;
+
+		void set(byte[] rec)
+		{
+			buf = rec;
+			pos = 0;
+		}
+
+		public int read()
+		{
+			return pos < buf.length ? buf[pos++] & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0) return 0;
+			if (pos >= buf.length) return -1;
+			int n = Math.min(len, buf.length - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		public int available()
+		{
+			return buf.length - pos;
+		}
+	}
+
+	BufferedInputStream in;
+	int count = 0;
+
+	public RawMarcReader(InputStream is)
+	{
+		in = new BufferedInputStream(is, 128 * 1024);
+	}
+
+	/**
+	 * @return the bytes of the next record including its terminator, or null at the end of the input
+	 */
+	public byte[] next() throws IOException
+	{
+		in.mark(MAX_RECORD_LENGTH + 1);
+		byte[] buf = new byte[LEADER_LENGTH];
+		int n = readFully(buf, 0, 5);
+		if (n == 0) return null;
+		int len = recordLength(buf, n);
+		if (len >= LEADER_LENGTH)
+		{
+			buf = Arrays.copyOf(buf, len);
+			n += readFully(buf, n, len - n);
+			if (n == len && buf[len - 1] == RECORD_TERMINATOR)
+			{
+				count++;
+				return buf;
+			}
+		}
+
+		// the leader cannot be trusted, read to the next terminator
+		in.reset();
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(4096);
+		for(int b = in.read(); b != -1; b = in.read())
+		{
+			bout.write(b);
+			if (b == RECORD_TERMINATOR) break;
+		}
+		if (bout.size() == 0) return null;
+		count++;
+		return bout.toByteArray();
+	}
+
+	/**
+	 * @return the number of records read so far
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	int readFully(byte[] buf, int off, int len) throws IOException
+	{
+		int total = 0;
+		while(total < len)
+		{
+			int n = in.read(buf, off + total, len - total);
+			if (n < 0) break;
+			total += n;
+		}
+		return total;
+	}
+
+	static int recordLength(byte[] buf, int n)
+	{
+		if (n < 5) return -1;
+		int len = 0;
+		for(int i = 0; i < 5; i++)
+		{
+			if (buf[i] < '0' || buf[i] > '9') return -1;
+			len = len * 10 + (buf[i] - '0');
+		}
+		return len;
+	}
+
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	/**
+	 * @return the character coding scheme of a record (leader position 9), ' ' for MARC-8 and 'a' for Unicode, or 0 if the record has no leader
+	 */
+	public static char getCharCodingScheme(byte[] rec)
+	{
+		return rec.length < LEADER_LENGTH ? 0 : (char)(rec[9] & 0xFF);
+	}
+
+	/**
+	 * @return the leader of a record as read, or an empty string if the record is too short to hold a leader
+	 */
+	public static String getLeader(byte[] rec)
+	{
+		return rec.length < LEADER_LENGTH ? "" : new String(rec, 0, LEADER_LENGTH, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Examine every remaining record in parallel batches.  A limited number of batches are read ahead of the batch being merged so that memory use is bounded.
+	 */
+	public <T> void process(final RecordProcessor<T> proc) throws IOException
+	{
+		final ThreadLocal<Decoder> decoders = new ThreadLocal<Decoder>() {
+			protected Decoder initialValue()
+			{
+				return proc.createDecoder();
+			}
+		};
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int ahead = Math.max(2, pool.getParallelism() * 2);
+		ArrayDeque<ForkJoinTask<List<T>>> pending = new ArrayDeque<ForkJoinTask<List<T>>>();
+		boolean eof = false;
+		try
+		{
+			while(!eof || !pending.isEmpty())
+			{
+				while(!eof && pending.size() < ahead)
+				{
+					final int first = count;
+					final List<byte[]> batch = new ArrayList<byte[]>(BATCH_SIZE);
+					for(byte[] rec = next(); rec != null; rec = next())
+					{
+						batch.add(rec);
+						if (batch.size() == BATCH_SIZE) break;
+					}
+					if (batch.size() < BATCH_SIZE) eof = true;
+					if (batch.isEmpty()) break;
+					pending.add(pool.submit(new Callable<List<T>>() {
+						public List<T> call()
+						{
+							Decoder decoder = decoders.get();
+							List<T> results = new ArrayList<T>(batch.size());
+							for(int i = 0; i < batch.size(); i++)
+							{
+								results.add(proc.process(first + i, batch.get(i), decoder));
+							}
+							return results;
+						}
+					}));
+				}
+				ForkJoinTask<List<T>> task = pending.poll();
+				if (task == null) break;
+				List<T> results;
+				try
+				{
+					results = task.get();
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException("Record processing interrupted", e);
+				} catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+					throw new IOException(e.getCause());
+				}
+				for(T result: results)
+				{
+					proc.merge(result);
+				}
+			}
+		} finally
+		{
+			for(ForkJoinTask<List<T>> task: pending)
+			{
+				task.cancel(true);
+			}
+		}
+	}
+}
@@ -133,6 +133,10 @@ public class IngestInventory extends DefaultFileTest {
     }
 
     
+    @Override public boolean hasSharedDetails() {
+    	return true;
+    }
+
     @Override public InitializationStatus init() {
     	details = StatsItemConfig.create(InventoryStatsItems.class);
     	for(FTProp prop: ftprops) {
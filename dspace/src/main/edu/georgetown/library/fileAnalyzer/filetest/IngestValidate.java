@@ -146,6 +146,11 @@ public class IngestValidate extends DefaultFileTest {
 		public DSpaceStats create(String key) {return new DSpaceStats(key);}
 	}
 	public static StatsItemConfig details = StatsItemConfig.create(DSpaceStatsItems.class);
+
+    @Override public boolean hasSharedDetails() {
+    	return true;
+    }
+
     @Override public InitializationStatus init() {
     	details = StatsItemConfig.create(DSpaceStatsItems.class);
     	for(FTProp prop: ftprops) {
@@ -194,7 +199,7 @@ public class IngestValidate extends DefaultFileTest {
 				} else if (file.getName().equals(IngestFolderCreate.DUBLINCORE)) {
 					dc = file;
 					try {
-						Document d = XMLUtil.db.parse(dc);
+						Document d = XMLUtil.getDocumentBuilder().parse(dc);
 						if (d!=null) {
 							loadMetadata(d);
 						}
@@ -213,7 +218,7 @@ public class IngestValidate extends DefaultFileTest {
 					otherSchemas += m.group(1) + " ";
 					if (m.matches()) {
 						try {
-							Document d = XMLUtil.db.parse(file);
+							Document d = XMLUtil.getDocumentBuilder().parse(file);
 							if (d!=null) {
 								loadMetadata(d);
 							}
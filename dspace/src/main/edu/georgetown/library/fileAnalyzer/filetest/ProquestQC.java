@@ -159,7 +159,7 @@ public class ProquestQC extends DefaultFileTest {
 		XPATH(String s, QName rt) {
 			try {
 				this.rt = rt;
-				XPath xpath = XMLUtil.xf.newXPath();
+				XPath xpath = XMLUtil.newXPath();
 				
 				xpath.setNamespaceContext(new NamespaceContext(){
 					public String getNamespaceURI(String prefix) {
@@ -274,7 +274,7 @@ public class ProquestQC extends DefaultFileTest {
 		stats.setVal(ProquestQCStatsItems.File, f.getName());
 		
 		try {
-			Document d = XMLUtil.db_ns.parse(f);
+			Document d = XMLUtil.getNamespaceDocumentBuilder().parse(f);
 			Element root = d.getDocumentElement();
 			if (root.getTagName().equals("DISS_submission")) {
 				stats.setVal(ProquestQCStatsItems.Type, TYPE.ProQuest);
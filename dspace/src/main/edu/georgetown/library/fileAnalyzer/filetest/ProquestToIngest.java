@@ -149,7 +149,7 @@ public class ProquestToIngest extends DefaultFileTest {
 	private void setLocalMetadata(Document d, File zout, Stats stats) throws TransformerException, IOException, SAXException {
         File gu = getLocalSchemaFile(zout);
         XMLUtil.doTransform(d, gu, GUProquestURIResolver.INSTANCE, getLocalXslName(), marcUtil.getXslParm());   
-        Document gd =  XMLUtil.db.parse(gu);
+        Document gd =  XMLUtil.getDocumentBuilder().parse(gu);
         NodeList nl = gd.getElementsByTagName("dcvalue");
         for(int i=0; i<nl.getLength(); i++) {
             Element elem = (Element)nl.item(i);
@@ -190,7 +190,7 @@ public class ProquestToIngest extends DefaultFileTest {
             Element elem = (Element)nl.item(0);
             stats.setVal(ProquestStatsItems.Title, elem.getTextContent());
         }
-        XPath xp = XMLUtil.xf.newXPath();
+        XPath xp = XMLUtil.newXPath();
         try {
             stats.setVal(ProquestStatsItems.Author, "--");
             String author = xp.evaluate("concat(/DISS_submission/DISS_authorship/DISS_author/DISS_name/DISS_surname/text(),', ',/DISS_submission/DISS_authorship/DISS_author/DISS_name/DISS_fname/text())", d);
@@ -253,7 +253,7 @@ public class ProquestToIngest extends DefaultFileTest {
 				if (ze.getName().toLowerCase().endsWith(".xml") && (!ze.getName().contains("/"))) {
 					try {
 						bXmlFound = true;
-						Document d = XMLUtil.db.parse(zeout);
+						Document d = XMLUtil.getDocumentBuilder().parse(zeout);
 						stats.setVal(ProquestStatsItems.XmlStat, OVERALL_STAT.PASS);
 						
 						File dc = new File(zout, "dublin_core.xml");
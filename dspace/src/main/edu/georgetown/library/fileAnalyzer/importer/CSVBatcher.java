@@ -1,14 +1,19 @@
 package edu.georgetown.library.fileAnalyzer.importer;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import gov.nara.nwts.ftapp.ActionResult;
 import gov.nara.nwts.ftapp.FTDriver;
@@ -16,6 +21,7 @@ import gov.nara.nwts.ftapp.Timer;
 import gov.nara.nwts.ftapp.YN;
 import gov.nara.nwts.ftapp.ftprop.FTPropEnum;
 import gov.nara.nwts.ftapp.importer.DefaultImporter;
+import gov.nara.nwts.ftapp.importer.MappedDelimitedFile;
 import gov.nara.nwts.ftapp.stats.Stats;
 import gov.nara.nwts.ftapp.stats.StatsGenerator;
 import gov.nara.nwts.ftapp.stats.StatsItem;
@@ -24,6 +30,9 @@ import gov.nara.nwts.ftapp.stats.StatsItemEnum;
 
 /**
  * Abstract class handling the import of a character-delimited text file allowing for individual values to be wrapped by quotation marks.
+ * <p>
+ * The file is mapped into memory and split on record boundaries, so a quoted value containing a line break is never divided between batches.
+ * Batch files are written in parallel, with a limited number of batches outstanding at a time.
  * @author TBrady
  *
  */
@@ -77,52 +86,69 @@ public class CSVBatcher extends DefaultImporter {
 	public ActionResult importFile(File selectedFile) throws IOException {
 		boolean  header = (YN)getProperty(HEADROW) == YN.Y;
 		int batchSize = ((SIZE)getProperty(BATCHSIZE)).size;
-		BufferedReader br = new BufferedReader(new FileReader(selectedFile));
-		String headRow = header ? br.readLine() + "\n" : "";
-		int outFileCount = 0;
-		int rec = 0;
-		int currec = 0;
-		
 		Timer timer = new Timer();
 		TreeMap<String,Stats> types = new TreeMap<String,Stats>();
 
 		NumberFormat nf = NumberFormat.getIntegerInstance();
 		nf.setMinimumIntegerDigits(4);
 		nf.setGroupingUsed(false);
-    	BufferedWriter bw = null;
-		String outFileName = "";
 		
-		for(String line = br.readLine(); line!=null; line=br.readLine()) {
-			if (rec % batchSize == 0) {
-				outFileCount++;
-				if (bw!=null) {
-					bw.close();
+		try(final MappedDelimitedFile mdf = new MappedDelimitedFile(selectedFile, ",")) {
+			long start = header ? mdf.nextRecord(0) : 0;
+			ByteArrayOutputStream hbuf = new ByteArrayOutputStream();
+			if (header && start > 0) mdf.copyLines(0, start, hbuf);
+			final byte[] headRow = hbuf.toByteArray();
+
+			List<long[]> batches = mdf.splitRecords(start, batchSize);
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			int ahead = Math.max(2, pool.getParallelism() * 2);
+			ArrayDeque<ForkJoinTask<Void>> pending = new ArrayDeque<ForkJoinTask<Void>>();
+			try {
+				for(int i=0; i<batches.size(); i++) {
+					if (pending.size() >= ahead) {
+						await(pending.poll());
+					}
+					final long[] batch = batches.get(i);
+					String outFileName = selectedFile.getName()+"_"+nf.format(i + 1)+".csv";
+					final File outFile = new File(selectedFile.getParent(), outFileName);
+					pending.add(pool.submit(new Callable<Void>(){
+						public Void call() throws IOException {
+							try(OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+								os.write(headRow);
+								mdf.copyLines(batch[0], batch[1], os);
+							}
+							return null;
+						}
+					}));
 					Stats stats = Generator.INSTANCE.create(outFileName);
-					stats.setVal(BatcherStatsItems.Count, currec);
+					stats.setVal(BatcherStatsItems.Count, (int)batch[2]);
 					types.put(outFileName, stats);
 				}
-				outFileName = selectedFile.getName()+"_"+nf.format(outFileCount)+".csv";
-				File outFile = new File(selectedFile.getParent(), outFileName);
-				currec = 0;
-				bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile),"UTF-8"));
-				if (header) bw.write(headRow);
+				while(!pending.isEmpty()) {
+					await(pending.poll());
+				}
+			} catch (IOException e) {
+				for(ForkJoinTask<Void> task: pending) {
+					task.cancel(true);
+				}
+				throw e;
 			}
-			bw.write(line);
-			bw.write("\n");
-			rec++;
-			currec++;
-		}
-		br.close();
-		if (bw!=null) {
-			bw.close();
-			Stats stats = Generator.INSTANCE.create(outFileName);
-			stats.setVal(BatcherStatsItems.Count, currec);
-			types.put(outFileName, stats);
 		}
 		
 		return new ActionResult(selectedFile, selectedFile.getName(), this.toString(), details, types, true, timer.getDuration());
 	}
 	
+	static void await(ForkJoinTask<Void> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Batching interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
 	public String toString() {
 		return "Batch CSV File";
 	}
@@ -164,7 +164,7 @@ public class DSpaceMetadata2Marc extends DefaultImporter {
 		DelimitedFileReader dfr = new DelimitedFileReader(selectedFile, ",");
 		HashMap<Integer, DSpace2MarcStatsItems> colMap = new HashMap<Integer, DSpace2MarcStatsItems>();
 
-		Document collDoc = XMLUtil.db.newDocument();		
+		Document collDoc = XMLUtil.getDocumentBuilder().newDocument();		
 		Element collDocRoot = collDoc.createElementNS("http://www.loc.gov/MARC21/slim","marc:collection");
 		collDocRoot.setAttributeNS("http://www.w3.org/2001/XMLSchema-instance", "xsi:schemaLocation", "http://www.loc.gov/MARC21/slim http://www.loc.gov/standards/marcxml/schema/MARC21slim.xsd");
 		collDoc.appendChild(collDocRoot);
@@ -217,7 +217,7 @@ public class DSpaceMetadata2Marc extends DefaultImporter {
 				continue;
 			}
 
-			Document d = XMLUtil.db.newDocument();
+			Document d = XMLUtil.getDocumentBuilder().newDocument();
 			Element root = d.createElement("dublin_core");
 			root.setAttribute("schema", "dc");
 			d.appendChild(root);
@@ -243,7 +243,7 @@ public class DSpaceMetadata2Marc extends DefaultImporter {
 			try {
 				XMLUtil.doTransform(d, f, GUProquestURIResolver.INSTANCE,
 						"dc2marc.xsl", marcUtil.getXslParm());
-				Document md = XMLUtil.db.parse(f);
+				Document md = XMLUtil.getDocumentBuilder().parse(f);
 				collDocRoot.appendChild(collDoc.importNode(md.getDocumentElement(), true));
 			} catch (TransformerException e) {
 				e.printStackTrace();
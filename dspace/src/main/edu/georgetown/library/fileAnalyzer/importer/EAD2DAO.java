@@ -1,11 +1,17 @@
 package edu.georgetown.library.fileAnalyzer.importer;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.Vector;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
 import org.w3c.dom.Document;
@@ -76,6 +82,9 @@ public class EAD2DAO extends DefaultImporter {
             .create(EAD2DAOStatsItems.class);
     
     public static enum TF {TRUE,FALSE}
+    /** columns written by ead-dao.xsl */
+    public static final String[] COLUMNS = {"Field name", "EAD ID", "REF ID", "Digital Object ID", "Digital Object Title",
+            "Publish Digital Object Record", "File URL of Linked-to digital object", "File URL of Thumbnail"};
     public static enum EAD_MATCHER {
         TITLE(4),
         AS_REFID(2);
@@ -197,40 +206,78 @@ public class EAD2DAO extends DefaultImporter {
         TreeMap<String, Stats> types = new TreeMap<String, Stats>();
         
         try {
-            Document d = XMLUtil.db_ns.parse(selectedFile);
             File csv = new File(selectedFile.getParent(), selectedFile.getName()+".csv");
-            XMLUtil.doTransform(d, csv, "edu/georgetown/library/fileAnalyzer/ead-dao.xsl", params);
-            DelimitedFileReader dfr = new DelimitedFileReader(csv, ",");
-            Vector<String> header = dfr.getRow();
-            int rownum = 1_000_000;
-            for(Vector<String>row=dfr.getRow(); row!=null; row=dfr.getRow()) {
-                String key = ""+rownum++;
-                Stats stats = Generator.INSTANCE.create(key);
-                types.put(key, stats);
-                if (row.size() >= 8) {
-                    String matchkey = row.get(matcher.index);
-                    stats.setVal(EAD2DAOStatsItems.Field_Name, row.get(0));
-                    stats.setVal(EAD2DAOStatsItems.EAD_ID, row.get(1));
-                    stats.setVal(EAD2DAOStatsItems.REF_ID, row.get(2));
-                    stats.setVal(EAD2DAOStatsItems.DigitalObjectId, getMapValue(matchkey, i_dao, row.get(3)));
-                    stats.setVal(EAD2DAOStatsItems.DigitalObjectTitle, getMapValue(matchkey, i_name, row.get(4)));
-                    stats.setVal(EAD2DAOStatsItems.PublishDAO, row.get(5));
-                    stats.setVal(EAD2DAOStatsItems.DAOLink, getMapValue(matchkey, i_link, row.get(6)));
-                    stats.setVal(EAD2DAOStatsItems.DAOThumbnail, getMapValue(matchkey, i_thumb, row.get(7)));
-                }
-                for(int i=0; i<header.size(); i++) {
-                    String s = row.size() > i ? row.get(i) : "";
-                    String col = header.get(i);
-                    stats.appendKeyVal(details.getByKey(col), s);
+            if (EADStreamReader.isLarge(selectedFile)) {
+                streamFile(selectedFile, csv, matcher, types);
+            } else {
+                Document d = XMLUtil.getNamespaceDocumentBuilder().parse(selectedFile);
+                XMLUtil.doTransform(d, csv, "edu/georgetown/library/fileAnalyzer/ead-dao.xsl", params);
+                DelimitedFileReader dfr = new DelimitedFileReader(csv, ",");
+                Vector<String> header = dfr.getRow();
+                int rownum = 1_000_000;
+                for(Vector<String>row=dfr.getRow(); row!=null; row=dfr.getRow()) {
+                    addRow(types, header, row, matcher, rownum++);
                 }
             }
         } catch (SAXException e) {
             e.printStackTrace();
         } catch (TransformerException e) {
             e.printStackTrace();
+        } catch (XMLStreamException e) {
+            e.printStackTrace();
         }
         return new ActionResult(selectedFile, "EAD2DAO",
                 this.toString(), details, types, true, timer.getDuration());
     }
 
+    public void addRow(TreeMap<String, Stats> types, Vector<String> header, Vector<String> row, EAD_MATCHER matcher, int rownum) {
+        String key = ""+rownum;
+        Stats stats = Generator.INSTANCE.create(key);
+        types.put(key, stats);
+        if (row.size() >= 8) {
+            String matchkey = row.get(matcher.index);
+            stats.setVal(EAD2DAOStatsItems.Field_Name, row.get(0));
+            stats.setVal(EAD2DAOStatsItems.EAD_ID, row.get(1));
+            stats.setVal(EAD2DAOStatsItems.REF_ID, row.get(2));
+            stats.setVal(EAD2DAOStatsItems.DigitalObjectId, getMapValue(matchkey, i_dao, row.get(3)));
+            stats.setVal(EAD2DAOStatsItems.DigitalObjectTitle, getMapValue(matchkey, i_name, row.get(4)));
+            stats.setVal(EAD2DAOStatsItems.PublishDAO, row.get(5));
+            stats.setVal(EAD2DAOStatsItems.DAOLink, getMapValue(matchkey, i_link, row.get(6)));
+            stats.setVal(EAD2DAOStatsItems.DAOThumbnail, getMapValue(matchkey, i_thumb, row.get(7)));
+        }
+        for(int i=0; i<header.size(); i++) {
+            String s = row.size() > i ? row.get(i) : "";
+            String col = header.get(i);
+            stats.appendKeyVal(details.getByKey(col), s);
+        }
+    }
+
+    /**
+     * Write the same rows as ead-dao.xsl while reading the finding aid as a stream, so that large finding aids are not loaded as a document.
+     */
+    public void streamFile(File selectedFile, File csv, final EAD_MATCHER matcher, final TreeMap<String, Stats> types) throws IOException, XMLStreamException {
+        final Vector<String> header = new Vector<String>(Arrays.asList(COLUMNS));
+        try(final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8))) {
+            bw.write(String.join(",", header));
+            bw.write("\n");
+            new EADStreamReader(selectedFile).read(new EADStreamReader.ComponentHandler(){
+                public void component(EADStreamReader.Component comp) throws IOException {
+                    Vector<String> row = new Vector<String>(header.size());
+                    row.add("TBD");
+                    row.add(comp.getEadId());
+                    row.add(comp.getRefId());
+                    row.add("");
+                    row.add(comp.hasDaodesc() ? comp.getDaodesc() : comp.getTitle());
+                    row.add("TRUE");
+                    row.add(comp.getDaoLink());
+                    row.add(comp.getDaoThumbnail());
+                    bw.write("\"");
+                    bw.write(String.join("\",\"", row));
+                    bw.write("\"\n");
+                    addRow(types, header, row, matcher, 1_000_000 + comp.getNum());
+                }
+            });
+        }
+    }
+
 }
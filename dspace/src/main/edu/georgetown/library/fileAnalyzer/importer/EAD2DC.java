@@ -1,16 +1,22 @@
 package edu.georgetown.library.fileAnalyzer.importer;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.Vector;
 import java.util.regex.Pattern;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
 import org.w3c.dom.Document;
@@ -101,38 +107,126 @@ public class EAD2DC extends DefaultImporter {
         TreeMap<String, Stats> types = new TreeMap<String, Stats>();
         
         try {
-            Document d = XMLUtil.db_ns.parse(selectedFile);
             File csv = new File(selectedFile.getParent(), selectedFile.getName()+".csv");
-            InputStream in = XMLUtil.getResourceStream(this, "edu/georgetown/library/fileAnalyzer/ead.xsl");
-            XMLUtil.doTransform(d, csv, in, params);
-            DelimitedFileReader dfr = new DelimitedFileReader(csv, ",");
-            Vector<String> header = dfr.getRow();
-            for(String col: header) {
-                details.addStatsItem(col, StatsItem.makeStringStatsItem(col));
-            }
-            int rownum = 1_000_000;
-            for(Vector<String>row=dfr.getRow(); row!=null; row=dfr.getRow()) {
-                String key = ""+rownum++;
-                Stats stats = Generator.INSTANCE.create(key);
-                types.put(key, stats);
-                for(int i=0; i<header.size(); i++) {
-                    String s = row.size() > i ? row.get(i) : "";
-                    String col = header.get(i);
-                    if (col.equals("dc.date.created[en]")) {
-                        s = normalizeDate(s);
-                    }
-                    stats.appendKeyVal(details.getByKey(col), s);
+            if (EADStreamReader.isLarge(selectedFile)) {
+                streamFile(selectedFile, csv, types);
+            } else {
+                Document d = XMLUtil.getNamespaceDocumentBuilder().parse(selectedFile);
+                XMLUtil.doTransform(d, csv, "edu/georgetown/library/fileAnalyzer/ead.xsl", params);
+                DelimitedFileReader dfr = new DelimitedFileReader(csv, ",");
+                Vector<String> header = dfr.getRow();
+                addColumns(header);
+                int rownum = 1_000_000;
+                for(Vector<String>row=dfr.getRow(); row!=null; row=dfr.getRow()) {
+                    addRow(types, header, row, rownum++);
                 }
             }
         } catch (SAXException e) {
             e.printStackTrace();
         } catch (TransformerException e) {
             e.printStackTrace();
+        } catch (XMLStreamException e) {
+            e.printStackTrace();
         }
         return new ActionResult(selectedFile, "EAD2DC",
                 this.toString(), details, types, true, timer.getDuration());
     }
 
+    public void addColumns(Vector<String> header) {
+        for(String col: header) {
+            details.addStatsItem(col, StatsItem.makeStringStatsItem(col));
+        }
+    }
+
+    public void addRow(TreeMap<String, Stats> types, Vector<String> header, Vector<String> row, int rownum) {
+        String key = ""+rownum;
+        Stats stats = Generator.INSTANCE.create(key);
+        types.put(key, stats);
+        for(int i=0; i<header.size(); i++) {
+            String s = row.size() > i ? row.get(i) : "";
+            String col = header.get(i);
+            if (col.equals("dc.date.created[en]")) {
+                s = normalizeDate(s);
+            }
+            stats.appendKeyVal(details.getByKey(col), s);
+        }
+    }
+
+    static String substringBefore(String s, String sep) {
+        int i = s.indexOf(sep);
+        return i < 0 ? "" : s.substring(0, i);
+    }
+
+    static String join(List<String> vals, boolean normalize) {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<vals.size(); i++) {
+            if (i > 0) sb.append("||");
+            String val = vals.get(i);
+            sb.append(normalize ? EADStreamReader.normalizeSpace(val.replace("\"", "")) : val);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the same rows as ead.xsl while reading the finding aid as a stream, so that large finding aids are not loaded as a document.
+     * The finding aid is read twice: the collection values used in every row are gathered first.
+     */
+    public void streamFile(File selectedFile, File csv, final TreeMap<String, Stats> types) throws IOException, XMLStreamException {
+        final String collection = (String)this.getProperty(P_COLL);
+        final String rights = (String)this.getProperty(P_RIGHTS);
+        final Vector<String> header = new Vector<String>(Arrays.asList("id", "collection", (String)this.getProperty(P_REFCOL),
+                "dc.title[en]", "dc.coverage.temporal[en]", "dc.description[en]", "dc.date.created[en]", "dc.relation.isPartOf[en]",
+                "dc.rights[en]", "dc.language[en]", "dc.contributor[en]", "dc.subject[en]", "dc.creator[en]"));
+        addColumns(header);
+        EADStreamReader reader = new EADStreamReader(selectedFile);
+        final EADStreamReader.Collection coll = reader.read(null);
+        final String partOf = coll.getTitle() + " (" + coll.getUnitId();
+        final String subjects = join(coll.getSubjects(), false);
+        try(final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8))) {
+            bw.write(String.join(",", header));
+            bw.write("\n");
+            reader.read(new EADStreamReader.ComponentHandler(){
+                public void component(EADStreamReader.Component comp) throws IOException {
+                    String unitdate = comp.getUnitDate();
+                    String created;
+                    if (comp.getDateRange().contains("/")) {
+                        created = substringBefore(comp.getDateNormal(), "/");
+                    } else if (comp.hasDateNormal()) {
+                        created = comp.getDateNormal();
+                    } else if (unitdate.contains("-")) {
+                        created = substringBefore(unitdate, "-");
+                    } else if (unitdate.isEmpty()) {
+                        created = "No Date";
+                    } else {
+                        created = unitdate;
+                    }
+                    StringBuilder part = new StringBuilder(partOf);
+                    for(String container: comp.getContainers()) {
+                        part.append("||").append(container);
+                    }
+                    Vector<String> row = new Vector<String>(header.size());
+                    row.add("+");
+                    row.add(collection);
+                    row.add(comp.getRefId());
+                    row.add(comp.getTitle().replace("\"", ""));
+                    row.add(EADStreamReader.normalizeSpace(unitdate));
+                    row.add(join(comp.getDescriptions(), true));
+                    row.add(created);
+                    row.add(part.toString());
+                    row.add(rights);
+                    row.add(coll.getLanguage());
+                    row.add(coll.getRepository());
+                    row.add(subjects);
+                    row.add(join(comp.getCreators(), false));
+                    bw.write("\"");
+                    bw.write(String.join("\",\"", row));
+                    bw.write("\"\n");
+                    addRow(types, header, row, 1_000_000 + comp.getNum());
+                }
+            });
+        }
+    }
+
     public String normalizeDate(String s) {
         if (Pattern.matches("^\\d\\d\\d\\d(-\\d\\d(-\\d\\d)?)?", s)) {
             return s;
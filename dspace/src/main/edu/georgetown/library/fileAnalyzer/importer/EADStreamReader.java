@@ -0,0 +1,537 @@
+package edu.georgetown.library.fileAnalyzer.importer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the components (c, c01, c02 and c03) of an EAD finding aid with StAX, without building a document.
+ * <p>
+ * The values gathered for each component are those selected by the ead.xsl and ead-dao.xsl stylesheets;
+ * where a stylesheet takes the first of several descendants of a component, the first in document order is kept.
+ * Only the open elements, the text of the elements of interest and the components that have not been handed over are held in memory.
+ * The descriptions and containers of nested components are held once, in lists shared with the outermost open component;
+ * each component keeps the range of those lists that falls within it.
+ * <p>
+ * A component is complete once it closes.
+ * Components are handed to the {@link ComponentHandler} in document order, so a component that has closed waits for its open ancestors.
+ * @author TBrady
+ *
+ */
+public class EADStreamReader {
+    public static final String NS_EAD = "urn:isbn:1-931666-22-9";
+    public static final String NS_XLINK = "http://www.w3.org/1999/xlink";
+    /** files smaller than this are transformed with a stylesheet by callers */
+    public static final long STREAM_THRESHOLD = 16L * 1024 * 1024;
+
+    static final HashSet<String> COMPONENTS = new HashSet<String>(Arrays.asList("c", "c01", "c02", "c03"));
+    static final HashSet<String> DESCRIPTIONS = new HashSet<String>(Arrays.asList("scopecontent", "relatedmaterial", "odd"));
+
+    /**
+     * Receives each component once it and every component preceding it have closed.
+     */
+    public static abstract class ComponentHandler {
+        public abstract void component(Component comp) throws IOException;
+    }
+
+    /**
+     * The string value of an element, complete once the element has closed.
+     */
+    static class Text {
+        StringBuilder sb = new StringBuilder();
+        int depth;
+        //shared list receiving the value once the element closes, or null
+        List<String> list;
+        int index;
+
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+    static String value(Text t) {
+        return t == null ? "" : t.toString();
+    }
+
+    static List<String> values(List<Text> list) {
+        ArrayList<String> vals = new ArrayList<String>(list.size());
+        for(Text t: list) {
+            vals.add(t.toString());
+        }
+        return vals;
+    }
+
+    /**
+     * Values taken from the header and collection level description of the finding aid.
+     */
+    public static class Collection {
+        Text eadid;
+        Text title;
+        Text unitid;
+        Text language;
+        Text repository;
+        List<Text> subjects = new ArrayList<Text>();
+
+        public String getEadId() {
+            return value(eadid);
+        }
+
+        /**
+         * @return the first unittitle within archdesc
+         */
+        public String getTitle() {
+            return value(title);
+        }
+
+        /**
+         * @return the first unitid within archdesc
+         */
+        public String getUnitId() {
+            return value(unitid);
+        }
+
+        /**
+         * @return the first language within archdesc
+         */
+        public String getLanguage() {
+            return value(language);
+        }
+
+        /**
+         * @return the first repository/corpname within archdesc
+         */
+        public String getRepository() {
+            return value(repository);
+        }
+
+        /**
+         * @return every controlaccess/subject within archdesc
+         */
+        public List<String> getSubjects() {
+            return values(subjects);
+        }
+    }
+
+    /**
+     * A container within a component; only the first text node of a container is its value.
+     */
+    static class Container {
+        String type;
+        String text;
+        //shared list receiving the type and value once the container closes
+        List<String> list;
+        int index;
+    }
+
+    /**
+     * Reserve a place in a shared list for a value that is complete once its element closes.
+     * @return the index of the place
+     */
+    static int reserve(List<String> list) {
+        list.add(null);
+        return list.size() - 1;
+    }
+
+    public static class Component {
+        int num;
+        String id;
+        Text eadid;
+        Text unittitle;
+        Text unitdate;
+        String dateNormal;
+        String dateRange;
+        boolean hasDateNormal;
+        //descriptions and containers of the outermost open component, in document order; those of this component lie between the start and end
+        List<String> descriptions;
+        int descStart;
+        int descEnd;
+        List<String> containers;
+        int containerStart;
+        int containerEnd;
+        List<String> creators;
+        boolean hasDaodesc;
+        Text daodesc;
+        String daoLink;
+        String daoThumbnail;
+        boolean closed;
+
+        /**
+         * @return the position of the component within the finding aid, starting at 0
+         */
+        public int getNum() {
+            return num;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the component without the prefix added by ArchivesSpace
+         */
+        public String getRefId() {
+            return id.startsWith("aspace_") ? id.substring(7) : id;
+        }
+
+        public String getEadId() {
+            return value(eadid);
+        }
+
+        /**
+         * @return the first unittitle within the component
+         */
+        public String getTitle() {
+            return value(unittitle);
+        }
+
+        /**
+         * @return the first unitdate within the component
+         */
+        public String getUnitDate() {
+            return value(unitdate);
+        }
+
+        /**
+         * @return the first normal attribute of a unitdate within the component
+         */
+        public String getDateNormal() {
+            return dateNormal == null ? "" : dateNormal;
+        }
+
+        /**
+         * @return the first normal attribute of a unitdate within the component that is not "0/0"
+         */
+        public String getDateRange() {
+            return dateRange == null ? "" : dateRange;
+        }
+
+        /**
+         * @return true if a unitdate within the component has a normal attribute other than "0"
+         */
+        public boolean hasDateNormal() {
+            return hasDateNormal;
+        }
+
+        /**
+         * @return the physdesc elements and the paragraphs of the scopecontent, relatedmaterial and odd elements within the component
+         */
+        public List<String> getDescriptions() {
+            return new ArrayList<String>(descriptions.subList(descStart, descEnd));
+        }
+
+        /**
+         * @return the type and first text node of each container within the component separated by a space
+         */
+        public List<String> getContainers() {
+            return new ArrayList<String>(containers.subList(containerStart, containerEnd));
+        }
+
+        /**
+         * @return the creator names in the did of the component, or those of its ancestors if the component names none
+         */
+        public List<String> getCreators() {
+            return creators;
+        }
+
+        /**
+         * @return true if a digital object group in the did of the component has a description
+         */
+        public boolean hasDaodesc() {
+            return hasDaodesc;
+        }
+
+        /**
+         * @return the description of the first digital object group in the did of the component
+         */
+        public String getDaodesc() {
+            return value(daodesc);
+        }
+
+        /**
+         * @return the link of the first location of the first digital object group in the did of the component
+         */
+        public String getDaoLink() {
+            return daoLink == null ? "" : daoLink;
+        }
+
+        /**
+         * @return the link of the second location of the first digital object group in the did of the component
+         */
+        public String getDaoThumbnail() {
+            return daoThumbnail == null ? "" : daoThumbnail;
+        }
+    }
+
+    /**
+     * An open element.
+     */
+    static class Frame {
+        //local name of an element in the EAD namespace, or null
+        String name;
+        Component comp;
+        boolean archdesc;
+        //origination labeled as a creator
+        boolean creator;
+        //creator names in a did child of the element
+        List<String> creators;
+        //element whose did names this creator
+        Frame creatorOf;
+        Text creatorText;
+        //number of daogrp children of a did
+        int daogrps;
+        //component owning the did of a daogrp
+        Component daoComp;
+        boolean firstDaogrp;
+        int daolocs;
+        Container container;
+    }
+
+    File file;
+
+    public EADStreamReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return true if a file is large enough that it should be streamed rather than loaded as a document
+     */
+    public static boolean isLarge(File f) {
+        return f.length() >= STREAM_THRESHOLD;
+    }
+
+    /**
+     * Collapse runs of white space into a single space and remove white space from both ends, as the XPath normalize-space function does.
+     */
+    public static String normalizeSpace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    static String name(Frame f) {
+        return f == null ? null : f.name;
+    }
+
+    static Frame frame(ArrayList<Frame> stack, int back) {
+        int i = stack.size() - back;
+        return i >= 0 ? stack.get(i) : null;
+    }
+
+    static Text capture(ArrayList<Text> captures, int depth) {
+        Text t = new Text();
+        t.depth = depth;
+        captures.add(t);
+        return t;
+    }
+
+    /**
+     * Read the finding aid, handing over each component.
+     * The collection values are only complete once the whole file has been read; callers needing them while handling components should read the file twice.
+     * @param handler receives the components, or null to only gather the collection values
+     * @return the collection values
+     */
+    public Collection read(ComponentHandler handler) throws IOException, XMLStreamException {
+        Collection coll = new Collection();
+        ArrayList<Frame> stack = new ArrayList<Frame>();
+        ArrayList<Text> captures = new ArrayList<Text>();
+        //open components, outermost first
+        ArrayList<Component> open = new ArrayList<Component>();
+        //components in document order that have not been handed over
+        ArrayDeque<Component> waiting = new ArrayDeque<Component>();
+        int archdesc = 0;
+        int count = 0;
+
+        XMLInputFactory xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        xif.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        try(InputStream is = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            XMLStreamReader xr = xif.createXMLStreamReader(file.toURI().toString(), is);
+            try {
+                while(xr.hasNext()) {
+                    int event = xr.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        Frame parent = frame(stack, 1);
+                        Frame f = new Frame();
+                        f.name = NS_EAD.equals(xr.getNamespaceURI()) ? xr.getLocalName() : null;
+                        stack.add(f);
+                        int depth = stack.size();
+                        String name = f.name;
+                        if (name == null) {
+                            continue;
+                        }
+                        if (COMPONENTS.contains(name)) {
+                            Component comp = new Component();
+                            comp.num = count++;
+                            String id = xr.getAttributeValue(null, "id");
+                            comp.id = id == null ? "" : id;
+                            comp.eadid = coll.eadid;
+                            if (open.isEmpty()) {
+                                comp.descriptions = new ArrayList<String>();
+                                comp.containers = new ArrayList<String>();
+                            } else {
+                                comp.descriptions = open.get(0).descriptions;
+                                comp.containers = open.get(0).containers;
+                            }
+                            comp.descStart = comp.descriptions.size();
+                            comp.containerStart = comp.containers.size();
+                            f.comp = comp;
+                            open.add(comp);
+                            waiting.add(comp);
+                        } else if (name.equals("archdesc")) {
+                            f.archdesc = true;
+                            archdesc++;
+                        } else if (name.equals("eadid")) {
+                            if ("eadheader".equals(name(parent)) && stack.size() == 3 && "ead".equals(name(stack.get(0)))) {
+                                if (coll.eadid == null) coll.eadid = capture(captures, depth);
+                            }
+                        } else if (name.equals("unittitle")) {
+                            Text t = null;
+                            for(Component comp: open) {
+                                if (comp.unittitle != null) continue;
+                                if (t == null) t = capture(captures, depth);
+                                comp.unittitle = t;
+                            }
+                            if (archdesc > 0 && coll.title == null) {
+                                coll.title = t == null ? capture(captures, depth) : t;
+                            }
+                        } else if (name.equals("unitdate")) {
+                            String normal = xr.getAttributeValue(null, "normal");
+                            Text t = null;
+                            for(Component comp: open) {
+                                if (comp.unitdate == null) {
+                                    if (t == null) t = capture(captures, depth);
+                                    comp.unitdate = t;
+                                }
+                                if (normal == null) continue;
+                                if (comp.dateNormal == null) comp.dateNormal = normal;
+                                if (comp.dateRange == null && !normal.equals("0/0")) comp.dateRange = normal;
+                                if (!normal.equals("0")) comp.hasDateNormal = true;
+                            }
+                        } else if (name.equals("unitid")) {
+                            if (archdesc > 0 && coll.unitid == null) coll.unitid = capture(captures, depth);
+                        } else if (name.equals("language")) {
+                            if (archdesc > 0 && coll.language == null) coll.language = capture(captures, depth);
+                        } else if (name.equals("subject")) {
+                            if (archdesc > 0 && "controlaccess".equals(name(parent))) coll.subjects.add(capture(captures, depth));
+                        } else if (name.equals("origination")) {
+                            f.creator = "creator".equals(xr.getAttributeValue(null, "label"));
+                        } else if (name.equals("physdesc") || (name.equals("p") && DESCRIPTIONS.contains(name(parent)))) {
+                            if (!open.isEmpty()) {
+                                Text t = capture(captures, depth);
+                                t.list = open.get(0).descriptions;
+                                t.index = reserve(t.list);
+                            }
+                        } else if (name.equals("container")) {
+                            if (!open.isEmpty()) {
+                                Container k = new Container();
+                                String type = xr.getAttributeValue(null, "type");
+                                k.type = type == null ? "" : type;
+                                k.list = open.get(0).containers;
+                                k.index = reserve(k.list);
+                                f.container = k;
+                            }
+                        } else if (name.equals("daogrp")) {
+                            Frame owner = frame(stack, 3);
+                            if ("did".equals(name(parent)) && owner != null && owner.comp != null) {
+                                parent.daogrps++;
+                                f.firstDaogrp = parent.daogrps == 1;
+                                f.daoComp = owner.comp;
+                            }
+                        } else if (name.equals("daodesc")) {
+                            if (parent != null && parent.daoComp != null) {
+                                parent.daoComp.hasDaodesc = true;
+                                if (parent.firstDaogrp && parent.daoComp.daodesc == null) parent.daoComp.daodesc = capture(captures, depth);
+                            }
+                        } else if (name.equals("daoloc")) {
+                            if (parent != null && parent.daoComp != null && parent.firstDaogrp) {
+                                parent.daolocs++;
+                                String href = xr.getAttributeValue(NS_XLINK, "href");
+                                Component comp = parent.daoComp;
+                                if (href != null && parent.daolocs == 1 && comp.daoLink == null) comp.daoLink = href;
+                                if (href != null && parent.daolocs == 2 && comp.daoThumbnail == null) comp.daoThumbnail = href;
+                            }
+                        }
+                        if (name.equals("corpname") && archdesc > 0 && coll.repository == null && "repository".equals(name(parent))) {
+                            coll.repository = capture(captures, depth);
+                        }
+                        if ((name.equals("persname") || name.equals("corpname")) && parent != null && parent.creator && "did".equals(name(frame(stack, 3)))) {
+                            Frame owner = frame(stack, 4);
+                            if (owner != null) {
+                                f.creatorOf = owner;
+                                f.creatorText = capture(captures, depth);
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                        for(Text t: captures) {
+                            t.sb.append(xr.getTextCharacters(), xr.getTextStart(), xr.getTextLength());
+                        }
+                        Frame f = frame(stack, 1);
+                        if (f != null && f.container != null && f.container.text == null) {
+                            f.container.text = xr.getText();
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        int depth = stack.size();
+                        while(!captures.isEmpty() && captures.get(captures.size() - 1).depth == depth) {
+                            Text t = captures.remove(captures.size() - 1);
+                            if (t.list != null) t.list.set(t.index, t.toString());
+                        }
+                        Frame f = stack.remove(depth - 1);
+                        if (f.container != null) {
+                            Container k = f.container;
+                            k.list.set(k.index, k.type + " " + (k.text == null ? "" : k.text));
+                        }
+                        if (f.archdesc) archdesc--;
+                        if (f.creatorOf != null) {
+                            if (f.creatorOf.creators == null) f.creatorOf.creators = new ArrayList<String>();
+                            f.creatorOf.creators.add(normalizeSpace(f.creatorText.toString()));
+                        }
+                        if (f.comp != null) {
+                            Component comp = f.comp;
+                            if (f.creators != null) {
+                                comp.creators = f.creators;
+                            } else {
+                                comp.creators = new ArrayList<String>();
+                                for(Frame a: stack) {
+                                    if (a.creators != null) comp.creators.addAll(a.creators);
+                                }
+                            }
+                            comp.descEnd = comp.descriptions.size();
+                            comp.containerEnd = comp.containers.size();
+                            comp.closed = true;
+                            open.remove(open.size() - 1);
+                            while(!waiting.isEmpty() && waiting.peek().closed) {
+                                Component next = waiting.poll();
+                                if (handler != null) handler.component(next);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                xr.close();
+            }
+        }
+        return coll;
+    }
+}
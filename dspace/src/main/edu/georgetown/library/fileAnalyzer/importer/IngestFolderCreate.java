@@ -192,7 +192,7 @@ public class IngestFolderCreate extends DefaultImporter {
 			stats.appendVal(IngestStatsItems.OtherSchemas, schema);
 		} 
 		
-		Document d = XMLUtil.db.newDocument();
+		Document d = XMLUtil.getDocumentBuilder().newDocument();
 		Element e = d.createElement("dublin_core");
 		e.setAttribute("schema", schema);
 		d.appendChild(e);
@@ -120,7 +120,7 @@ public abstract class ItemUpdateFolderCreate extends DefaultImporter {
                 String filename = DUBLINCORE;
                 String schema = "dc";
                 
-                Document d = XMLUtil.db.newDocument();
+                Document d = XMLUtil.getDocumentBuilder().newDocument();
                 Element e = d.createElement("dublin_core");
                 e.setAttribute("schema", schema);
                 d.appendChild(e);